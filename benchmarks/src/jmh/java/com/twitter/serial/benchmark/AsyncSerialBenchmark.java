@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.benchmark;
+
+import com.twitter.serial.model.Place;
+import com.twitter.serial.stream.bytebuffer.AsyncSerial;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the bulk operations of {@link AsyncSerial} scale with the number of threads, each place being
+ * serialized into its own array. A single thread processes all the places on the calling thread, which is the
+ * sequential baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AsyncSerialBenchmark {
+    @Param({ "MEDIUM", "LARGE" })
+    public BenchmarkData.GraphSize graphSize;
+
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    private ExecutorService mExecutor;
+    private AsyncSerial mSerial;
+    private List<Place> mPlaces;
+    private List<byte[]> mSerializedPlaces;
+
+    @Setup
+    public void setUp() throws IOException {
+        mExecutor = Executors.newFixedThreadPool(threads);
+        mSerial = new AsyncSerial(new ByteBufferSerial(), mExecutor, threads);
+        mPlaces = BenchmarkData.createPlaces(graphSize);
+        mSerializedPlaces = serialize();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Benchmark
+    public List<byte[]> serialize() throws IOException {
+        return mSerial.toByteArrays(mPlaces, Place.SERIALIZER);
+    }
+
+    @Benchmark
+    public List<Place> deserialize() throws IOException, ClassNotFoundException {
+        return mSerial.fromByteArrays(mSerializedPlaces, Place.SERIALIZER);
+    }
+}
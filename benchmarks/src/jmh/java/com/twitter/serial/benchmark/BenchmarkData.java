@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.benchmark;
+
+import com.twitter.serial.model.BoundingBox;
+import com.twitter.serial.model.Coordinate;
+import com.twitter.serial.model.Place;
+import com.twitter.serial.model.PlaceType;
+import com.twitter.serial.serializer.CollectionSerializers;
+import com.twitter.serial.serializer.CoreSerializers;
+import com.twitter.serial.serializer.Serializer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Provides the object graphs used by the benchmarks. Every graph is a list of places, so the same serializer can be
+ * used for all sizes, and the {@link Serializable} graphs mirror the {@link Place} graphs field by field.
+ */
+public final class BenchmarkData {
+    @NotNull
+    public static final Serializer<List<Place>> PLACE_LIST_SERIALIZER =
+            CollectionSerializers.getListSerializer(Place.SERIALIZER);
+
+    @NotNull
+    public static final Serializer<ArrayList<SerializablePlace>> SERIALIZABLE_PLACE_LIST_SERIALIZER =
+            CoreSerializers.getSerializableSerializer();
+
+    @NotNull
+    public static final Serializer<List<SerializablePlace>> FIELD_PLACE_LIST_SERIALIZER =
+            CollectionSerializers.getListSerializer(CoreSerializers.getFieldSerializer(SerializablePlace.class));
+
+    public enum GraphSize {
+        SMALL(1),
+        MEDIUM(100),
+        LARGE(1000);
+
+        public final int placeCount;
+
+        GraphSize(int placeCount) {
+            this.placeCount = placeCount;
+        }
+    }
+
+    private BenchmarkData() {
+    }
+
+    @NotNull
+    public static List<Place> createPlaces(@NotNull GraphSize size) {
+        final List<Place> places = new ArrayList<>(size.placeCount);
+        for (int i = 0; i < size.placeCount; i++) {
+            places.add(createPlace(i));
+        }
+        return places;
+    }
+
+    @NotNull
+    public static ArrayList<SerializablePlace> createSerializablePlaces(@NotNull GraphSize size) {
+        final ArrayList<SerializablePlace> places = new ArrayList<>(size.placeCount);
+        for (Place place : createPlaces(size)) {
+            places.add(new SerializablePlace(place));
+        }
+        return places;
+    }
+
+    @NotNull
+    private static Place createPlace(int index) {
+        final double offset = index * 0.0001;
+        final double north = 37.779894 + offset;
+        final double south = 37.778626 + offset;
+        final double west = -122.419906 - offset;
+        final double east = -122.418624 - offset;
+        final BoundingBox boundingBox = new BoundingBox(Arrays.asList(
+                new Coordinate(north, west), new Coordinate(north, east),
+                new Coordinate(south, east), new Coordinate(south, west)));
+        return new Place.Builder()
+                .setPlaceId(String.valueOf(1000000 + index))
+                .setPlaceType(PlaceType.values()[index % PlaceType.values().length])
+                .setName("San Francisco City Hall #" + index)
+                .setAddress(index + " Dr Carlton B Goodlett Place, San Francisco, CA 94102")
+                .setBoundingBox(boundingBox)
+                .setCentroid(new Coordinate((north + south) / 2, (west + east) / 2))
+                .setCountry("USA")
+                .setCountryCode("US")
+                .setHandle("SFCity_Hall_" + index)
+                .build();
+    }
+
+    /**
+     * A {@link Serializable} copy of {@link Place}, used to measure the Java serialization fallback.
+     */
+    public static final class SerializablePlace implements Serializable {
+        private static final long serialVersionUID = 6153628712945812389L;
+
+        @NotNull public final String placeId;
+        @NotNull public final PlaceType placeType;
+        @NotNull public final String name;
+        @Nullable public final ArrayList<SerializableCoordinate> boundingBox;
+        @Nullable public final SerializableCoordinate centroid;
+        @Nullable public final String country;
+        @Nullable public final String countryCode;
+        @Nullable public final String address;
+        @Nullable public final String handle;
+
+        SerializablePlace(@NotNull Place place) {
+            placeId = place.placeId;
+            placeType = place.placeType;
+            name = place.name;
+            if (place.boundingBox != null) {
+                boundingBox = new ArrayList<>(place.boundingBox.coordinates.size());
+                for (Coordinate coordinate : place.boundingBox.coordinates) {
+                    boundingBox.add(new SerializableCoordinate(coordinate));
+                }
+            } else {
+                boundingBox = null;
+            }
+            centroid = place.centroid != null ? new SerializableCoordinate(place.centroid) : null;
+            country = place.country;
+            countryCode = place.countryCode;
+            address = place.address;
+            handle = place.handle;
+        }
+    }
+
+    /**
+     * A {@link Serializable} copy of {@link Coordinate}.
+     */
+    public static final class SerializableCoordinate implements Serializable {
+        private static final long serialVersionUID = -2890127362239076434L;
+
+        public final double latitude;
+        public final double longitude;
+
+        SerializableCoordinate(@NotNull Coordinate coordinate) {
+            latitude = coordinate.latitude;
+            longitude = coordinate.longitude;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.benchmark;
+
+import com.twitter.serial.model.Place;
+import com.twitter.serial.stream.Serial;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
+import com.twitter.serial.util.Pools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ByteBufferSerial}, with and without a buffer pool. The fixed pool starts from small buffers that
+ * have to grow for the larger graphs, while the adaptive pool keeps the grown buffers. The exact size mode computes
+ * the size first and writes into an array of that size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ByteBufferSerialBenchmark {
+    private static final int POOL_BUFFER_SIZE = 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    @Param({ "SMALL", "MEDIUM", "LARGE" })
+    public BenchmarkData.GraphSize graphSize;
+
+    private Serial mSerial;
+    private Serial mPooledSerial;
+    private Serial mAdaptivePooledSerial;
+    private Serial mExactSizeSerial;
+    private List<Place> mPlaces;
+    private byte[] mSerializedPlaces;
+
+    @Setup
+    public void setUp() throws IOException {
+        mSerial = new ByteBufferSerial();
+        mPooledSerial = new ByteBufferSerial(1, POOL_BUFFER_SIZE);
+        mAdaptivePooledSerial = new ByteBufferSerial(
+                new Pools.AdaptiveByteArrayPool(1, POOL_BUFFER_SIZE, MAX_RETAINED_BUFFER_SIZE));
+        mExactSizeSerial = new ByteBufferSerial.Builder().setExactSize(true).build();
+        mPlaces = BenchmarkData.createPlaces(graphSize);
+        mSerializedPlaces = mSerial.toByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public byte[] toByteArray() throws IOException {
+        return mSerial.toByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public byte[] toByteArrayPooled() throws IOException {
+        return mPooledSerial.toByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public byte[] toByteArrayAdaptivePool() throws IOException {
+        return mAdaptivePooledSerial.toByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public byte[] toByteArrayExactSize() throws IOException {
+        return mExactSizeSerial.toByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public List<Place> fromByteArray() throws IOException, ClassNotFoundException {
+        return mSerial.fromByteArray(mSerializedPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+}
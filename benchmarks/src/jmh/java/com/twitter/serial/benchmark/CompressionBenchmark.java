@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.benchmark;
+
+import com.twitter.serial.model.Place;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
+import com.twitter.serial.stream.compression.CompressedSerial;
+import com.twitter.serial.stream.compression.CompressionCodec;
+import com.twitter.serial.stream.compression.DeflateCodec;
+import com.twitter.serial.stream.compression.Lz4Codec;
+import com.twitter.serial.stream.legacy.LegacySerial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CompressedSerial} with each codec, compared with the GZIP compression of {@link LegacySerial}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+    public enum Codec {
+        LZ4, DEFLATE, LEGACY_GZIP
+    }
+
+    @Param({ "SMALL", "LARGE" })
+    public BenchmarkData.GraphSize graphSize;
+
+    @Param
+    public Codec codec;
+
+    private CompressedSerial mSerial;
+    private LegacySerial mLegacySerial;
+    private List<Place> mPlaces;
+    private byte[] mCompressedPlaces;
+
+    @Setup
+    public void setUp() throws IOException {
+        final CompressionCodec compressionCodec = codec == Codec.DEFLATE ? new DeflateCodec() : new Lz4Codec();
+        mSerial = new CompressedSerial(new ByteBufferSerial(), compressionCodec,
+                CompressedSerial.DEFAULT_MIN_COMPRESSED_SIZE);
+        mLegacySerial = new LegacySerial();
+        mPlaces = BenchmarkData.createPlaces(graphSize);
+        mCompressedPlaces = compress();
+    }
+
+    @Benchmark
+    public byte[] compress() throws IOException {
+        return codec == Codec.LEGACY_GZIP ?
+                mLegacySerial.toCompressedByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER) :
+                mSerial.toByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public List<Place> decompress() throws IOException, ClassNotFoundException {
+        return codec == Codec.LEGACY_GZIP ?
+                mLegacySerial.fromCompressedByteArray(mCompressedPlaces, BenchmarkData.PLACE_LIST_SERIALIZER) :
+                mSerial.fromByteArray(mCompressedPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+}
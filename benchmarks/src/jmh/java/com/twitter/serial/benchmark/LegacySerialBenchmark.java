@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.benchmark;
+
+import com.twitter.serial.model.Place;
+import com.twitter.serial.stream.legacy.LegacySerial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link LegacySerial}, both plain and GZIP compressed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LegacySerialBenchmark {
+    @Param({ "SMALL", "MEDIUM", "LARGE" })
+    public BenchmarkData.GraphSize graphSize;
+
+    private LegacySerial mSerial;
+    private List<Place> mPlaces;
+    private byte[] mSerializedPlaces;
+    private byte[] mCompressedPlaces;
+
+    @Setup
+    public void setUp() throws IOException {
+        mSerial = new LegacySerial();
+        mPlaces = BenchmarkData.createPlaces(graphSize);
+        mSerializedPlaces = mSerial.toByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+        mCompressedPlaces = mSerial.toCompressedByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public byte[] toByteArray() throws IOException {
+        return mSerial.toByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public List<Place> fromByteArray() throws IOException, ClassNotFoundException {
+        return mSerial.fromByteArray(mSerializedPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public byte[] toCompressedByteArray() throws IOException {
+        return mSerial.toCompressedByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public List<Place> fromCompressedByteArray() throws IOException, ClassNotFoundException {
+        return mSerial.fromCompressedByteArray(mCompressedPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+}
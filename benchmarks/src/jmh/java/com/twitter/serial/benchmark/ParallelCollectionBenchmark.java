@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.benchmark;
+
+import com.twitter.serial.model.Place;
+import com.twitter.serial.serializer.ParallelCollectionSerializers;
+import com.twitter.serial.serializer.Serializer;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the sequential list serializer with {@link ParallelCollectionSerializers} on a pool using all the
+ * available processors, with and without the object lengths that let the reader find the chunks without reading
+ * the places.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParallelCollectionBenchmark {
+    @Param({ "MEDIUM", "LARGE" })
+    public BenchmarkData.GraphSize graphSize;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    @Param({ "false", "true" })
+    public boolean objectLengths;
+
+    private ForkJoinPool mPool;
+    private ByteBufferSerial mSerial;
+    private Serializer<List<Place>> mSerializer;
+    private List<Place> mPlaces;
+    private byte[] mSerializedPlaces;
+
+    @Setup
+    public void setUp() throws IOException {
+        mPool = new ForkJoinPool();
+        mSerial = new ByteBufferSerial.Builder().setObjectLengths(objectLengths).build();
+        mSerializer = parallel ? ParallelCollectionSerializers.getListSerializer(Place.SERIALIZER, mPool, 64) :
+                BenchmarkData.PLACE_LIST_SERIALIZER;
+        mPlaces = BenchmarkData.createPlaces(graphSize);
+        mSerializedPlaces = serialize();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return mSerial.toByteArray(mPlaces, mSerializer);
+    }
+
+    @Benchmark
+    public List<Place> deserialize() throws IOException, ClassNotFoundException {
+        return mSerial.fromByteArray(mSerializedPlaces, mSerializer);
+    }
+}
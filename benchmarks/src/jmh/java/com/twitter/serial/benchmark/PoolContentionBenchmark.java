@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.benchmark;
+
+import com.twitter.serial.model.Place;
+import com.twitter.serial.stream.Serial;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
+import com.twitter.serial.util.Pools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the buffer pools of {@link ByteBufferSerial} when 32 threads serialize concurrently, with a buffer
+ * available for each thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(PoolContentionBenchmark.THREAD_COUNT)
+public class PoolContentionBenchmark {
+    static final int THREAD_COUNT = 32;
+    private static final int POOL_BUFFER_SIZE = 64 * 1024;
+
+    public enum PoolType {
+        NONE,
+        SYNCHRONIZED,
+        CONCURRENT,
+        THREAD_LOCAL
+    }
+
+    @Param({ "NONE", "SYNCHRONIZED", "CONCURRENT", "THREAD_LOCAL" })
+    public PoolType poolType;
+
+    @Param({ "SMALL", "MEDIUM" })
+    public BenchmarkData.GraphSize graphSize;
+
+    private Pools.Pool<byte[]> mPool;
+    private Serial mSerial;
+    private List<Place> mPlaces;
+
+    @Setup
+    public void setUp() {
+        mPool = createPool(poolType);
+        mSerial = new ByteBufferSerial(mPool);
+        mPlaces = BenchmarkData.createPlaces(graphSize);
+    }
+
+    @Benchmark
+    public byte[] toByteArray() throws IOException {
+        return mSerial.toByteArray(mPlaces, BenchmarkData.PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public byte[] acquireAndRelease() {
+        if (mPool == null) {
+            return null;
+        }
+        final byte[] buffer = mPool.acquire();
+        if (buffer != null) {
+            mPool.release(buffer);
+        }
+        return buffer;
+    }
+
+    private static Pools.Pool<byte[]> createPool(PoolType poolType) {
+        if (poolType == PoolType.NONE) {
+            return null;
+        }
+        final Pools.Pool<byte[]> pool = poolType == PoolType.SYNCHRONIZED ?
+                new Pools.SynchronizedPool<byte[]>(THREAD_COUNT) : new Pools.ConcurrentPool<byte[]>(THREAD_COUNT);
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            pool.release(new byte[POOL_BUFFER_SIZE]);
+        }
+        // Filled before wrapping, so that the buffers are not held by the setup thread.
+        return poolType == PoolType.THREAD_LOCAL ? new Pools.ThreadLocalPool<>(pool) : pool;
+    }
+}
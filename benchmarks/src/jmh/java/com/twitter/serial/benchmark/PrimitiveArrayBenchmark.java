@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.benchmark;
+
+import com.twitter.serial.serializer.CoreSerializers;
+import com.twitter.serial.serializer.SerializationContext;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerInput;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerOutput;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the packed encoding of float arrays used by {@link CoreSerializers#FLOAT_ARRAY} with writing and reading
+ * the elements one by one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrimitiveArrayBenchmark {
+    @Param({ "100", "10000" })
+    public int length;
+
+    private float[] mArray;
+    private byte[] mPackedArray;
+    private byte[] mUnpackedArray;
+
+    @Setup
+    public void setUp() throws IOException {
+        final Random random = new Random(42);
+        mArray = new float[length];
+        for (int i = 0; i < length; i++) {
+            mArray[i] = random.nextFloat();
+        }
+        mPackedArray = writePacked();
+        mUnpackedArray = writeUnpacked();
+    }
+
+    @Benchmark
+    public byte[] writePacked() throws IOException {
+        return new ByteBufferSerializerOutput()
+                .writeObject(SerializationContext.ALWAYS_RELEASE, mArray, CoreSerializers.FLOAT_ARRAY)
+                .getSerializedData();
+    }
+
+    @Benchmark
+    public byte[] writeUnpacked() {
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput().writeInt(mArray.length);
+        for (float value : mArray) {
+            output.writeFloat(value);
+        }
+        return output.getSerializedData();
+    }
+
+    @Benchmark
+    public float[] readPacked() throws IOException, ClassNotFoundException {
+        return new ByteBufferSerializerInput(mPackedArray)
+                .readObject(SerializationContext.ALWAYS_RELEASE, CoreSerializers.FLOAT_ARRAY);
+    }
+
+    @Benchmark
+    public float[] readUnpacked() throws IOException {
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(mUnpackedArray);
+        final float[] result = new float[input.readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = input.readFloat();
+        }
+        return result;
+    }
+}
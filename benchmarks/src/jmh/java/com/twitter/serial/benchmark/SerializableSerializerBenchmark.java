@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.benchmark;
+
+import com.twitter.serial.serializer.CoreSerializers;
+import com.twitter.serial.stream.Serial;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Java serialization fallback, {@link CoreSerializers#getSerializableSerializer()}, and the field
+ * serializer, {@link CoreSerializers#getFieldSerializer(Class)}, on a graph equivalent to the one used by
+ * {@link ByteBufferSerialBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializableSerializerBenchmark {
+    @Param({ "SMALL", "MEDIUM", "LARGE" })
+    public BenchmarkData.GraphSize graphSize;
+
+    private Serial mSerial;
+    private ArrayList<BenchmarkData.SerializablePlace> mPlaces;
+    private byte[] mSerializedPlaces;
+    private byte[] mFieldSerializedPlaces;
+
+    @Setup
+    public void setUp() throws IOException {
+        mSerial = new ByteBufferSerial();
+        mPlaces = BenchmarkData.createSerializablePlaces(graphSize);
+        mSerializedPlaces = mSerial.toByteArray(mPlaces, BenchmarkData.SERIALIZABLE_PLACE_LIST_SERIALIZER);
+        mFieldSerializedPlaces = mSerial.toByteArray(mPlaces, BenchmarkData.FIELD_PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public byte[] toByteArray() throws IOException {
+        return mSerial.toByteArray(mPlaces, BenchmarkData.SERIALIZABLE_PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public ArrayList<BenchmarkData.SerializablePlace> fromByteArray() throws IOException, ClassNotFoundException {
+        return mSerial.fromByteArray(mSerializedPlaces, BenchmarkData.SERIALIZABLE_PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public byte[] fieldsToByteArray() throws IOException {
+        return mSerial.toByteArray(mPlaces, BenchmarkData.FIELD_PLACE_LIST_SERIALIZER);
+    }
+
+    @Benchmark
+    public List<BenchmarkData.SerializablePlace> fieldsFromByteArray() throws IOException, ClassNotFoundException {
+        return mSerial.fromByteArray(mFieldSerializedPlaces, BenchmarkData.FIELD_PLACE_LIST_SERIALIZER);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.benchmark;
+
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerInput;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerOutput;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the string encoding of {@link ByteBufferSerializerOutput} and {@link ByteBufferSerializerInput} with the
+ * previous implementation, which ensured the capacity of the buffer for every char, decoded ASCII strings through an
+ * intermediate char array and UTF-8 strings through a StringBuilder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StringEncodingBenchmark {
+    public enum Content {
+        ASCII, LATIN, CJK
+    }
+
+    @Param({ "16", "1024" })
+    public int length;
+
+    @Param
+    public Content content;
+
+    private String mString;
+    private byte[] mEncoded;
+    private byte[] mBuffer;
+    private int mHeaderSize;
+
+    @Setup
+    public void setUp() {
+        final StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            final char ch = (char) ('a' + i % 26);
+            if (content == Content.ASCII || i % 8 != 7) {
+                builder.append(ch);
+            } else {
+                builder.append(content == Content.LATIN ? 'é' : '海');
+            }
+        }
+        mString = builder.toString();
+        mEncoded = new ByteBufferSerializerOutput().writeString(mString).getSerializedData();
+        mBuffer = new byte[64];
+        mHeaderSize = length < 256 ? 2 : 3;
+    }
+
+    @Benchmark
+    public int encode() {
+        return new ByteBufferSerializerOutput(mBuffer).writeString(mString).getPosition();
+    }
+
+    @Benchmark
+    public int encodePerChar() {
+        return PerCharCodec.encode(ByteBuffer.wrap(mBuffer), mString).position();
+    }
+
+    @Benchmark
+    public String decode() throws IOException {
+        return new ByteBufferSerializerInput(mEncoded).readString();
+    }
+
+    @Benchmark
+    public String decodePerChar() {
+        final ByteBuffer buffer = ByteBuffer.wrap(mEncoded, mHeaderSize, mEncoded.length - mHeaderSize);
+        return content == Content.ASCII ? PerCharCodec.decodeAscii(buffer, length) :
+                PerCharCodec.decodeUtf8(buffer, length);
+    }
+
+    /**
+     * The previous implementation, minus the headers and surrogate pairs, which the benchmark doesn't use.
+     */
+    private static final class PerCharCodec {
+        @NotNull
+        static ByteBuffer encode(@NotNull ByteBuffer buffer, @NotNull String string) {
+            final int length = string.length();
+            for (int i = 0; i < length; ++i) {
+                final int ch = (int) string.charAt(i);
+                if (ch < 0x80) {
+                    buffer = ensureCapacity(buffer, 1);
+                    buffer.put((byte) ch);
+                } else if (ch < 0x800) {
+                    buffer = ensureCapacity(buffer, 2);
+                    buffer.put((byte) ((ch >> 6) | 0xc0));
+                    buffer.put((byte) ((ch & 0x3f) | 0x80));
+                } else {
+                    buffer = ensureCapacity(buffer, 3);
+                    buffer.put((byte) ((ch >> 12) | 0xe0));
+                    buffer.put((byte) (((ch >> 6) & 0x3f) | 0x80));
+                    buffer.put((byte) ((ch & 0x3f) | 0x80));
+                }
+            }
+            return buffer;
+        }
+
+        @NotNull
+        static String decodeAscii(@NotNull ByteBuffer buffer, int length) {
+            final byte[] bytes = buffer.array();
+            final int offset = buffer.arrayOffset() + buffer.position();
+            final char[] chars = new char[length];
+            for (int i = 0; i < length; ++i) {
+                chars[i] = (char) bytes[offset + i];
+            }
+            return new String(chars);
+        }
+
+        @NotNull
+        static String decodeUtf8(@NotNull ByteBuffer buffer, int length) {
+            final StringBuilder builder = new StringBuilder(length);
+            for (int i = 0; i < length; ++i) {
+                final int b1 = buffer.get();
+                if ((b1 & 0x80) == 0) {
+                    builder.append((char) b1);
+                } else if ((b1 & 0xE0) == 0xC0) {
+                    final int b2 = buffer.get();
+                    builder.append((char) (((b1 << 6) ^ b2) ^ 0x0f80));
+                } else {
+                    final int b2 = buffer.get();
+                    final int b3 = buffer.get();
+                    builder.append((char) (((b1 << 12) ^ (b2 << 6) ^ b3) ^ 0x1f80));
+                }
+            }
+            return builder.toString();
+        }
+
+        @NotNull
+        private static ByteBuffer ensureCapacity(@NotNull ByteBuffer buffer, int sizeNeeded) {
+            if (buffer.remaining() >= sizeNeeded) {
+                return buffer;
+            }
+            final int newCapacity = Math.max(buffer.capacity() * 2, buffer.position() + sizeNeeded);
+            final ByteBuffer newBuffer = ByteBuffer.allocate(newCapacity);
+            buffer.flip();
+            newBuffer.put(buffer);
+            return newBuffer;
+        }
+    }
+}
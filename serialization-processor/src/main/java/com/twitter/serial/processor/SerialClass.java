@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.processor;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * The serializer to generate for a class annotated with {@code SerialObject}.
+ */
+final class SerialClass {
+    @NotNull final String packageName;
+    @NotNull final String className;
+    @NotNull final String serializerName;
+    final int version;
+    @NotNull final List<Field> fields;
+    /**
+     * The name of the builder class, or null if the class is created with its constructor.
+     */
+    @Nullable final String builderName;
+
+    SerialClass(@NotNull String packageName, @NotNull String className, @NotNull String serializerName,
+            int version, @NotNull List<Field> fields, @Nullable String builderName) {
+        this.packageName = packageName;
+        this.className = className;
+        this.serializerName = serializerName;
+        this.version = version;
+        this.fields = fields;
+        this.builderName = builderName;
+    }
+
+    /**
+     * A serialized field, written either with a method of the output, eg. {@code writeInt}, or with a serializer.
+     */
+    static final class Field {
+        @NotNull final String name;
+        @NotNull final String typeName;
+        final int since;
+        /**
+         * The name of the builder setter, if the class has a builder.
+         */
+        @Nullable final String setterName;
+        /**
+         * The value of the field when it isn't in the data, in the constructor of the class.
+         */
+        @NotNull final String defaultValue;
+
+        @Nullable String writeMethod;
+        @Nullable String readMethod;
+        /**
+         * Cast of the value read with {@link #readMethod}, eg. for a short written as an int.
+         */
+        @Nullable String readCast;
+
+        /**
+         * The expression of the serializer of the field.
+         */
+        @Nullable String serializer;
+        /**
+         * Whether the serializer is created once in a holder class, which is initialized on first use so that
+         * models referencing each other don't read their serializers before they are initialized.
+         */
+        boolean sharedSerializer;
+
+        Field(@NotNull String name, @NotNull String typeName, int since, @Nullable String setterName,
+                @NotNull String defaultValue) {
+            this.name = name;
+            this.typeName = typeName;
+            this.since = since;
+            this.setterName = setterName;
+            this.defaultValue = defaultValue;
+        }
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.processor;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a serializer for every class annotated with {@code com.twitter.serial.annotation.SerialObject}. The
+ * generated serializers read and write each field with the most specific method of the streams, eg.
+ * {@code readInt} for an int instead of a boxed {@code CoreSerializers.INTEGER}, and create the serializers of the
+ * enums and collections once. They don't use reflection.
+ */
+public class SerializerProcessor extends AbstractProcessor {
+    static final String SERIAL_OBJECT = "com.twitter.serial.annotation.SerialObject";
+    static final String SERIAL_FIELD = "com.twitter.serial.annotation.SerialField";
+    private static final String BUILDER = "com.twitter.serial.object.Builder";
+    private static final String SERIALIZER = "com.twitter.serial.serializer.Serializer";
+    private static final String CORE_SERIALIZERS = "CoreSerializers";
+    private static final String COLLECTION_SERIALIZERS = "CollectionSerializers";
+
+    @Override
+    @NotNull
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(SERIAL_OBJECT);
+    }
+
+    @Override
+    @NotNull
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(@NotNull Set<? extends TypeElement> annotations, @NotNull RoundEnvironment roundEnv) {
+        final TypeElement annotation = processingEnv.getElementUtils().getTypeElement(SERIAL_OBJECT);
+        if (annotation == null) {
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            try {
+                writeSerializer((TypeElement) element, parseClass(element));
+            } catch (ProcessingException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Failed to write the serializer: " + e, element);
+            }
+        }
+        return true;
+    }
+
+    private void writeSerializer(@NotNull TypeElement type, @NotNull SerialClass serialClass) throws IOException {
+        final String name = serialClass.packageName.isEmpty() ? serialClass.serializerName :
+                serialClass.packageName + '.' + serialClass.serializerName;
+        final JavaFileObject file = processingEnv.getFiler().createSourceFile(name, type);
+        final Writer writer = file.openWriter();
+        try {
+            writer.write(new SerializerWriter(serialClass).write());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @NotNull
+    private SerialClass parseClass(@NotNull Element element) throws ProcessingException {
+        if (element.getKind() != ElementKind.CLASS) {
+            throw new ProcessingException(element, "@SerialObject can only be used on classes.");
+        }
+        final TypeElement type = (TypeElement) element;
+        if (!type.getTypeParameters().isEmpty()) {
+            throw new ProcessingException(type, "@SerialObject classes can't have type parameters.");
+        }
+        final StringBuilder serializerName = new StringBuilder();
+        for (Element e = type; e.getKind().isClass() || e.getKind().isInterface(); e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new ProcessingException(e, "@SerialObject classes can't be private.");
+            }
+            if (((TypeElement) e).getNestingKind() == NestingKind.MEMBER &&
+                    !e.getModifiers().contains(Modifier.STATIC)) {
+                throw new ProcessingException(e, "@SerialObject nested classes must be static.");
+            }
+            serializerName.insert(0, serializerName.length() == 0 ? "" : "_").insert(0, e.getSimpleName());
+        }
+        serializerName.append("Serializer");
+        final int version = getIntValue(getAnnotation(type, SERIAL_OBJECT), "version");
+        if (version < 0) {
+            throw new ProcessingException(type, "The version number is negative: " + version + ".");
+        }
+
+        final TypeElement builder = findBuilder(type);
+        final List<SerialClass.Field> fields = new ArrayList<>();
+        final List<VariableElement> fieldElements = new ArrayList<>();
+        int lastSince = 0;
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            final AnnotationMirror fieldAnnotation = getAnnotation(field, SERIAL_FIELD);
+            if (fieldAnnotation == null) {
+                continue;
+            }
+            if (field.getModifiers().contains(Modifier.PRIVATE) || field.getModifiers().contains(Modifier.STATIC)) {
+                throw new ProcessingException(field, "@SerialField fields can't be private or static.");
+            }
+            final int since = getIntValue(fieldAnnotation, "since");
+            if (since < lastSince || since > version) {
+                throw new ProcessingException(field, "Invalid version " + since + ": the fields must be declared " +
+                        "in the order of their versions, which can't be greater than the class version " + version +
+                        ".");
+            }
+            lastSince = since;
+            final TypeMirror fieldType = field.asType();
+            final String name = field.getSimpleName().toString();
+            final String setterName = builder != null ? findSetter(builder, field) : null;
+            final SerialClass.Field serialField = new SerialClass.Field(name, getTypeName(field, fieldType), since,
+                    setterName, getDefaultValue(fieldType));
+            setCodec(field, fieldType, serialField);
+            fields.add(serialField);
+            fieldElements.add(field);
+        }
+        if (builder == null) {
+            checkConstructor(type, fieldElements);
+        } else if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new ProcessingException(type, "@SerialObject classes can't be abstract.");
+        }
+        return new SerialClass(getPackageName(type), type.getQualifiedName().toString(), serializerName.toString(),
+                version, fields, builder != null ? builder.getQualifiedName().toString() : null);
+    }
+
+    /**
+     * @return the nested Builder class, if it implements the Builder interface of the library.
+     */
+    @Nullable
+    private TypeElement findBuilder(@NotNull TypeElement type) {
+        final TypeElement builderInterface = processingEnv.getElementUtils().getTypeElement(BUILDER);
+        if (builderInterface == null) {
+            return null;
+        }
+        final Types types = processingEnv.getTypeUtils();
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            if (nested.getSimpleName().contentEquals("Builder") &&
+                    types.isAssignable(types.erasure(nested.asType()), types.erasure(builderInterface.asType()))) {
+                return nested;
+            }
+        }
+        return null;
+    }
+
+    @NotNull
+    private String findSetter(@NotNull TypeElement builder, @NotNull VariableElement field)
+            throws ProcessingException {
+        final String name = field.getSimpleName().toString();
+        final String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        final Types types = processingEnv.getTypeUtils();
+        for (ExecutableElement method : ElementFilter.methodsIn(builder.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals(setterName) && method.getParameters().size() == 1 &&
+                    !method.getModifiers().contains(Modifier.PRIVATE) &&
+                    types.isAssignable(field.asType(), method.getParameters().get(0).asType())) {
+                return setterName;
+            }
+        }
+        throw new ProcessingException(field, "The builder has no method " + setterName + " for the field.");
+    }
+
+    private void checkConstructor(@NotNull TypeElement type, @NotNull List<VariableElement> fields)
+            throws ProcessingException {
+        final Types types = processingEnv.getTypeUtils();
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            final List<? extends VariableElement> parameters = constructor.getParameters();
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || parameters.size() != fields.size()) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < fields.size() && matches; i++) {
+                matches = types.isAssignable(fields.get(i).asType(), parameters.get(i).asType());
+            }
+            if (matches) {
+                return;
+            }
+        }
+        throw new ProcessingException(type, "@SerialObject classes need a nested Builder class or a constructor " +
+                "taking the @SerialField fields in declaration order.");
+    }
+
+    /**
+     * Sets how the field is written and read.
+     */
+    private void setCodec(@NotNull VariableElement field, @NotNull TypeMirror type,
+            @NotNull SerialClass.Field serialField) throws ProcessingException {
+        switch (type.getKind()) {
+            case BOOLEAN: {
+                setMethods(serialField, "Boolean", null);
+                return;
+            }
+            case BYTE: {
+                setMethods(serialField, "Byte", null);
+                return;
+            }
+            case SHORT: {
+                setMethods(serialField, "Int", "short");
+                return;
+            }
+            case CHAR: {
+                setMethods(serialField, "Int", "char");
+                return;
+            }
+            case INT: {
+                setMethods(serialField, "Int", null);
+                return;
+            }
+            case LONG: {
+                setMethods(serialField, "Long", null);
+                return;
+            }
+            case FLOAT: {
+                setMethods(serialField, "Float", null);
+                return;
+            }
+            case DOUBLE: {
+                setMethods(serialField, "Double", null);
+                return;
+            }
+            case ARRAY: {
+                final TypeKind componentKind = ((ArrayType) type).getComponentType().getKind();
+                if (componentKind == TypeKind.BYTE || componentKind == TypeKind.INT ||
+                        componentKind == TypeKind.LONG || componentKind == TypeKind.FLOAT ||
+                        componentKind == TypeKind.DOUBLE) {
+                    final String name = componentKind.name();
+                    setMethods(serialField, name.charAt(0) + name.substring(1).toLowerCase() + "Array", null);
+                    return;
+                }
+                break;
+            }
+            case DECLARED: {
+                if (getQualifiedName(type).equals("java.lang.String")) {
+                    setMethods(serialField, "String", null);
+                    return;
+                }
+                serialField.serializer = getSerializer(field, type);
+                // Constants are used directly, created serializers are shared by the instances.
+                serialField.sharedSerializer = serialField.serializer.indexOf('(') >= 0;
+                return;
+            }
+            default: {
+                break;
+            }
+        }
+        throw new ProcessingException(field, "Unsupported field type " + type + ".");
+    }
+
+    private static void setMethods(@NotNull SerialClass.Field field, @NotNull String type, @Nullable String cast) {
+        field.writeMethod = "write" + type;
+        field.readMethod = "read" + type;
+        field.readCast = cast;
+    }
+
+    /**
+     * @return the expression of the serializer of a declared type.
+     */
+    @NotNull
+    private String getSerializer(@NotNull Element field, @NotNull TypeMirror type) throws ProcessingException {
+        final String name = getQualifiedName(type);
+        switch (name) {
+            case "java.lang.Boolean": {
+                return CORE_SERIALIZERS + ".BOOLEAN";
+            }
+            case "java.lang.Byte": {
+                return CORE_SERIALIZERS + ".BYTE";
+            }
+            case "java.lang.Short": {
+                return CORE_SERIALIZERS + ".SHORT";
+            }
+            case "java.lang.Character": {
+                return CORE_SERIALIZERS + ".CHARACTER";
+            }
+            case "java.lang.Integer": {
+                return CORE_SERIALIZERS + ".INTEGER";
+            }
+            case "java.lang.Long": {
+                return CORE_SERIALIZERS + ".LONG";
+            }
+            case "java.lang.Float": {
+                return CORE_SERIALIZERS + ".FLOAT";
+            }
+            case "java.lang.Double": {
+                return CORE_SERIALIZERS + ".DOUBLE";
+            }
+            case "java.lang.String": {
+                return CORE_SERIALIZERS + ".STRING";
+            }
+            case "java.math.BigDecimal": {
+                return CORE_SERIALIZERS + ".BIG_DECIMAL";
+            }
+            case "java.util.Date": {
+                return CORE_SERIALIZERS + ".DATE";
+            }
+            case "java.util.List": {
+                return COLLECTION_SERIALIZERS + ".getListSerializer(" +
+                        getElementSerializer(field, type, 0) + ')';
+            }
+            case "java.util.Set": {
+                return COLLECTION_SERIALIZERS + ".getSetSerializer(" +
+                        getElementSerializer(field, type, 0) + ')';
+            }
+            case "java.util.Map": {
+                return COLLECTION_SERIALIZERS + ".getMapSerializer(" + getElementSerializer(field, type, 0) +
+                        ", " + getElementSerializer(field, type, 1) + ')';
+            }
+            default: {
+                break;
+            }
+        }
+        final TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        if (element.getKind() == ElementKind.ENUM) {
+            return CORE_SERIALIZERS + ".getEnumSerializer(" + name + ".class)";
+        }
+        if (!((DeclaredType) type).getTypeArguments().isEmpty()) {
+            throw new ProcessingException(field, "Unsupported generic type " + type + ".");
+        }
+        final Types types = processingEnv.getTypeUtils();
+        final TypeElement serializerType = processingEnv.getElementUtils().getTypeElement(SERIALIZER);
+        for (VariableElement staticField : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+            if (staticField.getSimpleName().contentEquals("SERIALIZER") &&
+                    staticField.getModifiers().contains(Modifier.STATIC) &&
+                    !staticField.getModifiers().contains(Modifier.PRIVATE) && serializerType != null &&
+                    types.isAssignable(types.erasure(staticField.asType()), types.erasure(serializerType.asType()))) {
+                return name + ".SERIALIZER";
+            }
+        }
+        if (getAnnotation(element, SERIAL_OBJECT) != null) {
+            final String packageName = getPackageName(element);
+            final String serializerName = name.substring(packageName.isEmpty() ? 0 : packageName.length() + 1)
+                    .replace('.', '_');
+            return "new " + (packageName.isEmpty() ? "" : packageName + '.') + serializerName + "Serializer()";
+        }
+        throw new ProcessingException(field, "No serializer found for " + type + ": the type must declare a static " +
+                "SERIALIZER field or be annotated with @SerialObject.");
+    }
+
+    /**
+     * @return the serializer of a type argument of a collection.
+     */
+    @NotNull
+    private String getElementSerializer(@NotNull Element field, @NotNull TypeMirror collectionType, int index)
+            throws ProcessingException {
+        final List<? extends TypeMirror> arguments = ((DeclaredType) collectionType).getTypeArguments();
+        if (arguments.size() <= index) {
+            throw new ProcessingException(field, "Raw collection types are not supported.");
+        }
+        final TypeMirror type = arguments.get(index);
+        if (type.getKind() == TypeKind.ARRAY) {
+            final TypeKind componentKind = ((ArrayType) type).getComponentType().getKind();
+            if (componentKind == TypeKind.INT || componentKind == TypeKind.LONG ||
+                    componentKind == TypeKind.FLOAT || componentKind == TypeKind.DOUBLE) {
+                return CORE_SERIALIZERS + '.' + componentKind.name() + "_ARRAY";
+            }
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            throw new ProcessingException(field, "Unsupported element type " + type + ".");
+        }
+        return getSerializer(field, type);
+    }
+
+    @NotNull
+    private String getTypeName(@NotNull Element field, @NotNull TypeMirror type) throws ProcessingException {
+        switch (type.getKind()) {
+            case ARRAY: {
+                return getTypeName(field, ((ArrayType) type).getComponentType()) + "[]";
+            }
+            case DECLARED: {
+                final List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+                if (arguments.isEmpty()) {
+                    return getQualifiedName(type);
+                }
+                final StringBuilder name = new StringBuilder(getQualifiedName(type)).append('<');
+                for (int i = 0; i < arguments.size(); i++) {
+                    name.append(i > 0 ? ", " : "").append(getTypeName(field, arguments.get(i)));
+                }
+                return name.append('>').toString();
+            }
+            default: {
+                if (type.getKind().isPrimitive()) {
+                    return type.getKind().name().toLowerCase();
+                }
+                throw new ProcessingException(field, "Unsupported field type " + type + ".");
+            }
+        }
+    }
+
+    @NotNull
+    private static String getDefaultValue(@NotNull TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN: {
+                return "false";
+            }
+            case BYTE: {
+                return "(byte) 0";
+            }
+            case SHORT: {
+                return "(short) 0";
+            }
+            case CHAR: {
+                return "(char) 0";
+            }
+            case INT: {
+                return "0";
+            }
+            case LONG: {
+                return "0L";
+            }
+            case FLOAT: {
+                return "0f";
+            }
+            case DOUBLE: {
+                return "0d";
+            }
+            default: {
+                return "null";
+            }
+        }
+    }
+
+    @NotNull
+    private static String getQualifiedName(@NotNull TypeMirror type) {
+        return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+    }
+
+    @NotNull
+    private String getPackageName(@NotNull Element element) {
+        return processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+    }
+
+    @Nullable
+    private static AnnotationMirror getAnnotation(@NotNull Element element, @NotNull String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the value of an int attribute of the annotation, or 0 if it isn't set.
+     */
+    private static int getIntValue(@Nullable AnnotationMirror annotation, @NotNull String attribute) {
+        if (annotation != null) {
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                    annotation.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+                    return (Integer) entry.getValue().getValue();
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static final class ProcessingException extends Exception {
+        private static final long serialVersionUID = -3472108364290517762L;
+
+        @NotNull
+        final Element element;
+
+        ProcessingException(@NotNull Element element, @NotNull String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
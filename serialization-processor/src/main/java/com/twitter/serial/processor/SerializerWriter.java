@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.processor;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes the source of the serializer of a {@link SerialClass}.
+ */
+final class SerializerWriter {
+    private static final String INDENT = "    ";
+    /**
+     * Names of the generated method parameters, which the locals of the fields must not shadow.
+     */
+    private static final Set<String> RESERVED_NAMES = new HashSet<>();
+
+    static {
+        RESERVED_NAMES.add("context");
+        RESERVED_NAMES.add("input");
+        RESERVED_NAMES.add("output");
+        RESERVED_NAMES.add("object");
+        RESERVED_NAMES.add("builder");
+        RESERVED_NAMES.add("versionNumber");
+    }
+
+    @NotNull private final SerialClass mClass;
+    @NotNull private final StringBuilder mSource = new StringBuilder();
+
+    SerializerWriter(@NotNull SerialClass serialClass) {
+        mClass = serialClass;
+    }
+
+    @NotNull
+    String write() {
+        mSource.append("// Generated by SerializerProcessor. Do not edit.\n");
+        if (!mClass.packageName.isEmpty()) {
+            mSource.append("package ").append(mClass.packageName).append(";\n");
+        }
+        mSource.append('\n')
+                .append("import com.twitter.serial.serializer.BuilderSerializer;\n")
+                .append("import com.twitter.serial.serializer.CollectionSerializers;\n")
+                .append("import com.twitter.serial.serializer.CoreSerializers;\n")
+                .append("import com.twitter.serial.serializer.ObjectSerializer;\n")
+                .append("import com.twitter.serial.serializer.SerializationContext;\n")
+                .append("import com.twitter.serial.serializer.Serializer;\n")
+                .append("import com.twitter.serial.stream.SerializerInput;\n")
+                .append("import com.twitter.serial.stream.SerializerOutput;\n")
+                .append('\n')
+                .append("import java.io.IOException;\n")
+                .append('\n')
+                .append("public final class ").append(mClass.serializerName).append(" extends ");
+        if (mClass.builderName != null) {
+            mSource.append("BuilderSerializer<").append(mClass.className).append(", ")
+                    .append(mClass.builderName).append("> {\n");
+        } else {
+            mSource.append("ObjectSerializer<").append(mClass.className).append("> {\n");
+        }
+        line(1, "public " + mClass.serializerName + "() {");
+        line(2, "super(" + mClass.version + ");");
+        line(1, "}");
+        writeSerializeObject();
+        if (mClass.builderName != null) {
+            writeCreateBuilder(mClass.builderName);
+            writeDeserializeToBuilder(mClass.builderName);
+        } else {
+            writeDeserializeObject();
+        }
+        writeSerializers();
+        mSource.append("}\n");
+        return mSource.toString();
+    }
+
+    private void writeSerializeObject() {
+        mSource.append('\n');
+        line(1, "@Override");
+        line(1, "protected void serializeObject(SerializationContext context, SerializerOutput output, " +
+                mClass.className + " object)");
+        line(3, "throws IOException {");
+        for (SerialClass.Field field : mClass.fields) {
+            if (field.writeMethod != null) {
+                line(2, "output." + field.writeMethod + "(object." + field.name + ");");
+            } else {
+                line(2, getSerializer(field) + ".serialize(context, output, object." + field.name + ");");
+            }
+        }
+        line(1, "}");
+    }
+
+    private void writeCreateBuilder(@NotNull String builderName) {
+        mSource.append('\n');
+        line(1, "@Override");
+        line(1, "protected " + builderName + " createBuilder() {");
+        line(2, "return new " + builderName + "();");
+        line(1, "}");
+    }
+
+    private void writeDeserializeToBuilder(@NotNull String builderName) {
+        mSource.append('\n');
+        line(1, "@Override");
+        line(1, "protected void deserializeToBuilder(SerializationContext context, SerializerInput input, " +
+                builderName + " builder,");
+        line(3, "int versionNumber) throws IOException, ClassNotFoundException {");
+        int version = 0;
+        for (SerialClass.Field field : mClass.fields) {
+            if (field.since > version) {
+                version = field.since;
+                line(2, "if (versionNumber < " + version + ") {");
+                line(3, "return;");
+                line(2, "}");
+            }
+            line(2, "builder." + field.setterName + "(" + getReadExpression(field) + ");");
+        }
+        line(1, "}");
+    }
+
+    private void writeDeserializeObject() {
+        mSource.append('\n');
+        line(1, "@Override");
+        line(1, "protected " + mClass.className + " deserializeObject(SerializationContext context, " +
+                "SerializerInput input,");
+        line(3, "int versionNumber) throws IOException, ClassNotFoundException {");
+        final StringBuilder arguments = new StringBuilder();
+        for (SerialClass.Field field : mClass.fields) {
+            final String local = RESERVED_NAMES.contains(field.name) ? field.name + '_' : field.name;
+            if (field.since > 0) {
+                line(2, "final " + field.typeName + ' ' + local + " = versionNumber >= " + field.since + " ? " +
+                        getReadExpression(field) + " : " + field.defaultValue + ';');
+            } else {
+                line(2, "final " + field.typeName + ' ' + local + " = " + getReadExpression(field) + ';');
+            }
+            arguments.append(arguments.length() > 0 ? ", " : "").append(local);
+        }
+        line(2, "return new " + mClass.className + "(" + arguments + ");");
+        line(1, "}");
+    }
+
+    /**
+     * Writes the holder of the serializers created by the generated serializer.
+     */
+    private void writeSerializers() {
+        boolean hasSharedSerializers = false;
+        for (SerialClass.Field field : mClass.fields) {
+            if (field.sharedSerializer) {
+                if (!hasSharedSerializers) {
+                    hasSharedSerializers = true;
+                    mSource.append('\n');
+                    line(1, "private static final class Serializers {");
+                }
+                line(2, "static final Serializer<" + field.typeName + "> " + getConstantName(field) + " =");
+                line(4, field.serializer + ';');
+            }
+        }
+        if (hasSharedSerializers) {
+            line(1, "}");
+        }
+    }
+
+    @NotNull
+    private static String getReadExpression(@NotNull SerialClass.Field field) {
+        if (field.readMethod != null) {
+            return (field.readCast != null ? "(" + field.readCast + ") " : "") + "input." + field.readMethod + "()";
+        }
+        return getSerializer(field) + ".deserialize(context, input)";
+    }
+
+    @NotNull
+    private static String getSerializer(@NotNull SerialClass.Field field) {
+        return field.sharedSerializer ? "Serializers." + getConstantName(field) : field.serializer;
+    }
+
+    /**
+     * @return the name of the field in upper snake case, eg. FIELD_NAME for fieldName.
+     */
+    @NotNull
+    private static String getConstantName(@NotNull SerialClass.Field field) {
+        final StringBuilder name = new StringBuilder();
+        for (int i = 0; i < field.name.length(); i++) {
+            final char c = field.name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && !Character.isUpperCase(field.name.charAt(i - 1))) {
+                name.append('_');
+            }
+            name.append(Character.toUpperCase(c));
+        }
+        return name.toString();
+    }
+
+    private void line(int indent, @NotNull String line) {
+        for (int i = 0; i < indent; i++) {
+            mSource.append(INDENT);
+        }
+        mSource.append(line).append('\n');
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.processor;
+
+import com.twitter.serial.annotation.SerialField;
+import com.twitter.serial.annotation.SerialObject;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+@SerialObject(version = 1)
+public class SampleChild {
+    @SerialField @NotNull final String name;
+    @SerialField final long id;
+    @SerialField(since = 1) @Nullable final SampleChild parent;
+
+    public SampleChild(@NotNull String name, long id, @Nullable SampleChild parent) {
+        this.name = name;
+        this.id = id;
+        this.parent = parent;
+    }
+}
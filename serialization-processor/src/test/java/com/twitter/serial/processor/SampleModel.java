@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.processor;
+
+import com.twitter.serial.annotation.SerialField;
+import com.twitter.serial.annotation.SerialObject;
+import com.twitter.serial.object.ObjectBuilder;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+@SerialObject(version = 1)
+public class SampleModel {
+    public static final SampleModelSerializer SERIALIZER = new SampleModelSerializer();
+
+    public enum Type {
+        FIRST,
+        SECOND
+    }
+
+    @SerialField final boolean flag;
+    @SerialField final byte b;
+    @SerialField final short s;
+    @SerialField final char c;
+    @SerialField final int i;
+    @SerialField final long l;
+    @SerialField final float f;
+    @SerialField final double d;
+    @SerialField @Nullable final String string;
+    @SerialField @Nullable final int[] values;
+    @SerialField @Nullable final Integer boxed;
+    @SerialField @Nullable final Type type;
+    @SerialField @Nullable final List<String> tags;
+    @SerialField @Nullable final Map<String, List<SampleChild>> children;
+    @SerialField @Nullable final SampleChild child;
+    @SerialField(since = 1) @Nullable final String description;
+
+    SampleModel(@NotNull Builder builder) {
+        flag = builder.mFlag;
+        b = builder.mB;
+        s = builder.mS;
+        c = builder.mC;
+        i = builder.mI;
+        l = builder.mL;
+        f = builder.mF;
+        d = builder.mD;
+        string = builder.mString;
+        values = builder.mValues;
+        boxed = builder.mBoxed;
+        type = builder.mType;
+        tags = builder.mTags;
+        children = builder.mChildren;
+        child = builder.mChild;
+        description = builder.mDescription;
+    }
+
+    public static class Builder extends ObjectBuilder<SampleModel> {
+        boolean mFlag;
+        byte mB;
+        short mS;
+        char mC;
+        int mI;
+        long mL;
+        float mF;
+        double mD;
+        @Nullable String mString;
+        @Nullable int[] mValues;
+        @Nullable Integer mBoxed;
+        @Nullable Type mType;
+        @Nullable List<String> mTags;
+        @Nullable Map<String, List<SampleChild>> mChildren;
+        @Nullable SampleChild mChild;
+        @Nullable String mDescription;
+
+        @NotNull
+        public Builder setFlag(boolean flag) {
+            mFlag = flag;
+            return this;
+        }
+
+        @NotNull
+        public Builder setB(byte b) {
+            mB = b;
+            return this;
+        }
+
+        @NotNull
+        public Builder setS(short s) {
+            mS = s;
+            return this;
+        }
+
+        @NotNull
+        public Builder setC(char c) {
+            mC = c;
+            return this;
+        }
+
+        @NotNull
+        public Builder setI(int i) {
+            mI = i;
+            return this;
+        }
+
+        @NotNull
+        public Builder setL(long l) {
+            mL = l;
+            return this;
+        }
+
+        @NotNull
+        public Builder setF(float f) {
+            mF = f;
+            return this;
+        }
+
+        @NotNull
+        public Builder setD(double d) {
+            mD = d;
+            return this;
+        }
+
+        @NotNull
+        public Builder setString(@Nullable String string) {
+            mString = string;
+            return this;
+        }
+
+        @NotNull
+        public Builder setValues(@Nullable int[] values) {
+            mValues = values;
+            return this;
+        }
+
+        @NotNull
+        public Builder setBoxed(@Nullable Integer boxed) {
+            mBoxed = boxed;
+            return this;
+        }
+
+        @NotNull
+        public Builder setType(@Nullable Type type) {
+            mType = type;
+            return this;
+        }
+
+        @NotNull
+        public Builder setTags(@Nullable List<String> tags) {
+            mTags = tags;
+            return this;
+        }
+
+        @NotNull
+        public Builder setChildren(@Nullable Map<String, List<SampleChild>> children) {
+            mChildren = children;
+            return this;
+        }
+
+        @NotNull
+        public Builder setChild(@Nullable SampleChild child) {
+            mChild = child;
+            return this;
+        }
+
+        @NotNull
+        public Builder setDescription(@Nullable String description) {
+            mDescription = description;
+            return this;
+        }
+
+        @NotNull
+        @Override
+        protected SampleModel buildObject() {
+            return new SampleModel(this);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.processor;
+
+import com.twitter.serial.serializer.ObjectSerializer;
+import com.twitter.serial.serializer.SerializationContext;
+import com.twitter.serial.serializer.Serializer;
+import com.twitter.serial.stream.SerializerInput;
+import com.twitter.serial.stream.SerializerOutput;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerInput;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerOutput;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class SerializerProcessorTests {
+    private static final SerializationContext CONTEXT = SerializationContext.ALWAYS_RELEASE;
+
+    @Test
+    public void testBuilderSerializer() throws Exception {
+        final SampleChild child = new SampleChild("child", 2, new SampleChild("parent", 1, null));
+        final Map<String, List<SampleChild>> children = Collections.singletonMap("key", Arrays.asList(child, null));
+        final SampleModel model = new SampleModel.Builder()
+                .setFlag(true)
+                .setB((byte) 1)
+                .setS((short) -2)
+                .setC('c')
+                .setI(Integer.MIN_VALUE)
+                .setL(Long.MAX_VALUE)
+                .setF(1.5f)
+                .setD(-2.5)
+                .setString("string")
+                .setValues(new int[] { 1, 2, 3 })
+                .setBoxed(4)
+                .setType(SampleModel.Type.SECOND)
+                .setTags(Arrays.asList("a", "b"))
+                .setChildren(children)
+                .setChild(child)
+                .setDescription("description")
+                .build();
+
+        final SampleModel result = roundTrip(model, SampleModel.SERIALIZER);
+        assertThat(result).isEqualToComparingFieldByFieldRecursively(model);
+    }
+
+    @Test
+    public void testConstructorSerializer() throws Exception {
+        final SampleChild child = new SampleChild("child", 2, new SampleChild("parent", 1, null));
+        final Serializer<SampleChild> serializer = new SampleChildSerializer();
+        assertThat(roundTrip(child, serializer)).isEqualToComparingFieldByFieldRecursively(child);
+        assertThat(roundTrip(null, serializer)).isNull();
+    }
+
+    @Test
+    public void testMatchesHandWrittenSerializer() throws Exception {
+        final SampleChild child = new SampleChild("child", 2, new SampleChild("parent", 1, null));
+        final byte[] expected = new ByteBufferSerializerOutput()
+                .writeObject(CONTEXT, child, new HandWrittenChildSerializer(1))
+                .getSerializedData();
+        final byte[] generated = new ByteBufferSerializerOutput()
+                .writeObject(CONTEXT, child, new SampleChildSerializer())
+                .getSerializedData();
+        assertThat(generated).isEqualTo(expected);
+        assertThat(new ByteBufferSerializerInput(generated).readObject(CONTEXT, new HandWrittenChildSerializer(1)))
+                .isEqualToComparingFieldByFieldRecursively(child);
+    }
+
+    @Test
+    public void testOlderVersion() throws Exception {
+        final SampleChild child = new SampleChild("child", 2, new SampleChild("parent", 1, null));
+        final byte[] bytes = new ByteBufferSerializerOutput()
+                .writeObject(CONTEXT, child, new HandWrittenChildSerializer(0))
+                .getSerializedData();
+        final SampleChild result = new ByteBufferSerializerInput(bytes).readObject(CONTEXT,
+                new SampleChildSerializer());
+        assertThat(result.name).isEqualTo("child");
+        assertThat(result.id).isEqualTo(2);
+        assertThat(result.parent).isNull();
+
+        final SampleModel model = new SampleModel.Builder().setI(3).setDescription("description").build();
+        final byte[] modelBytes = new ByteBufferSerializerOutput()
+                .writeObjectStart(0)
+                .writeBoolean(false)
+                .writeByte((byte) 0)
+                .writeInt(0)
+                .writeInt(0)
+                .writeInt(model.i)
+                .writeLong(0)
+                .writeFloat(0)
+                .writeDouble(0)
+                .writeString(null)
+                .writeIntArray(null)
+                .writeNull()
+                .writeNull()
+                .writeNull()
+                .writeNull()
+                .writeNull()
+                .writeObjectEnd()
+                .getSerializedData();
+        final SampleModel modelResult = new ByteBufferSerializerInput(modelBytes).readObject(CONTEXT,
+                SampleModel.SERIALIZER);
+        assertThat(modelResult.i).isEqualTo(3);
+        assertThat(modelResult.description).isNull();
+    }
+
+    @Test
+    public void testInvalidFields() {
+        assertThat(compile("Private",
+                "@com.twitter.serial.annotation.SerialObject\n" +
+                "public class Private {\n" +
+                "    @com.twitter.serial.annotation.SerialField private final int value;\n" +
+                "    public Private(int value) { this.value = value; }\n" +
+                "}\n")).contains("@SerialField fields can't be private or static.");
+        assertThat(compile("NoConstructor",
+                "@com.twitter.serial.annotation.SerialObject\n" +
+                "public class NoConstructor {\n" +
+                "    @com.twitter.serial.annotation.SerialField int value;\n" +
+                "}\n")).contains("a constructor taking the @SerialField fields");
+        assertThat(compile("Version",
+                "@com.twitter.serial.annotation.SerialObject(version = 1)\n" +
+                "public class Version {\n" +
+                "    @com.twitter.serial.annotation.SerialField(since = 1) int first;\n" +
+                "    @com.twitter.serial.annotation.SerialField int second;\n" +
+                "    public Version(int first, int second) { this.first = first; this.second = second; }\n" +
+                "}\n")).contains("Invalid version 0");
+        assertThat(compile("Unsupported",
+                "@com.twitter.serial.annotation.SerialObject\n" +
+                "public class Unsupported {\n" +
+                "    @com.twitter.serial.annotation.SerialField Object value;\n" +
+                "    public Unsupported(Object value) { this.value = value; }\n" +
+                "}\n")).contains("No serializer found for java.lang.Object");
+    }
+
+    @NotNull
+    private static <T> T roundTrip(T object, @NotNull Serializer<T> serializer) throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput().writeObject(CONTEXT, object, serializer)
+                .getSerializedData();
+        return new ByteBufferSerializerInput(bytes).readObject(CONTEXT, serializer);
+    }
+
+    /**
+     * Compiles a source with the processor and returns the errors.
+     */
+    @NotNull
+    private static String compile(@NotNull String className, @NotNull final String source) {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        final File outputDir = new File(System.getProperty("java.io.tmpdir"), "serializer-processor-tests");
+        //noinspection ResultOfMethodCallIgnored
+        outputDir.mkdirs();
+        final JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                Arrays.asList("-proc:only", "-s", outputDir.getPath(), "-classpath",
+                        System.getProperty("java.class.path")),
+                null, Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new SerializerProcessor()));
+        task.call();
+        final StringBuilder errors = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.append(diagnostic.getMessage(null)).append('\n');
+            }
+        }
+        return errors.toString();
+    }
+
+    /**
+     * The serializer that would be written by hand for {@link SampleChild}.
+     */
+    private static final class HandWrittenChildSerializer extends ObjectSerializer<SampleChild> {
+        private final int mVersion;
+
+        HandWrittenChildSerializer(int versionNumber) {
+            super(versionNumber);
+            mVersion = versionNumber;
+        }
+
+        @Override
+        protected void serializeObject(@NotNull SerializationContext context, @NotNull SerializerOutput output,
+                @NotNull SampleChild object) throws IOException {
+            output.writeString(object.name)
+                    .writeLong(object.id);
+            if (mVersion > 0) {
+                serialize(context, output, object.parent);
+            }
+        }
+
+        @NotNull
+        @Override
+        protected SampleChild deserializeObject(@NotNull SerializationContext context,
+                @NotNull SerializerInput input, int versionNumber) throws IOException, ClassNotFoundException {
+            final String name = input.readNotNullString();
+            final long id = input.readLong();
+            final SampleChild parent = versionNumber > 0 ? deserialize(context, input) : null;
+            return new SampleChild(name, id, parent);
+        }
+    }
+}
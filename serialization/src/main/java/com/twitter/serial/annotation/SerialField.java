@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A field serialized by the serializer generated for a {@link SerialObject} class. The field must not be private.
+ * <p>
+ * Primitives, strings, primitive arrays, enums, lists, sets and maps of these types are supported, along with the
+ * types that declare a static {@code SERIALIZER} field or are annotated with {@link SerialObject}.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface SerialField {
+    /**
+     * The version of the serializer that added the field. The field is not read from data written by an older
+     * version, and keeps its default value. Fields added by a version must be declared after the older ones.
+     */
+    int since() default 0;
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates the serializer of the annotated class at compile time with the serialization-processor module. The
+ * serializer is named after the class, eg. {@code PlaceSerializer} for {@code Place}, or {@code Outer_InnerSerializer}
+ * for a nested class, and serializes the fields annotated with {@link SerialField} in declaration order.
+ * <p>
+ * The class is deserialized with its nested {@code Builder} class if it implements
+ * {@link com.twitter.serial.object.Builder}, calling a setter named after each field (eg. {@code setName} for
+ * {@code name}), otherwise with a constructor taking the fields in declaration order.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface SerialObject {
+    /**
+     * The version number of the serializer, which must be incremented when fields are added.
+     */
+    int version() default 0;
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.serializer;
+
+import com.twitter.serial.stream.SerializerInput;
+import com.twitter.serial.stream.SerializerOutput;
+import com.twitter.serial.util.InternalSerialUtils;
+import com.twitter.serial.util.SerializableClass;
+import com.twitter.serial.util.SerializationException;
+import com.twitter.serial.util.SerializationUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes an object with the serializer of its class, see
+ * {@link CoreSerializers#getBaseClassSerializer(SerializableClass[])}. The index of the subclass is written before
+ * the object, and the subclass of an object is found with a map built when the subclasses are set, rather than by
+ * comparing the class with every subclass.
+ *
+ * Subclasses can be added with {@link #register(SerializableClass)}, and are numbered after the existing ones. A
+ * class listed more than once is serialized with its first index.
+ */
+public class BaseClassSerializer<B> extends ObjectSerializer<B> {
+    @NotNull private volatile Subclasses<B> mSubclasses;
+
+    public BaseClassSerializer(@NotNull List<SerializableClass<? extends B>> subclasses) {
+        mSubclasses = new Subclasses<>(InternalSerialUtils.<SerializableClass<? extends B>[]>cast(
+                subclasses.toArray(new SerializableClass<?>[subclasses.size()])));
+    }
+
+    /**
+     * Adds a subclass, which is serialized with the index following the previous subclasses.
+     *
+     * @return the index of the subclass.
+     */
+    public synchronized int register(@NotNull SerializableClass<? extends B> subclass) {
+        final SerializableClass<? extends B>[] subclasses = mSubclasses.subclasses;
+        final SerializableClass<? extends B>[] newSubclasses = Arrays.copyOf(subclasses, subclasses.length + 1);
+        newSubclasses[subclasses.length] = subclass;
+        mSubclasses = new Subclasses<>(newSubclasses);
+        return subclasses.length;
+    }
+
+    @Override
+    protected void serializeObject(@NotNull SerializationContext context,
+            @NotNull SerializerOutput output, @NotNull B object) throws IOException {
+        final Subclasses<B> subclasses = mSubclasses;
+        final Integer index = subclasses.indices.get(object.getClass());
+        if (index == null) {
+            throw new SerializationException(
+                    "Serializer not defined for base class serialization for : " +
+                            object.getClass().getSimpleName());
+        }
+        final SerializableClass<B> subclass = InternalSerialUtils.cast(subclasses.subclasses[index]);
+        final SerializerOutput<?> typedOutput = output;
+        typedOutput.writeInt(index);
+        typedOutput.writeObject(context, subclass.klass.cast(object), subclass.serializer);
+    }
+
+    @Nullable
+    @Override
+    protected B deserializeObject(@NotNull SerializationContext context,
+            @NotNull SerializerInput input, int versionNumber)
+            throws IOException, ClassNotFoundException {
+        final SerializableClass<? extends B>[] subclasses = mSubclasses.subclasses;
+        final int type = input.readInt();
+        if (type < 0 || type >= subclasses.length) {
+            throw new SerializationException(
+                    "Invalid type found in base class deserialization: " + type);
+        }
+        final SerializableClass<? extends B> subclass = subclasses[type];
+        if (SerializableClass.isDummy(subclass)) {
+            SerializationUtils.skipObject(input);
+            return null;
+        }
+        return InternalSerialUtils.cast(subclass.serializer.deserializeNotNull(context, input));
+    }
+
+    /**
+     * An immutable list of subclasses, replaced when a subclass is registered.
+     */
+    private static final class Subclasses<B> {
+        @NotNull final SerializableClass<? extends B>[] subclasses;
+        @NotNull final Map<Class<?>, Integer> indices;
+
+        Subclasses(@NotNull SerializableClass<? extends B>[] subclasses) {
+            this.subclasses = subclasses;
+            indices = new HashMap<>(CollectionFactory.getHashCapacity(subclasses.length));
+            for (int i = 0; i < subclasses.length; i++) {
+                if (!SerializableClass.isDummy(subclasses[i])) {
+                    final Class<?> klass = subclasses[i].klass;
+                    if (!indices.containsKey(klass)) {
+                        indices.put(klass, i);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package com.twitter.serial.serializer;
 
 import com.twitter.serial.object.Builder;
+import com.twitter.serial.stream.SerializerDefs;
 import com.twitter.serial.stream.SerializerInput;
 import com.twitter.serial.util.OptionalFieldException;
 import com.twitter.serial.util.SerializationException;
@@ -46,6 +47,9 @@ public abstract class BuilderSerializer<T, B extends Builder<T>> extends ObjectS
         if (SerializationUtils.readNullIndicator(input)) {
             return;
         }
+        if (input.peekType() == SerializerDefs.TYPE_OBJECT_REF) {
+            throw new SerializationException("An object reference can't be deserialized into a builder.");
+        }
         final int deserializedVersionNumber = input.readObjectStart();
         if (deserializedVersionNumber > mVersionNumber) {
             throw new SerializationException(
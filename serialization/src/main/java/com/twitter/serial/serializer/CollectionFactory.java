@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.serializer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates the collections filled by the {@link CollectionSerializers} on deserialization, eg. to get a
+ * {@link LinkedHashMap}, an unmodifiable collection or a primitive specialized collection.
+ *
+ * @param <C> the type of the collection.
+ */
+public abstract class CollectionFactory<C> {
+    /**
+     * @param capacity the number of elements that will be added, capped so that corrupt data can't allocate a large
+     * collection before failing to read the elements.
+     * @return an empty collection that can hold the given number of elements without growing.
+     */
+    @NotNull
+    public abstract C create(int capacity);
+
+    /**
+     * Called once all the elements are added, eg. to make the collection unmodifiable.
+     */
+    @NotNull
+    public C complete(@NotNull C collection) {
+        return collection;
+    }
+
+    @NotNull
+    public static <T> CollectionFactory<List<T>> arrayList() {
+        return new CollectionFactory<List<T>>() {
+            @NotNull
+            @Override
+            public List<T> create(int capacity) {
+                return new ArrayList<>(capacity);
+            }
+        };
+    }
+
+    @NotNull
+    public static <T> CollectionFactory<List<T>> unmodifiableList() {
+        return new CollectionFactory<List<T>>() {
+            @NotNull
+            @Override
+            public List<T> create(int capacity) {
+                return new ArrayList<>(capacity);
+            }
+
+            @NotNull
+            @Override
+            public List<T> complete(@NotNull List<T> list) {
+                return Collections.unmodifiableList(list);
+            }
+        };
+    }
+
+    @NotNull
+    public static <T> CollectionFactory<Set<T>> hashSet() {
+        return new CollectionFactory<Set<T>>() {
+            @NotNull
+            @Override
+            public Set<T> create(int capacity) {
+                return new HashSet<>(getHashCapacity(capacity));
+            }
+        };
+    }
+
+    @NotNull
+    public static <T> CollectionFactory<Set<T>> linkedHashSet() {
+        return new CollectionFactory<Set<T>>() {
+            @NotNull
+            @Override
+            public Set<T> create(int capacity) {
+                return new LinkedHashSet<>(getHashCapacity(capacity));
+            }
+        };
+    }
+
+    @NotNull
+    public static <T> CollectionFactory<Set<T>> unmodifiableSet() {
+        return new CollectionFactory<Set<T>>() {
+            @NotNull
+            @Override
+            public Set<T> create(int capacity) {
+                return new HashSet<>(getHashCapacity(capacity));
+            }
+
+            @NotNull
+            @Override
+            public Set<T> complete(@NotNull Set<T> set) {
+                return Collections.unmodifiableSet(set);
+            }
+        };
+    }
+
+    @NotNull
+    public static <K, V> CollectionFactory<Map<K, V>> hashMap() {
+        return new CollectionFactory<Map<K, V>>() {
+            @NotNull
+            @Override
+            public Map<K, V> create(int capacity) {
+                return new HashMap<>(getHashCapacity(capacity));
+            }
+        };
+    }
+
+    @NotNull
+    public static <K, V> CollectionFactory<Map<K, V>> linkedHashMap() {
+        return new CollectionFactory<Map<K, V>>() {
+            @NotNull
+            @Override
+            public Map<K, V> create(int capacity) {
+                return new LinkedHashMap<>(getHashCapacity(capacity));
+            }
+        };
+    }
+
+    @NotNull
+    public static <K, V> CollectionFactory<Map<K, V>> unmodifiableMap() {
+        return new CollectionFactory<Map<K, V>>() {
+            @NotNull
+            @Override
+            public Map<K, V> create(int capacity) {
+                return new HashMap<>(getHashCapacity(capacity));
+            }
+
+            @NotNull
+            @Override
+            public Map<K, V> complete(@NotNull Map<K, V> map) {
+                return Collections.unmodifiableMap(map);
+            }
+        };
+    }
+
+    /**
+     * @return the capacity of a hash based collection that holds the given number of elements without rehashing,
+     * with the default load factor of 0.75.
+     */
+    public static int getHashCapacity(int size) {
+        return size < 3 ? size + 1 : size + size / 3 + 1;
+    }
+}
@@ -17,6 +17,7 @@
 package com.twitter.serial.serializer;
 
 import com.twitter.serial.util.InternalSerialUtils;
+import com.twitter.serial.util.SerializationException;
 import com.twitter.serial.util.SerializationUtils;
 import com.twitter.serial.stream.SerializerInput;
 import com.twitter.serial.stream.SerializerOutput;
@@ -25,9 +26,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,25 +35,42 @@ import java.util.Set;
  * Serializers of collection objects: {@link List}, {@link Set}, {@link Map}.
  */
 public class CollectionSerializers {
+    /**
+     * The deserialized collections are pre-sized for at most this number of elements, so that a corrupt size doesn't
+     * allocate a large collection before failing to read the elements. Larger collections grow as usual.
+     */
+    private static final int MAX_PRESIZED_CAPACITY = 1 << 16;
+
     /**
      * @param itemSerializer of the {@code T}
      * @param <T>            the object in the list.
      * @return a {@link Serializer} for list T.
      */
     @NotNull
-    public static <T> Serializer<List<T>> getListSerializer(@NotNull final Serializer<T> itemSerializer) {
-        return new ObjectSerializer<List<T>>() {
+    public static <T> Serializer<List<T>> getListSerializer(@NotNull Serializer<T> itemSerializer) {
+        return getListSerializer(itemSerializer, CollectionFactory.<T>arrayList());
+    }
+
+    /**
+     * @param listFactory creates the deserialized lists.
+     * @return a {@link Serializer} for lists of type L.
+     */
+    @NotNull
+    public static <T, L extends List<T>> Serializer<L> getListSerializer(@NotNull final Serializer<T> itemSerializer,
+            @NotNull final CollectionFactory<L> listFactory) {
+        return new ObjectSerializer<L>() {
             @Override
             protected void serializeObject(@NotNull SerializationContext context,
-                    @NotNull SerializerOutput output, @NotNull List<T> list) throws IOException {
-                serializeList(context, output, list, itemSerializer);
+                    @NotNull SerializerOutput output, @NotNull L list) throws IOException {
+                serializeCollection(context, output, list, itemSerializer);
             }
 
             @NotNull
             @Override
-            protected List<T> deserializeObject(@NotNull SerializationContext context, @NotNull SerializerInput input, int versionNumber)
+            protected L deserializeObject(@NotNull SerializationContext context, @NotNull SerializerInput input, int versionNumber)
                     throws IOException, ClassNotFoundException {
-                return InternalSerialUtils.checkIsNotNull(deserializeList(context, input, itemSerializer));
+                return InternalSerialUtils.checkIsNotNull(
+                        deserializeCollection(context, input, itemSerializer, listFactory));
             }
         };
     }
@@ -65,20 +81,31 @@ public class CollectionSerializers {
      * @return a {@link Serializer} for set T.
      */
     @NotNull
-    public static <T> Serializer<Set<T>> getSetSerializer(@NotNull final Serializer<T> itemSerializer) {
-        return new ObjectSerializer<Set<T>>() {
+    public static <T> Serializer<Set<T>> getSetSerializer(@NotNull Serializer<T> itemSerializer) {
+        return getSetSerializer(itemSerializer, CollectionFactory.<T>hashSet());
+    }
+
+    /**
+     * @param setFactory creates the deserialized sets.
+     * @return a {@link Serializer} for sets of type S.
+     */
+    @NotNull
+    public static <T, S extends Set<T>> Serializer<S> getSetSerializer(@NotNull final Serializer<T> itemSerializer,
+            @NotNull final CollectionFactory<S> setFactory) {
+        return new ObjectSerializer<S>() {
             @Override
             protected void serializeObject(@NotNull SerializationContext context,
-                    @NotNull SerializerOutput output, @NotNull Set<T> object)
+                    @NotNull SerializerOutput output, @NotNull S object)
                     throws IOException {
-                serializeSet(context, output, object, itemSerializer);
+                serializeCollection(context, output, object, itemSerializer);
             }
 
             @NotNull
             @Override
-            protected Set<T> deserializeObject(@NotNull SerializationContext context, @NotNull SerializerInput input, int versionNumber)
+            protected S deserializeObject(@NotNull SerializationContext context, @NotNull SerializerInput input, int versionNumber)
                     throws IOException, ClassNotFoundException {
-                return InternalSerialUtils.checkIsNotNull(deserializeSet(context, input, itemSerializer));
+                return InternalSerialUtils.checkIsNotNull(
+                        deserializeCollection(context, input, itemSerializer, setFactory));
             }
         };
     }
@@ -90,76 +117,79 @@ public class CollectionSerializers {
      */
 
     @NotNull
-    public static <K, V> Serializer<Map<K, V>> getMapSerializer(@NotNull final Serializer<K> keySerializer,
-                                                                @NotNull final Serializer<V> valueSerializer) {
-        return new ObjectSerializer<Map<K, V>>() {
+    public static <K, V> Serializer<Map<K, V>> getMapSerializer(@NotNull Serializer<K> keySerializer,
+                                                                @NotNull Serializer<V> valueSerializer) {
+        return getMapSerializer(keySerializer, valueSerializer, CollectionFactory.<K, V>hashMap());
+    }
+
+    /**
+     * @param mapFactory creates the deserialized maps.
+     * @return a {@link Serializer} for maps of type M.
+     */
+    @NotNull
+    public static <K, V, M extends Map<K, V>> Serializer<M> getMapSerializer(
+            @NotNull final Serializer<K> keySerializer, @NotNull final Serializer<V> valueSerializer,
+            @NotNull final CollectionFactory<M> mapFactory) {
+        return new ObjectSerializer<M>() {
             @Override
             protected void serializeObject(@NotNull SerializationContext context,
-                    @NotNull SerializerOutput output, @NotNull Map<K, V> map)
+                    @NotNull SerializerOutput output, @NotNull M map)
                     throws IOException {
                 serializeMap(context, output, map, keySerializer, valueSerializer);
             }
 
             @NotNull
             @Override
-            protected Map<K, V> deserializeObject(@NotNull SerializationContext context, @NotNull SerializerInput input, int versionNumber)
+            protected M deserializeObject(@NotNull SerializationContext context, @NotNull SerializerInput input, int versionNumber)
                     throws IOException, ClassNotFoundException {
-                final Map<K, V> map = deserializeMap(context, input, keySerializer, valueSerializer);
+                final M map = deserializeMap(context, input, keySerializer, valueSerializer, mapFactory);
                 return InternalSerialUtils.checkIsNotNull(map);
             }
         };
     }
 
-    private static <T> void serializeList(@NotNull SerializationContext context,
-            @NotNull SerializerOutput output, @Nullable List<T> list,
-            @NotNull Serializer<T> serializer) throws IOException {
-        if (!SerializationUtils.writeNullIndicator(output, list)) {
-            output.writeInt(list.size());
-            for (T item : list) {
-                serializer.serialize(context, output, item);
-            }
+    /**
+     * Reads the size of a collection, and checks that it's valid.
+     */
+    static int readSize(@NotNull SerializerInput input) throws IOException {
+        final int size = input.readInt();
+        if (size < 0) {
+            throw new SerializationException("Invalid collection size: " + size + ".");
         }
+        return size;
     }
 
-    @Nullable
-    private static <T> List<T> deserializeList(@NotNull SerializationContext context,
-            @NotNull SerializerInput input, @NotNull Serializer<T> serializer)
-            throws IOException, ClassNotFoundException {
-        if (SerializationUtils.readNullIndicator(input)) {
-            return null;
-        }
-        final int size = input.readInt();
-        final List<T> list = new ArrayList<>();
-        for (int i = 0; i < size; i++) {
-            list.add(serializer.deserialize(context, input));
-        }
-        return list;
+    /**
+     * @return the capacity of the collection created for the given size.
+     */
+    static int getInitialCapacity(int size) {
+        return Math.min(size, MAX_PRESIZED_CAPACITY);
     }
 
-    private static <T> void serializeSet(@NotNull SerializationContext context,
-            @NotNull SerializerOutput output, @Nullable Set<T> set,
-            @NotNull Serializer<T> itemSerializer) throws IOException {
-        if (!SerializationUtils.writeNullIndicator(output, set)) {
-            output.writeInt(set.size());
-            for (T item : set) {
-                itemSerializer.serialize(context, output, item);
+    private static <T> void serializeCollection(@NotNull SerializationContext context,
+            @NotNull SerializerOutput output, @Nullable Collection<T> collection,
+            @NotNull Serializer<T> serializer) throws IOException {
+        if (!SerializationUtils.writeNullIndicator(output, collection)) {
+            output.writeInt(collection.size());
+            for (T item : collection) {
+                serializer.serialize(context, output, item);
             }
         }
     }
 
     @Nullable
-    private static <T> Set<T> deserializeSet(@NotNull SerializationContext context,
-            @NotNull SerializerInput input, @NotNull Serializer<T> itemSerializer)
+    private static <T, C extends Collection<T>> C deserializeCollection(@NotNull SerializationContext context,
+            @NotNull SerializerInput input, @NotNull Serializer<T> serializer, @NotNull CollectionFactory<C> factory)
             throws IOException, ClassNotFoundException {
         if (SerializationUtils.readNullIndicator(input)) {
             return null;
         }
-        final int size = input.readInt();
-        Set<T> set = new HashSet<>();
+        final int size = readSize(input);
+        final C collection = factory.create(getInitialCapacity(size));
         for (int i = 0; i < size; i++) {
-            set.add(itemSerializer.deserialize(context, input));
+            collection.add(serializer.deserialize(context, input));
         }
-        return set;
+        return factory.complete(collection);
     }
 
     private static <K, V> void serializeMap(@NotNull SerializationContext context,
@@ -176,15 +206,15 @@ public class CollectionSerializers {
     }
 
     @Nullable
-    private static <K, V> Map<K, V> deserializeMap(@NotNull SerializationContext context,
+    private static <K, V, M extends Map<K, V>> M deserializeMap(@NotNull SerializationContext context,
             @NotNull SerializerInput input, @NotNull Serializer<K> keySerializer,
-            @NotNull Serializer<V> valueSerializer)
+            @NotNull Serializer<V> valueSerializer, @NotNull CollectionFactory<M> factory)
             throws IOException, ClassNotFoundException {
         if (SerializationUtils.readNullIndicator(input)) {
             return null;
         }
-        final int size = input.readInt();
-        Map<K, V> map = new HashMap<>();
+        final int size = readSize(input);
+        final M map = factory.create(getInitialCapacity(size));
         for (int i = 0; i < size; i++) {
             final K key = SerializationUtils.readNullIndicator(input) ? null : input.readObject(
                     context, keySerializer);
@@ -192,6 +222,6 @@ public class CollectionSerializers {
                     context, valueSerializer);
             map.put(key, value);
         }
-        return map;
+        return factory.complete(map);
     }
 }
@@ -30,11 +30,14 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Main standard serializers: primitive types and basic Java types:
@@ -61,6 +64,12 @@ import java.util.List;
  * </ul>
  */
 public class CoreSerializers {
+    /**
+     * Version of the primitive array serializers storing the elements as a single block. Data written by the
+     * previous version, with the elements written one by one, can still be read.
+     */
+    private static final int PACKED_ARRAY_VERSION = 1;
+
     public static final Serializer<Byte> BYTE = new ValueSerializer<Byte>() {
         @Override
         protected void serializeValue(@NotNull SerializationContext context,
@@ -248,7 +257,8 @@ public class CoreSerializers {
             final byte type = input.peekType();
             switch (type) {
                 case SerializerDefs.TYPE_STRING_UTF8:
-                case SerializerDefs.TYPE_STRING_ASCII: {
+                case SerializerDefs.TYPE_STRING_ASCII:
+                case SerializerDefs.TYPE_STRING_REF: {
                     return input.readNotNullString();
                 }
                 case SerializerDefs.TYPE_INT: {
@@ -293,15 +303,12 @@ public class CoreSerializers {
     };
 
     @NotNull
-    public static final Serializer<int[]> INT_ARRAY = new ObjectSerializer<int[]>() {
+    public static final Serializer<int[]> INT_ARRAY = new ObjectSerializer<int[]>(PACKED_ARRAY_VERSION) {
         @Override
         protected void serializeObject(@NotNull SerializationContext context,
                 @NotNull SerializerOutput output, @NotNull int[] arr)
                 throws IOException {
-            output.writeInt(arr.length);
-            for (int val : arr) {
-                output.writeInt(val);
-            }
+            output.writeIntArray(arr);
         }
 
         @NotNull
@@ -309,6 +316,9 @@ public class CoreSerializers {
         protected int[] deserializeObject(@NotNull SerializationContext context,
                 @NotNull SerializerInput input, int versionNumber)
                 throws IOException {
+            if (versionNumber >= PACKED_ARRAY_VERSION) {
+                return InternalSerialUtils.checkIsNotNull(input.readIntArray());
+            }
             final int length = input.readInt();
             final int[] result = new int[length];
             for (int i = 0; i < length; i += 1) {
@@ -319,15 +329,12 @@ public class CoreSerializers {
     };
 
     @NotNull
-    public static final Serializer<long[]> LONG_ARRAY = new ObjectSerializer<long[]>() {
+    public static final Serializer<long[]> LONG_ARRAY = new ObjectSerializer<long[]>(PACKED_ARRAY_VERSION) {
         @Override
         protected void serializeObject(@NotNull SerializationContext context,
                 @NotNull SerializerOutput output, @NotNull long[] arr)
                 throws IOException {
-            output.writeInt(arr.length);
-            for (long val : arr) {
-                output.writeLong(val);
-            }
+            output.writeLongArray(arr);
         }
 
         @NotNull
@@ -335,6 +342,9 @@ public class CoreSerializers {
         protected long[] deserializeObject(@NotNull SerializationContext context,
                 @NotNull SerializerInput input, int versionNumber)
                 throws IOException {
+            if (versionNumber >= PACKED_ARRAY_VERSION) {
+                return InternalSerialUtils.checkIsNotNull(input.readLongArray());
+            }
             final int length = input.readInt();
             final long[] result = new long[length];
             for (int i = 0; i < length; i += 1) {
@@ -345,15 +355,12 @@ public class CoreSerializers {
     };
 
     @NotNull
-    public static final Serializer<float[]> FLOAT_ARRAY = new ObjectSerializer<float[]>() {
+    public static final Serializer<float[]> FLOAT_ARRAY = new ObjectSerializer<float[]>(PACKED_ARRAY_VERSION) {
         @Override
         protected void serializeObject(@NotNull SerializationContext context,
                 @NotNull SerializerOutput output, @NotNull float[] arr)
                 throws IOException {
-            output.writeInt(arr.length);
-            for (float val : arr) {
-                output.writeFloat(val);
-            }
+            output.writeFloatArray(arr);
         }
 
         @NotNull
@@ -361,6 +368,9 @@ public class CoreSerializers {
         protected float[] deserializeObject(@NotNull SerializationContext context,
                 @NotNull SerializerInput input, int versionNumber)
                 throws IOException {
+            if (versionNumber >= PACKED_ARRAY_VERSION) {
+                return InternalSerialUtils.checkIsNotNull(input.readFloatArray());
+            }
             final int length = input.readInt();
             final float[] result = new float[length];
             for (int i = 0; i < length; i += 1) {
@@ -371,15 +381,12 @@ public class CoreSerializers {
     };
 
     @NotNull
-    public static final Serializer<double[]> DOUBLE_ARRAY = new ObjectSerializer<double[]>() {
+    public static final Serializer<double[]> DOUBLE_ARRAY = new ObjectSerializer<double[]>(PACKED_ARRAY_VERSION) {
         @Override
         protected void serializeObject(@NotNull SerializationContext context,
                 @NotNull SerializerOutput output, @NotNull double[] arr)
                 throws IOException {
-            output.writeInt(arr.length);
-            for (double val : arr) {
-                output.writeDouble(val);
-            }
+            output.writeDoubleArray(arr);
         }
 
         @NotNull
@@ -387,6 +394,9 @@ public class CoreSerializers {
         protected double[] deserializeObject(@NotNull SerializationContext context,
                 @NotNull SerializerInput input, int versionNumber)
                 throws IOException {
+            if (versionNumber >= PACKED_ARRAY_VERSION) {
+                return InternalSerialUtils.checkIsNotNull(input.readDoubleArray());
+            }
             final int length = input.readInt();
             final double[] result = new double[length];
             for (int i = 0; i < length; i += 1) {
@@ -433,6 +443,35 @@ public class CoreSerializers {
         };
     }
 
+    /**
+     * Serializes the enum constants as their ordinal, which is smaller and faster to deserialize than the name written
+     * by {@link #getEnumSerializer(Class)}. Constants can only be appended to the enum; use
+     * {@link #getEnumSerializer(Class, Map, Enum)} to reorder or remove them.
+     */
+    @NotNull
+    public static <T extends Enum<T>> Serializer<T> getOrdinalEnumSerializer(@NotNull Class<T> enumType) {
+        final T[] values = enumType.getEnumConstants();
+        final Map<T, Integer> ids = new EnumMap<>(enumType);
+        for (T value : values) {
+            ids.put(value, value.ordinal());
+        }
+        return new EnumIdSerializer<>(enumType, ids, null);
+    }
+
+    /**
+     * Serializes the enum constants as the given stable ids, so that constants can be reordered, and removed as long
+     * as their id is not reused.
+     *
+     * @param ids the unique, non negative id of every constant of the enum.
+     * @param unknownValue the value returned for ids that don't match any constant, eg. written by a newer version
+     * of the enum. If null, a {@link SerializationException} is thrown instead.
+     */
+    @NotNull
+    public static <T extends Enum<T>> Serializer<T> getEnumSerializer(@NotNull Class<T> enumType,
+            @NotNull Map<T, Integer> ids, @Nullable T unknownValue) {
+        return new EnumIdSerializer<>(enumType, ids, unknownValue);
+    }
+
     public static <T extends Enum<T>> void serializeEnum(@NotNull SerializationContext context,
             @NotNull SerializerOutput output,
             @NotNull T value)
@@ -449,69 +488,8 @@ public class CoreSerializers {
 
     @NotNull
     public static <B> Serializer<B> getBaseClassSerializer(
-            @NotNull final List<SerializableClass<? extends B>> subclasses) {
-        return new ObjectSerializer<B>() {
-            private boolean mNeedToCheckBaseClassSerializer = true;
-
-            private void checkBaseClassSerializer(@NotNull SerializationContext context) {
-                if (mNeedToCheckBaseClassSerializer && context.isDebug()) {
-                    mNeedToCheckBaseClassSerializer = false;
-                    final int len = subclasses.size();
-                    for (int i = 1; i < len; ++i) {
-                        final SerializableClass<B> subclass = InternalSerialUtils.cast(subclasses.get(i));
-                        if (!SerializableClass.isDummy(subclass)) {
-                            for (int p = 0; p < i; ++p) {
-                                if (!SerializableClass.isDummy(subclasses.get(p))) {
-                                    subclasses.get(p).klass.isAssignableFrom(subclass.klass);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-
-            @Override
-            protected void serializeObject(@NotNull SerializationContext context,
-                    @NotNull SerializerOutput output, @NotNull B object) throws IOException {
-                checkBaseClassSerializer(context);
-
-                final int len = subclasses.size();
-                for (int i = 0; i < len; i++) {
-                    final SerializableClass<B> subclass = InternalSerialUtils.cast(subclasses.get(i));
-                    if (!SerializableClass.isDummy(subclass)) {
-                        if (object.getClass().equals(subclass.klass)) {
-                            output.writeInt(i)
-                                    .writeObject(context,
-                                            subclass.klass.cast(object), subclass.serializer);
-                            return;
-                        }
-                    }
-                }
-                throw new SerializationException(
-                        "Serializer not defined for base class serialization for : " +
-                                object.getClass().getSimpleName());
-            }
-
-            @Nullable
-            @Override
-            protected B deserializeObject(@NotNull SerializationContext context,
-                    @NotNull SerializerInput input, int versionNumber)
-                    throws IOException, ClassNotFoundException {
-                checkBaseClassSerializer(context);
-
-                final int type = input.readInt();
-                if (type > subclasses.size()) {
-                    throw new SerializationException(
-                            "Invalid type found in base class deserialization: " + type);
-                }
-                final SerializableClass<? extends B> subclass = subclasses.get(type);
-                if (SerializableClass.isDummy(subclass)) {
-                    SerializationUtils.skipObject(input);
-                    return null;
-                }
-                return InternalSerialUtils.cast(subclass.serializer.deserializeNotNull(context, input));
-            }
-        };
+            @NotNull List<SerializableClass<? extends B>> subclasses) {
+        return new BaseClassSerializer<>(subclasses);
     }
 
     /**
@@ -538,6 +516,23 @@ public class CoreSerializers {
         };
     }
 
+    /**
+     * Returns a serializer that writes the non-static, non-transient fields of a class, for classes that don't
+     * define a serializer. It is much faster and more compact than {@link #getSerializableSerializer()}, but only
+     * supports the exact class, no subclasses. Data written before a field of the class was added, removed,
+     * renamed or changed type can't be read back: deserializing it throws a
+     * {@link SerializationException}.
+     *
+     * The fields can be primitives, boxed primitives, Strings, primitive arrays, enums, the other types supported by
+     * this class, lists, sets and maps of supported types, or classes supported by this method.
+     *
+     * @throws IllegalArgumentException if a field has an unsupported type, or if the class can't be instantiated.
+     */
+    @NotNull
+    public static <T> Serializer<T> getFieldSerializer(@NotNull Class<T> type) {
+        return FieldSerializer.get(type);
+    }
+
     @NotNull
     private static <T extends Enum<T>> T deserializeEnum(@NotNull SerializerInput input,
             @NotNull Class<T> enumType)
@@ -545,6 +540,64 @@ public class CoreSerializers {
         return Enum.valueOf(enumType, input.readNotNullString());
     }
 
+    private static final class EnumIdSerializer<T extends Enum<T>> extends ValueSerializer<T> {
+        /**
+         * Largest id allowed, to keep the lookup array small.
+         */
+        private static final int MAX_ID = 0xFFFF;
+
+        @NotNull private final Class<T> mEnumType;
+        @NotNull private final int[] mIdsByOrdinal;
+        @NotNull private final T[] mValuesById;
+        @Nullable private final T mUnknownValue;
+
+        EnumIdSerializer(@NotNull Class<T> enumType, @NotNull Map<T, Integer> ids, @Nullable T unknownValue) {
+            final T[] values = enumType.getEnumConstants();
+            mEnumType = enumType;
+            mIdsByOrdinal = new int[values.length];
+            int maxId = -1;
+            for (T value : values) {
+                final Integer id = ids.get(value);
+                if (id == null || id < 0 || id > MAX_ID) {
+                    throw new IllegalArgumentException("Invalid id " + id + " for " + value + ".");
+                }
+                mIdsByOrdinal[value.ordinal()] = id;
+                maxId = Math.max(maxId, id);
+            }
+            mValuesById = InternalSerialUtils.cast(Array.newInstance(enumType, maxId + 1));
+            for (T value : values) {
+                final int id = mIdsByOrdinal[value.ordinal()];
+                if (mValuesById[id] != null) {
+                    throw new IllegalArgumentException("Duplicate id " + id + " for " + mValuesById[id] + " and " +
+                            value + ".");
+                }
+                mValuesById[id] = value;
+            }
+            mUnknownValue = unknownValue;
+        }
+
+        @Override
+        protected void serializeValue(@NotNull SerializationContext context, @NotNull SerializerOutput output,
+                @NotNull T value) throws IOException {
+            output.writeInt(mIdsByOrdinal[value.ordinal()]);
+        }
+
+        @NotNull
+        @Override
+        protected T deserializeValue(@NotNull SerializationContext context, @NotNull SerializerInput input)
+                throws IOException {
+            final int id = input.readInt();
+            final T value = id >= 0 && id < mValuesById.length ? mValuesById[id] : null;
+            if (value != null) {
+                return value;
+            }
+            if (mUnknownValue != null) {
+                return mUnknownValue;
+            }
+            throw new SerializationException("Unknown id " + id + " for enum " + mEnumType.getName() + ".");
+        }
+    }
+
     /**
      * Serializes a stateless object. This method just writes the class name into the stream, and assumes that a call
      * into a default constructor can recreate the object. Use {@link #deserializeStatelessObject(SerializerInput)}
@@ -0,0 +1,515 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.serializer;
+
+import com.twitter.serial.stream.SerializerInput;
+import com.twitter.serial.stream.SerializerOutput;
+import com.twitter.serial.util.InternalSerialUtils;
+import com.twitter.serial.util.SerializationException;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Serializes the instance fields of a class, see {@link CoreSerializers#getFieldSerializer(Class)}. The fields are
+ * looked up once per class, and primitives, Strings and primitive arrays are written with the methods of the
+ * streams, without boxing. The fields are preceded by a hash of their names and types, so that data written before
+ * the fields of the class changed is rejected instead of being misread.
+ */
+final class FieldSerializer<T> extends ObjectSerializer<T> {
+    private static final ConcurrentMap<Class<?>, FieldSerializer<?>> SERIALIZERS = new ConcurrentHashMap<>();
+    private static final Comparator<Field> FIELD_NAME_COMPARATOR = new Comparator<Field>() {
+        @Override
+        public int compare(@NotNull Field lhs, @NotNull Field rhs) {
+            return lhs.getName().compareTo(rhs.getName());
+        }
+    };
+
+    /**
+     * Serializers of the boxed primitives and of the Java types supported by {@link CoreSerializers}.
+     */
+    private static final Map<Class<?>, Serializer<?>> CORE_SERIALIZERS;
+
+    static {
+        final Map<Class<?>, Serializer<?>> serializers = new HashMap<>();
+        serializers.put(Boolean.class, CoreSerializers.BOOLEAN);
+        serializers.put(Byte.class, CoreSerializers.BYTE);
+        serializers.put(Short.class, CoreSerializers.SHORT);
+        serializers.put(Character.class, CoreSerializers.CHARACTER);
+        serializers.put(Integer.class, CoreSerializers.INTEGER);
+        serializers.put(Long.class, CoreSerializers.LONG);
+        serializers.put(Float.class, CoreSerializers.FLOAT);
+        serializers.put(Double.class, CoreSerializers.DOUBLE);
+        serializers.put(String.class, CoreSerializers.STRING);
+        serializers.put(BigDecimal.class, CoreSerializers.BIG_DECIMAL);
+        serializers.put(Date.class, CoreSerializers.DATE);
+        serializers.put(int[].class, CoreSerializers.INT_ARRAY);
+        serializers.put(long[].class, CoreSerializers.LONG_ARRAY);
+        serializers.put(float[].class, CoreSerializers.FLOAT_ARRAY);
+        serializers.put(double[].class, CoreSerializers.DOUBLE_ARRAY);
+        CORE_SERIALIZERS = Collections.unmodifiableMap(serializers);
+    }
+
+    @NotNull private final Class<T> mType;
+    @Nullable private final Constructor<T> mConstructor;
+    @Nullable private volatile FieldCodec[] mFields;
+    private int mFieldsHash;
+
+    private FieldSerializer(@NotNull Class<T> type) {
+        mType = type;
+        Constructor<T> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            if (!UnsafeAllocator.isAvailable()) {
+                throw new IllegalArgumentException(type.getName() + " has no constructor without parameters.");
+            }
+            constructor = null;
+        }
+        mConstructor = constructor;
+    }
+
+    /**
+     * @return the serializer of the class, after checking that all its fields can be serialized.
+     */
+    @NotNull
+    static <T> FieldSerializer<T> get(@NotNull Class<T> type) {
+        final FieldSerializer<T> serializer = getCached(type);
+        serializer.getFields();
+        return serializer;
+    }
+
+    /**
+     * @return the serializer of the class, whose fields are looked up on first use so that classes can reference
+     * each other.
+     */
+    @NotNull
+    private static <T> FieldSerializer<T> getCached(@NotNull Class<T> type) {
+        final FieldSerializer<?> serializer = SERIALIZERS.get(type);
+        if (serializer != null) {
+            return InternalSerialUtils.cast(serializer);
+        }
+        if (type == Object.class || type.isInterface() || type.isArray() || type.isPrimitive() || type.isEnum() ||
+                Modifier.isAbstract(type.getModifiers())) {
+            throw new IllegalArgumentException("Can't serialize the fields of " + type.getName() + ".");
+        }
+        final FieldSerializer<?> previous = SERIALIZERS.putIfAbsent(type, new FieldSerializer<>(type));
+        return InternalSerialUtils.cast(previous != null ? previous : SERIALIZERS.get(type));
+    }
+
+    @Override
+    protected void serializeObject(@NotNull SerializationContext context, @NotNull SerializerOutput output,
+            @NotNull T object) throws IOException {
+        if (object.getClass() != mType) {
+            throw new SerializationException("Expected an instance of " + mType.getName() + ", found " +
+                    object.getClass().getName() + ".");
+        }
+        final FieldCodec[] fields = getFields();
+        output.writeInt(mFieldsHash);
+        for (FieldCodec field : fields) {
+            field.write(context, output, object);
+        }
+    }
+
+    @NotNull
+    @Override
+    protected T deserializeObject(@NotNull SerializationContext context, @NotNull SerializerInput input,
+            int versionNumber) throws IOException, ClassNotFoundException {
+        final FieldCodec[] fields = getFields();
+        final int fieldsHash = input.readInt();
+        if (fieldsHash != mFieldsHash) {
+            throw new SerializationException("The fields of " + mType.getName() + " don't match the serialized " +
+                    "data, they changed since it was written.");
+        }
+        final T object = newInstance();
+        for (FieldCodec field : fields) {
+            field.read(context, input, object);
+        }
+        return object;
+    }
+
+    @NotNull
+    private FieldCodec[] getFields() {
+        FieldCodec[] fields = mFields;
+        if (fields == null) {
+            synchronized (this) {
+                fields = mFields;
+                if (fields == null) {
+                    fields = createFields(mType);
+                    // Set before the fields, which are volatile.
+                    mFieldsHash = getFieldsHash(fields);
+                    mFields = fields;
+                }
+            }
+        }
+        return fields;
+    }
+
+    @NotNull
+    private T newInstance() throws SerializationException {
+        try {
+            return mConstructor != null ? mConstructor.newInstance() : UnsafeAllocator.allocate(mType);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new SerializationException("Failed to create an instance of " + mType.getName() + ": " + e);
+        }
+    }
+
+    /**
+     * @return the fields of the class and its superclasses, from the base class down, in name order.
+     */
+    @NotNull
+    private static FieldCodec[] createFields(@NotNull Class<?> type) {
+        final List<Class<?>> classes = new ArrayList<>();
+        for (Class<?> klass = type; klass != Object.class; klass = klass.getSuperclass()) {
+            classes.add(0, klass);
+        }
+        final List<FieldCodec> codecs = new ArrayList<>();
+        for (Class<?> klass : classes) {
+            final Field[] fields = klass.getDeclaredFields();
+            Arrays.sort(fields, FIELD_NAME_COMPARATOR);
+            for (Field field : fields) {
+                final int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                    field.setAccessible(true);
+                    codecs.add(createCodec(field));
+                }
+            }
+        }
+        return codecs.toArray(new FieldCodec[codecs.size()]);
+    }
+
+    /**
+     * @return a hash of the names and declared types of the fields, in order.
+     */
+    private static int getFieldsHash(@NotNull FieldCodec[] fields) {
+        int hash = 0;
+        for (FieldCodec codec : fields) {
+            hash = 31 * hash + codec.mField.getName().hashCode();
+            hash = 31 * hash + codec.mField.getGenericType().toString().hashCode();
+        }
+        return hash;
+    }
+
+    @NotNull
+    private static FieldCodec createCodec(@NotNull Field field) {
+        final Class<?> type = field.getType();
+        if (type == boolean.class) {
+            return new FieldCodec(field, FieldCodec.BOOLEAN, null);
+        } else if (type == byte.class) {
+            return new FieldCodec(field, FieldCodec.BYTE, null);
+        } else if (type == short.class) {
+            return new FieldCodec(field, FieldCodec.SHORT, null);
+        } else if (type == char.class) {
+            return new FieldCodec(field, FieldCodec.CHAR, null);
+        } else if (type == int.class) {
+            return new FieldCodec(field, FieldCodec.INT, null);
+        } else if (type == long.class) {
+            return new FieldCodec(field, FieldCodec.LONG, null);
+        } else if (type == float.class) {
+            return new FieldCodec(field, FieldCodec.FLOAT, null);
+        } else if (type == double.class) {
+            return new FieldCodec(field, FieldCodec.DOUBLE, null);
+        } else if (type == String.class) {
+            return new FieldCodec(field, FieldCodec.STRING, null);
+        } else if (type == byte[].class) {
+            return new FieldCodec(field, FieldCodec.BYTE_ARRAY, null);
+        } else if (type == int[].class) {
+            return new FieldCodec(field, FieldCodec.INT_ARRAY, null);
+        } else if (type == long[].class) {
+            return new FieldCodec(field, FieldCodec.LONG_ARRAY, null);
+        } else if (type == float[].class) {
+            return new FieldCodec(field, FieldCodec.FLOAT_ARRAY, null);
+        } else if (type == double[].class) {
+            return new FieldCodec(field, FieldCodec.DOUBLE_ARRAY, null);
+        }
+        try {
+            return new FieldCodec(field, FieldCodec.OBJECT, getSerializer(field.getGenericType()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Can't serialize " + field.getDeclaringClass().getName() + '.' +
+                    field.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the serializer of the declared type of a field or of a collection element.
+     */
+    @NotNull
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Serializer<Object> getSerializer(@NotNull Type type) {
+        if (type instanceof WildcardType) {
+            return getSerializer(((WildcardType) type).getUpperBounds()[0]);
+        }
+        if (type instanceof ParameterizedType) {
+            final Class<?> rawType = (Class<?>) ((ParameterizedType) type).getRawType();
+            final Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (rawType.isAssignableFrom(ArrayList.class)) {
+                return InternalSerialUtils.cast(CollectionSerializers.getListSerializer(getSerializer(arguments[0])));
+            } else if (rawType.isAssignableFrom(HashSet.class)) {
+                return InternalSerialUtils.cast(CollectionSerializers.getSetSerializer(getSerializer(arguments[0])));
+            } else if (rawType.isAssignableFrom(HashMap.class)) {
+                return InternalSerialUtils.cast(CollectionSerializers.getMapSerializer(getSerializer(arguments[0]),
+                        getSerializer(arguments[1])));
+            }
+            throw new IllegalArgumentException("unsupported type " + type + '.');
+        }
+        if (!(type instanceof Class)) {
+            throw new IllegalArgumentException("unsupported type " + type + '.');
+        }
+        final Class<?> klass = (Class<?>) type;
+        final Serializer<?> serializer = CORE_SERIALIZERS.get(klass);
+        if (serializer != null) {
+            return InternalSerialUtils.cast(serializer);
+        } else if (klass.isEnum()) {
+            return InternalSerialUtils.cast(CoreSerializers.getEnumSerializer((Class) klass));
+        }
+        return InternalSerialUtils.cast(getCached(klass));
+    }
+
+    /**
+     * Writes and reads a field, with the method of the streams matching its type or with a serializer.
+     */
+    private static final class FieldCodec {
+        static final byte BOOLEAN = 0;
+        static final byte BYTE = 1;
+        static final byte SHORT = 2;
+        static final byte CHAR = 3;
+        static final byte INT = 4;
+        static final byte LONG = 5;
+        static final byte FLOAT = 6;
+        static final byte DOUBLE = 7;
+        static final byte STRING = 8;
+        static final byte BYTE_ARRAY = 9;
+        static final byte INT_ARRAY = 10;
+        static final byte LONG_ARRAY = 11;
+        static final byte FLOAT_ARRAY = 12;
+        static final byte DOUBLE_ARRAY = 13;
+        static final byte OBJECT = 14;
+
+        @NotNull private final Field mField;
+        private final byte mKind;
+        @Nullable private final Serializer<Object> mSerializer;
+
+        FieldCodec(@NotNull Field field, byte kind, @Nullable Serializer<Object> serializer) {
+            mField = field;
+            mKind = kind;
+            mSerializer = serializer;
+        }
+
+        void write(@NotNull SerializationContext context, @NotNull SerializerOutput output, @NotNull Object object)
+                throws IOException {
+            try {
+                switch (mKind) {
+                    case BOOLEAN: {
+                        output.writeBoolean(mField.getBoolean(object));
+                        break;
+                    }
+                    case BYTE: {
+                        output.writeByte(mField.getByte(object));
+                        break;
+                    }
+                    case SHORT: {
+                        output.writeInt(mField.getShort(object));
+                        break;
+                    }
+                    case CHAR: {
+                        output.writeInt(mField.getChar(object));
+                        break;
+                    }
+                    case INT: {
+                        output.writeInt(mField.getInt(object));
+                        break;
+                    }
+                    case LONG: {
+                        output.writeLong(mField.getLong(object));
+                        break;
+                    }
+                    case FLOAT: {
+                        output.writeFloat(mField.getFloat(object));
+                        break;
+                    }
+                    case DOUBLE: {
+                        output.writeDouble(mField.getDouble(object));
+                        break;
+                    }
+                    case STRING: {
+                        output.writeString((String) mField.get(object));
+                        break;
+                    }
+                    case BYTE_ARRAY: {
+                        output.writeByteArray((byte[]) mField.get(object));
+                        break;
+                    }
+                    case INT_ARRAY: {
+                        output.writeIntArray((int[]) mField.get(object));
+                        break;
+                    }
+                    case LONG_ARRAY: {
+                        output.writeLongArray((long[]) mField.get(object));
+                        break;
+                    }
+                    case FLOAT_ARRAY: {
+                        output.writeFloatArray((float[]) mField.get(object));
+                        break;
+                    }
+                    case DOUBLE_ARRAY: {
+                        output.writeDoubleArray((double[]) mField.get(object));
+                        break;
+                    }
+                    default: {
+                        InternalSerialUtils.checkIsNotNull(mSerializer).serialize(context, output,
+                                mField.get(object));
+                        break;
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void read(@NotNull SerializationContext context, @NotNull SerializerInput input, @NotNull Object object)
+                throws IOException, ClassNotFoundException {
+            try {
+                switch (mKind) {
+                    case BOOLEAN: {
+                        mField.setBoolean(object, input.readBoolean());
+                        break;
+                    }
+                    case BYTE: {
+                        mField.setByte(object, input.readByte());
+                        break;
+                    }
+                    case SHORT: {
+                        mField.setShort(object, (short) input.readInt());
+                        break;
+                    }
+                    case CHAR: {
+                        mField.setChar(object, (char) input.readInt());
+                        break;
+                    }
+                    case INT: {
+                        mField.setInt(object, input.readInt());
+                        break;
+                    }
+                    case LONG: {
+                        mField.setLong(object, input.readLong());
+                        break;
+                    }
+                    case FLOAT: {
+                        mField.setFloat(object, input.readFloat());
+                        break;
+                    }
+                    case DOUBLE: {
+                        mField.setDouble(object, input.readDouble());
+                        break;
+                    }
+                    case STRING: {
+                        mField.set(object, input.readString());
+                        break;
+                    }
+                    case BYTE_ARRAY: {
+                        mField.set(object, input.readByteArray());
+                        break;
+                    }
+                    case INT_ARRAY: {
+                        mField.set(object, input.readIntArray());
+                        break;
+                    }
+                    case LONG_ARRAY: {
+                        mField.set(object, input.readLongArray());
+                        break;
+                    }
+                    case FLOAT_ARRAY: {
+                        mField.set(object, input.readFloatArray());
+                        break;
+                    }
+                    case DOUBLE_ARRAY: {
+                        mField.set(object, input.readDoubleArray());
+                        break;
+                    }
+                    default: {
+                        mField.set(object, InternalSerialUtils.checkIsNotNull(mSerializer).deserialize(context,
+                                input));
+                        break;
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Creates objects without calling a constructor, like Java serialization, for the classes without a
+     * constructor taking no parameters. It uses {@code sun.misc.Unsafe}, which is available on the JVM and Android.
+     */
+    private static final class UnsafeAllocator {
+        @Nullable private static final Object UNSAFE;
+        @Nullable private static final Method ALLOCATE_INSTANCE;
+
+        static {
+            Object unsafe;
+            Method allocateInstance;
+            try {
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                allocateInstance = unsafeClass.getMethod("allocateInstance", Class.class);
+            } catch (Exception e) {
+                unsafe = null;
+                allocateInstance = null;
+            }
+            UNSAFE = unsafe;
+            ALLOCATE_INSTANCE = allocateInstance;
+        }
+
+        private UnsafeAllocator() {
+        }
+
+        static boolean isAvailable() {
+            return ALLOCATE_INSTANCE != null;
+        }
+
+        @NotNull
+        static <T> T allocate(@NotNull Class<T> type) throws InvocationTargetException, IllegalAccessException {
+            return type.cast(InternalSerialUtils.checkIsNotNull(ALLOCATE_INSTANCE).invoke(UNSAFE, type));
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.twitter.serial.serializer;
 
 import com.twitter.serial.util.SerializationException;
 import com.twitter.serial.util.SerializationUtils;
+import com.twitter.serial.stream.SerializerDefs;
 import com.twitter.serial.stream.SerializerInput;
 import com.twitter.serial.stream.SerializerOutput;
 
@@ -58,7 +59,8 @@ public abstract class ObjectSerializer<T> extends Serializer<T> {
     @Override
     public final void serialize(@NotNull SerializationContext context,
             @NotNull SerializerOutput output, @Nullable T object) throws IOException {
-        if (!SerializationUtils.writeNullIndicator(output, object)) {
+        final SerializerOutput<?> typedOutput = output;
+        if (!SerializationUtils.writeNullIndicator(output, object) && !typedOutput.writeObjectReference(object, this)) {
             if (context.isDebug()) {
                 output.writeObjectStart(mVersionNumber, getClass().getSimpleName());
             } else {
@@ -67,6 +69,7 @@ public abstract class ObjectSerializer<T> extends Serializer<T> {
             //noinspection BlacklistedMethod
             serializeObject(context, output, object);
             output.writeObjectEnd();
+            typedOutput.endObjectReference(object, this);
         }
     }
 
@@ -80,6 +83,10 @@ public abstract class ObjectSerializer<T> extends Serializer<T> {
         if (SerializationUtils.readNullIndicator(input)) {
             return null;
         }
+        if (input.peekType() == SerializerDefs.TYPE_OBJECT_REF) {
+            return input.readObjectReference(context, this);
+        }
+        final int position = input.isObjectReferences() ? input.getPosition() : -1;
         final int deserializedVersionNumber = input.readObjectStart();
         if (deserializedVersionNumber > mVersionNumber) {
             throw new SerializationException("Version number found (" + deserializedVersionNumber + ") is " +
@@ -87,6 +94,9 @@ public abstract class ObjectSerializer<T> extends Serializer<T> {
         }
         final T deserializedObject = deserializeObject(context, input, deserializedVersionNumber);
         input.readObjectEnd();
+        if (position >= 0) {
+            input.addObjectReference(position, deserializedObject);
+        }
         return deserializedObject;
     }
 
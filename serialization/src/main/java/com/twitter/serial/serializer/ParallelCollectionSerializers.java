@@ -0,0 +1,357 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.serializer;
+
+import com.twitter.serial.stream.SerializerInput;
+import com.twitter.serial.stream.SerializerOutput;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerInput;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerOutput;
+import com.twitter.serial.util.InternalSerialUtils;
+import com.twitter.serial.util.Pools;
+import com.twitter.serial.util.SerializationUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Serializers of large lists and maps that process chunks of elements in parallel on a {@link ForkJoinPool}. The
+ * serialized data is the same as the one of {@link CollectionSerializers}, so that either serializer can read it.
+ * The element serializers must be safe to use from multiple threads.
+ * <p>
+ * Each chunk is serialized into its own {@link ByteBufferSerializerOutput}, and the chunks are then concatenated.
+ * To deserialize, the boundaries of the chunks are found by skipping the elements, which takes constant time per
+ * element for data written with {@link ByteBufferSerializerOutput#setObjectLengths(boolean)}, and the chunks are then
+ * read in parallel. Collections of a single chunk, streams other than the byte buffer ones and streams using the
+ * string table are processed sequentially.
+ */
+public class ParallelCollectionSerializers {
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private static final int CHUNK_BUFFER_SIZE = 16 * InternalSerialUtils.KB_BYTES;
+
+    @NotNull
+    private static final Pools.Pool<byte[]> CHUNK_BUFFER_POOL = new Pools.ConcurrentPool<>(32);
+
+    private ParallelCollectionSerializers() {
+    }
+
+    @NotNull
+    public static <T> Serializer<List<T>> getListSerializer(@NotNull Serializer<T> itemSerializer,
+            @NotNull ForkJoinPool pool) {
+        return getListSerializer(itemSerializer, pool, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize the number of items serialized by each task.
+     * @return a {@link Serializer} for list T, compatible with {@link CollectionSerializers#getListSerializer}.
+     */
+    @NotNull
+    public static <T> Serializer<List<T>> getListSerializer(@NotNull final Serializer<T> itemSerializer,
+            @NotNull final ForkJoinPool pool, final int chunkSize) {
+        checkChunkSize(chunkSize);
+        return new ObjectSerializer<List<T>>() {
+            @Override
+            protected void serializeObject(@NotNull final SerializationContext context,
+                    @NotNull SerializerOutput output, @NotNull List<T> list) throws IOException {
+                final List<T> items = list instanceof RandomAccess ? list : new ArrayList<>(list);
+                output.writeInt(items.size());
+                serializeChunks(output, items.size(), chunkSize, pool, new ElementWriter() {
+                    @Override
+                    public void write(@NotNull SerializerOutput output, int index) throws IOException {
+                        itemSerializer.serialize(context, output, items.get(index));
+                    }
+                });
+            }
+
+            @NotNull
+            @Override
+            protected List<T> deserializeObject(@NotNull final SerializationContext context,
+                    @NotNull SerializerInput input, int versionNumber) throws IOException, ClassNotFoundException {
+                final int size = CollectionSerializers.readSize(input);
+                final List<T> list = new ArrayList<>(CollectionSerializers.getInitialCapacity(size));
+                deserializeChunks(input, size, 1, chunkSize, pool, new ElementReader() {
+                    @Override
+                    public void read(@NotNull SerializerInput input, @NotNull Object[] values, int index)
+                            throws IOException, ClassNotFoundException {
+                        values[index] = itemSerializer.deserialize(context, input);
+                    }
+
+                    @Override
+                    public void add(@NotNull Object[] values, int index) {
+                        list.add(InternalSerialUtils.<T>cast(values[index]));
+                    }
+                });
+                return list;
+            }
+        };
+    }
+
+    @NotNull
+    public static <K, V> Serializer<Map<K, V>> getMapSerializer(@NotNull Serializer<K> keySerializer,
+            @NotNull Serializer<V> valueSerializer, @NotNull ForkJoinPool pool) {
+        return getMapSerializer(keySerializer, valueSerializer, pool, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize the number of entries serialized by each task.
+     * @return a {@link Serializer} for the map, compatible with {@link CollectionSerializers#getMapSerializer}.
+     */
+    @NotNull
+    public static <K, V> Serializer<Map<K, V>> getMapSerializer(@NotNull final Serializer<K> keySerializer,
+            @NotNull final Serializer<V> valueSerializer, @NotNull final ForkJoinPool pool, final int chunkSize) {
+        checkChunkSize(chunkSize);
+        return new ObjectSerializer<Map<K, V>>() {
+            @Override
+            protected void serializeObject(@NotNull final SerializationContext context,
+                    @NotNull SerializerOutput output, @NotNull Map<K, V> map) throws IOException {
+                final List<Map.Entry<K, V>> entries = new ArrayList<>(map.entrySet());
+                output.writeInt(entries.size());
+                serializeChunks(output, entries.size(), chunkSize, pool, new ElementWriter() {
+                    @Override
+                    public void write(@NotNull SerializerOutput output, int index) throws IOException {
+                        final Map.Entry<K, V> entry = entries.get(index);
+                        keySerializer.serialize(context, output, entry.getKey());
+                        valueSerializer.serialize(context, output, entry.getValue());
+                    }
+                });
+            }
+
+            @NotNull
+            @Override
+            protected Map<K, V> deserializeObject(@NotNull final SerializationContext context,
+                    @NotNull SerializerInput input, int versionNumber) throws IOException, ClassNotFoundException {
+                final int size = CollectionSerializers.readSize(input);
+                final Map<K, V> map = CollectionFactory.<K, V>hashMap()
+                        .create(CollectionSerializers.getInitialCapacity(size));
+                deserializeChunks(input, size, 2, chunkSize, pool, new ElementReader() {
+                    @Override
+                    public void read(@NotNull SerializerInput input, @NotNull Object[] values, int index)
+                            throws IOException, ClassNotFoundException {
+                        values[index] = keySerializer.deserialize(context, input);
+                        values[index + 1] = valueSerializer.deserialize(context, input);
+                    }
+
+                    @Override
+                    public void add(@NotNull Object[] values, int index) {
+                        map.put(InternalSerialUtils.<K>cast(values[index]),
+                                InternalSerialUtils.<V>cast(values[index + 1]));
+                    }
+                });
+                return map;
+            }
+        };
+    }
+
+    private static void checkChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be > 0");
+        }
+    }
+
+    private static void serializeChunks(@NotNull SerializerOutput output, final int size, final int chunkSize,
+            @NotNull ForkJoinPool pool, @NotNull final ElementWriter writer) throws IOException {
+        final int chunkCount = getChunkCount(size, chunkSize);
+        if (chunkCount < 2 || !(output instanceof ByteBufferSerializerOutput) ||
+                ((ByteBufferSerializerOutput) output).isStringTable() ||
+                ((ByteBufferSerializerOutput) output).isObjectReferences()) {
+            for (int i = 0; i < size; i++) {
+                writer.write(output, i);
+            }
+            return;
+        }
+        final ByteBufferSerializerOutput target = (ByteBufferSerializerOutput) output;
+        final byte[][] buffers = new byte[chunkCount][];
+        final ByteBufferSerializerOutput[] chunks = new ByteBufferSerializerOutput[chunkCount];
+        try {
+            processChunks(pool, chunkCount, new ChunkProcessor() {
+                @Override
+                public void process(int chunk) throws IOException {
+                    byte[] buffer = CHUNK_BUFFER_POOL.acquire();
+                    if (buffer == null) {
+                        buffer = new byte[CHUNK_BUFFER_SIZE];
+                    }
+                    buffers[chunk] = buffer;
+                    final ByteBufferSerializerOutput chunkOutput = new ByteBufferSerializerOutput(buffer)
+                            .setVarIntEncoding(target.isVarIntEncoding())
+                            .setObjectLengths(target.isObjectLengths());
+                    final int end = Math.min(size, (chunk + 1) * chunkSize);
+                    for (int i = chunk * chunkSize; i < end; i++) {
+                        writer.write(chunkOutput, i);
+                    }
+                    chunks[chunk] = chunkOutput;
+                }
+            });
+            for (ByteBufferSerializerOutput chunk : chunks) {
+                target.writeSerializedData(chunk);
+            }
+        } catch (ClassNotFoundException e) {
+            // Only thrown when deserializing.
+            throw new IllegalStateException(e);
+        } finally {
+            for (byte[] buffer : buffers) {
+                if (buffer != null) {
+                    CHUNK_BUFFER_POOL.release(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the values of each element, and then adds the elements in order.
+     *
+     * @param valuesPerElement the number of values serialized for each element.
+     */
+    private static void deserializeChunks(@NotNull SerializerInput input, final int size, final int valuesPerElement,
+            final int chunkSize, @NotNull ForkJoinPool pool, @NotNull final ElementReader reader)
+            throws IOException, ClassNotFoundException {
+        final int chunkCount = getChunkCount(size, chunkSize);
+        if (chunkCount < 2 || !(input instanceof ByteBufferSerializerInput) ||
+                ((ByteBufferSerializerInput) input).isStringTable() ||
+                ((ByteBufferSerializerInput) input).isObjectReferences()) {
+            final Object[] values = new Object[valuesPerElement];
+            for (int i = 0; i < size; i++) {
+                reader.read(input, values, 0);
+                reader.add(values, 0);
+            }
+            return;
+        }
+        // The elements are skipped before allocating the chunks, so that a corrupt size fails early.
+        final ByteBufferSerializerInput source = (ByteBufferSerializerInput) input;
+        final int[] chunkStarts = new int[chunkCount + 1];
+        for (int i = 0; i < size; i++) {
+            if (i % chunkSize == 0) {
+                chunkStarts[i / chunkSize] = source.getPosition();
+            }
+            for (int v = 0; v < valuesPerElement; v++) {
+                source.skipValue();
+            }
+        }
+        chunkStarts[chunkCount] = source.getPosition();
+        final Object[][] chunkValues = new Object[chunkCount][];
+        processChunks(pool, chunkCount, new ChunkProcessor() {
+            @Override
+            public void process(int chunk) throws IOException, ClassNotFoundException {
+                final ByteBufferSerializerInput chunkInput =
+                        source.getRange(chunkStarts[chunk], chunkStarts[chunk + 1]);
+                final int count = Math.min(size - chunk * chunkSize, chunkSize);
+                final Object[] values = new Object[count * valuesPerElement];
+                for (int i = 0; i < count; i++) {
+                    reader.read(chunkInput, values, i * valuesPerElement);
+                }
+                chunkValues[chunk] = values;
+            }
+        });
+        for (Object[] values : chunkValues) {
+            for (int index = 0; index < values.length; index += valuesPerElement) {
+                reader.add(values, index);
+            }
+        }
+    }
+
+    private static int getChunkCount(int size, int chunkSize) {
+        return size / chunkSize + (size % chunkSize != 0 ? 1 : 0);
+    }
+
+    /**
+     * Runs the processor for every chunk on the pool, and rethrows the first exception thrown by a chunk.
+     */
+    private static void processChunks(@NotNull ForkJoinPool pool, int chunkCount, @NotNull ChunkProcessor processor)
+            throws IOException, ClassNotFoundException {
+        try {
+            pool.invoke(new ChunkAction(processor, 0, chunkCount));
+        } catch (ChunkException e) {
+            // The pool may rethrow a copy of the exception thrown by the task, with the original as its cause.
+            Throwable cause = e;
+            while (cause instanceof ChunkException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            }
+            throw (IOException) cause;
+        }
+    }
+
+    private interface ElementWriter {
+        void write(@NotNull SerializerOutput output, int index) throws IOException;
+    }
+
+    private interface ElementReader {
+        /**
+         * Reads the values of an element into the array, starting at the given index.
+         */
+        void read(@NotNull SerializerInput input, @NotNull Object[] values, int index)
+                throws IOException, ClassNotFoundException;
+
+        void add(@NotNull Object[] values, int index);
+    }
+
+    private interface ChunkProcessor {
+        void process(int chunk) throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * Splits a range of chunks in halves until a single chunk is left, which is processed by the current worker.
+     */
+    private static final class ChunkAction extends RecursiveAction {
+        private static final long serialVersionUID = -3921546104857265013L;
+
+        @NotNull
+        private final ChunkProcessor mProcessor;
+        private final int mStart;
+        private final int mEnd;
+
+        ChunkAction(@NotNull ChunkProcessor processor, int start, int end) {
+            mProcessor = processor;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (mEnd - mStart == 1) {
+                try {
+                    mProcessor.process(mStart);
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new ChunkException(e);
+                }
+            } else {
+                final int middle = (mStart + mEnd) >>> 1;
+                invokeAll(new ChunkAction(mProcessor, mStart, middle), new ChunkAction(mProcessor, middle, mEnd));
+            }
+        }
+    }
+
+    /**
+     * Carries the checked exception of a chunk out of the pool.
+     */
+    private static final class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 5470632589136028742L;
+
+        ChunkException(@Nullable Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.store;
+
+import com.twitter.serial.serializer.SerializationContext;
+import com.twitter.serial.serializer.Serializer;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
+import com.twitter.serial.util.InternalSerialUtils;
+import com.twitter.serial.util.SerializationException;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An append-only log of serialized records, stored in a memory-mapped file. Each record is written once at the end
+ * of the file and is identified by its offset, so updating a cache doesn't require rewriting the whole file. Records
+ * are deserialized straight out of the mapped region, without reading or copying the file.
+ * <p>
+ * Removed records keep their space until {@link #compact()} rewrites the file with only the remaining records. The
+ * file is limited to 2GB, the largest region that can be mapped at once.
+ * <p>
+ * File format: a 16 bytes header (magic, format version, end of the records) followed by the records. Each record is
+ * the length of the serialized data followed by the data, in the {@link ByteBufferSerial} format; the length is
+ * stored as its bitwise complement once the record has been removed.
+ */
+public class RecordStore implements Closeable {
+    private static final int MAGIC = 0x53524c53;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int END_POSITION = 8;
+    private static final int RECORD_HEADER_SIZE = 4;
+    private static final int INITIAL_MAPPED_SIZE = 64 * InternalSerialUtils.KB_BYTES;
+    private static final String COMPACTION_SUFFIX = ".compact";
+
+    @NotNull private final File mFile;
+    @NotNull private final ByteBufferSerial mSerial;
+    @NotNull private RandomAccessFile mRandomAccessFile;
+    @NotNull private MappedByteBuffer mMappedBuffer;
+    private int mEnd;
+
+    /**
+     * Offsets of all the records appended since the last compaction, including the removed ones, in ascending order.
+     */
+    @NotNull private long[] mOffsets = new long[16];
+    private int mOffsetCount;
+    private int mRemovedCount;
+
+    public RecordStore(@NotNull File file) throws IOException {
+        this(file, SerializationContext.ALWAYS_RELEASE);
+    }
+
+    /**
+     * Opens the store in the given file, creating the file if it doesn't exist.
+     */
+    public RecordStore(@NotNull File file, @NotNull SerializationContext context) throws IOException {
+        mFile = file;
+        mSerial = new ByteBufferSerial(context);
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            open();
+        } catch (IOException e) {
+            InternalSerialUtils.closeSilently(mRandomAccessFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Serializes the value at the end of the store.
+     *
+     * @return the offset of the record, used to read it.
+     */
+    public synchronized <T> long append(@Nullable T value, @NotNull Serializer<T> serializer) throws IOException {
+        final int offset = mEnd;
+        int length;
+        while (true) {
+            final ByteBuffer buffer = mMappedBuffer.duplicate();
+            buffer.position(offset + RECORD_HEADER_SIZE);
+            length = mSerial.serializeInto(value, serializer, buffer);
+            if (length >= 0) {
+                break;
+            }
+            if (mMappedBuffer.capacity() == Integer.MAX_VALUE) {
+                throw new IOException("The record store is limited to " + Integer.MAX_VALUE + " bytes.");
+            }
+            remap(Math.min(2L * mMappedBuffer.capacity(), Integer.MAX_VALUE));
+        }
+        mMappedBuffer.putInt(offset, length);
+        setEnd(offset + RECORD_HEADER_SIZE + length);
+        addOffset(offset);
+        return offset;
+    }
+
+    /**
+     * Deserializes the record at the given offset.
+     *
+     * @throws IllegalArgumentException if there is no record at the offset, or if it was removed.
+     */
+    @Nullable
+    public <T> T read(long offset, @NotNull Serializer<T> serializer) throws IOException, ClassNotFoundException {
+        final ByteBuffer buffer;
+        synchronized (this) {
+            final int length = getRecordLength(offset);
+            buffer = mMappedBuffer.duplicate();
+            buffer.limit((int) offset + RECORD_HEADER_SIZE + length);
+            buffer.position((int) offset + RECORD_HEADER_SIZE);
+        }
+        return mSerial.fromByteBuffer(buffer, serializer);
+    }
+
+    /**
+     * Removes the record at the given offset. Its space is reclaimed by the next {@link #compact()}.
+     *
+     * @throws IllegalArgumentException if there is no record at the offset, or if it was already removed.
+     */
+    public synchronized void remove(long offset) {
+        final int length = getRecordLength(offset);
+        mMappedBuffer.putInt((int) offset, ~length);
+        ++mRemovedCount;
+    }
+
+    /**
+     * @return the offsets of the records in the store, in the order they were appended.
+     */
+    @NotNull
+    public synchronized long[] getRecordOffsets() {
+        final long[] offsets = new long[mOffsetCount - mRemovedCount];
+        int count = 0;
+        for (int i = 0; i < mOffsetCount; i++) {
+            if (mMappedBuffer.getInt((int) mOffsets[i]) >= 0) {
+                offsets[count++] = mOffsets[i];
+            }
+        }
+        return offsets;
+    }
+
+    public synchronized int getRecordCount() {
+        return mOffsetCount - mRemovedCount;
+    }
+
+    /**
+     * @return the size of the data in the file, including the removed records.
+     */
+    public synchronized long getSize() {
+        return mEnd;
+    }
+
+    /**
+     * Rewrites the file with only the records that were not removed, copying their data as is.
+     *
+     * @return the new offset of each record, keyed by its previous offset.
+     */
+    @NotNull
+    public synchronized Map<Long, Long> compact() throws IOException {
+        final Map<Long, Long> newOffsets = new LinkedHashMap<>();
+        final File compactedFile = new File(mFile.getPath() + COMPACTION_SUFFIX);
+        final RandomAccessFile compactedRandomAccessFile = new RandomAccessFile(compactedFile, "rw");
+        try {
+            final FileChannel channel = compactedRandomAccessFile.getChannel();
+            channel.truncate(0);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.write(header, 0);
+            int end = HEADER_SIZE;
+            for (int i = 0; i < mOffsetCount; i++) {
+                final int offset = (int) mOffsets[i];
+                final int length = mMappedBuffer.getInt(offset);
+                if (length >= 0) {
+                    final ByteBuffer record = mMappedBuffer.duplicate();
+                    record.limit(offset + RECORD_HEADER_SIZE + length);
+                    record.position(offset);
+                    while (record.hasRemaining()) {
+                        end += channel.write(record, end);
+                    }
+                    newOffsets.put((long) offset, (long) end - RECORD_HEADER_SIZE - length);
+                }
+            }
+            header.clear();
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(end).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } finally {
+            InternalSerialUtils.closeSilently(compactedRandomAccessFile);
+        }
+
+        mRandomAccessFile.close();
+        if (!compactedFile.renameTo(mFile) && (!mFile.delete() || !compactedFile.renameTo(mFile))) {
+            throw new IOException("Failed to replace " + mFile + " with its compacted version.");
+        }
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        open();
+        return newOffsets;
+    }
+
+    /**
+     * Writes the changes to the storage device.
+     */
+    public synchronized void flush() {
+        mMappedBuffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mMappedBuffer.force();
+        mRandomAccessFile.close();
+    }
+
+    /**
+     * Checks the header, maps the file and rebuilds the index of the records. The header is read before mapping the
+     * file, which extends it, so that a file that isn't a store is left untouched.
+     */
+    private void open() throws IOException {
+        final long fileLength = mRandomAccessFile.length();
+        if (fileLength == 0) {
+            remap(INITIAL_MAPPED_SIZE);
+            mOffsetCount = 0;
+            mRemovedCount = 0;
+            mMappedBuffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION);
+            setEnd(HEADER_SIZE);
+            return;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        final FileChannel channel = mRandomAccessFile.getChannel();
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // Read the whole header.
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+            throw new SerializationException("Not a record store: " + mFile + ".");
+        }
+        if (header.getInt(4) != FORMAT_VERSION) {
+            throw new SerializationException("Unsupported record store version: " + header.getInt(4) + ".");
+        }
+        final long end = header.getLong(END_POSITION);
+        if (end < HEADER_SIZE || end > fileLength) {
+            throw new SerializationException("Invalid end of records: " + end + ".");
+        }
+        remap(Math.max(fileLength, INITIAL_MAPPED_SIZE));
+        mOffsetCount = 0;
+        mRemovedCount = 0;
+        mEnd = (int) end;
+        int offset = HEADER_SIZE;
+        while (offset < mEnd) {
+            final int storedLength = mMappedBuffer.getInt(offset);
+            final int length = storedLength >= 0 ? storedLength : ~storedLength;
+            if (length > mEnd - offset - RECORD_HEADER_SIZE) {
+                throw new SerializationException("Invalid record length found at " + offset + ": " + length + ".");
+            }
+            addOffset(offset);
+            if (storedLength < 0) {
+                ++mRemovedCount;
+            }
+            offset += RECORD_HEADER_SIZE + length;
+        }
+    }
+
+    private void remap(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The record store is limited to " + Integer.MAX_VALUE + " bytes.");
+        }
+        mMappedBuffer = mRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void setEnd(int end) {
+        mEnd = end;
+        mMappedBuffer.putLong(END_POSITION, end);
+    }
+
+    private void addOffset(long offset) {
+        if (mOffsetCount == mOffsets.length) {
+            mOffsets = Arrays.copyOf(mOffsets, 2 * mOffsetCount);
+        }
+        mOffsets[mOffsetCount++] = offset;
+    }
+
+    private int getRecordLength(long offset) {
+        if (Arrays.binarySearch(mOffsets, 0, mOffsetCount, offset) < 0) {
+            throw new IllegalArgumentException("No record found at offset " + offset + ".");
+        }
+        final int length = mMappedBuffer.getInt((int) offset);
+        if (length < 0) {
+            throw new IllegalArgumentException("The record at offset " + offset + " was removed.");
+        }
+        return length;
+    }
+}
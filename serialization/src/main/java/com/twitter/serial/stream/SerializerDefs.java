@@ -34,6 +34,21 @@ public abstract class SerializerDefs {
     public static final byte TYPE_EOF = 12;
     public static final byte TYPE_STRING_ASCII = 13;
     public static final byte TYPE_BYTE_ARRAY = 14;
+    public static final byte TYPE_INT_ARRAY = 15;
+    public static final byte TYPE_LONG_ARRAY = 16;
+    public static final byte TYPE_FLOAT_ARRAY = 17;
+    public static final byte TYPE_DOUBLE_ARRAY = 18;
+    public static final byte TYPE_STRING_REF = 19;
+    /**
+     * An object start followed by the length of the object content, see
+     * {@link com.twitter.serial.stream.bytebuffer.ByteBufferSerializerOutput#setObjectLengths(boolean)}.
+     */
+    public static final byte TYPE_START_OBJECT_SIZED = 20;
+    /**
+     * A reference to an object written earlier, see
+     * {@link com.twitter.serial.stream.bytebuffer.ByteBufferSerializerOutput#setObjectReferences(boolean)}.
+     */
+    public static final byte TYPE_OBJECT_REF = 21;
 
     @NotNull
     public static String getTypeName(byte type) {
@@ -64,7 +79,8 @@ public abstract class SerializerDefs {
                 return "null";
             }
             case TYPE_START_OBJECT:
-            case TYPE_START_OBJECT_DEBUG: {
+            case TYPE_START_OBJECT_DEBUG:
+            case TYPE_START_OBJECT_SIZED: {
                 return "start_object";
             }
             case TYPE_END_OBJECT: {
@@ -76,6 +92,24 @@ public abstract class SerializerDefs {
             case TYPE_BYTE_ARRAY: {
                 return "byte_array";
             }
+            case TYPE_INT_ARRAY: {
+                return "int_array";
+            }
+            case TYPE_LONG_ARRAY: {
+                return "long_array";
+            }
+            case TYPE_FLOAT_ARRAY: {
+                return "float_array";
+            }
+            case TYPE_DOUBLE_ARRAY: {
+                return "double_array";
+            }
+            case TYPE_STRING_REF: {
+                return "string_ref";
+            }
+            case TYPE_OBJECT_REF: {
+                return "object_ref";
+            }
             default: {
                 return "unknown (" + type + ")";
             }
@@ -18,6 +18,8 @@ package com.twitter.serial.stream;
 
 import com.twitter.serial.util.DebugClassDescriptor;
 import com.twitter.serial.util.InternalSerialUtils;
+import com.twitter.serial.util.SerializationException;
+import com.twitter.serial.util.SerializationUtils;
 import com.twitter.serial.serializer.SerializationContext;
 import com.twitter.serial.serializer.Serializer;
 
@@ -56,6 +58,57 @@ public abstract class SerializerInput extends SerializerStream {
         return InternalSerialUtils.checkIsNotNull(readByteArray());
     }
 
+    /**
+     * Reads a primitive array written by {@link SerializerOutput#writeIntArray(int[])}.
+     */
+    @Nullable
+    public int[] readIntArray() throws IOException {
+        if (SerializationUtils.readNullIndicator(this)) {
+            return null;
+        }
+        final int[] result = new int[readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = readInt();
+        }
+        return result;
+    }
+
+    @Nullable
+    public long[] readLongArray() throws IOException {
+        if (SerializationUtils.readNullIndicator(this)) {
+            return null;
+        }
+        final long[] result = new long[readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = readLong();
+        }
+        return result;
+    }
+
+    @Nullable
+    public float[] readFloatArray() throws IOException {
+        if (SerializationUtils.readNullIndicator(this)) {
+            return null;
+        }
+        final float[] result = new float[readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = readFloat();
+        }
+        return result;
+    }
+
+    @Nullable
+    public double[] readDoubleArray() throws IOException {
+        if (SerializationUtils.readNullIndicator(this)) {
+            return null;
+        }
+        final double[] result = new double[readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = readDouble();
+        }
+        return result;
+    }
+
     @Nullable
     public final <T> T readObject(@NotNull SerializationContext context,
             @NotNull Serializer<T> serializer) throws IOException, ClassNotFoundException {
@@ -82,6 +135,113 @@ public abstract class SerializerInput extends SerializerStream {
 
     public abstract void readNull() throws IOException;
 
+    /**
+     * Skips the value at the current position: a primitive value, null, a string, an array or a whole object. Inputs
+     * can override it to skip strings and arrays without decoding them. Requires peek support.
+     */
+    public void skipValue() throws IOException {
+        final byte type = peekType();
+        switch (type) {
+            case SerializerDefs.TYPE_BYTE: {
+                readByte();
+                break;
+            }
+            case SerializerDefs.TYPE_INT: {
+                readInt();
+                break;
+            }
+            case SerializerDefs.TYPE_LONG: {
+                readLong();
+                break;
+            }
+            case SerializerDefs.TYPE_FLOAT: {
+                readFloat();
+                break;
+            }
+            case SerializerDefs.TYPE_DOUBLE: {
+                readDouble();
+                break;
+            }
+            case SerializerDefs.TYPE_BOOLEAN: {
+                readBoolean();
+                break;
+            }
+            case SerializerDefs.TYPE_NULL: {
+                readNull();
+                break;
+            }
+            case SerializerDefs.TYPE_STRING_ASCII:
+            case SerializerDefs.TYPE_STRING_UTF8:
+            case SerializerDefs.TYPE_STRING_REF: {
+                readString();
+                break;
+            }
+            case SerializerDefs.TYPE_BYTE_ARRAY: {
+                readByteArray();
+                break;
+            }
+            case SerializerDefs.TYPE_INT_ARRAY: {
+                readIntArray();
+                break;
+            }
+            case SerializerDefs.TYPE_LONG_ARRAY: {
+                readLongArray();
+                break;
+            }
+            case SerializerDefs.TYPE_FLOAT_ARRAY: {
+                readFloatArray();
+                break;
+            }
+            case SerializerDefs.TYPE_DOUBLE_ARRAY: {
+                readDoubleArray();
+                break;
+            }
+            case SerializerDefs.TYPE_START_OBJECT:
+            case SerializerDefs.TYPE_START_OBJECT_DEBUG:
+            case SerializerDefs.TYPE_START_OBJECT_SIZED: {
+                SerializationUtils.skipObject(this);
+                break;
+            }
+            default: {
+                throw new SerializationException("Unknown type: " + SerializerDefs.getTypeName(type) + '.');
+            }
+        }
+    }
+
+    /**
+     * Skips the object at the current position in constant time, if it was written with the length of its content.
+     *
+     * @return false if the object must be skipped value by value, in which case the input is left unchanged.
+     */
+    public boolean skipSizedObject() throws IOException {
+        return false;
+    }
+
+    /**
+     * @return whether the input reads object references, see
+     * {@link com.twitter.serial.stream.bytebuffer.ByteBufferSerializerInput#setObjectReferences(boolean)}.
+     */
+    public boolean isObjectReferences() {
+        return false;
+    }
+
+    /**
+     * Reads an object reference, the next value, and returns the object it references.
+     *
+     * @param serializer the serializer of the referenced object, used to read it if it was skipped.
+     */
+    @Nullable
+    public <T> T readObjectReference(@NotNull SerializationContext context, @NotNull Serializer<T> serializer)
+            throws IOException, ClassNotFoundException {
+        throw new SerializationException("Object reference found but object references are not enabled.");
+    }
+
+    /**
+     * Keeps an object read at the given position, for the references to it.
+     */
+    public void addObjectReference(int position, @Nullable Object object) {
+    }
+
     public byte peekType() {
         return SerializerDefs.TYPE_UNKNOWN;
     }
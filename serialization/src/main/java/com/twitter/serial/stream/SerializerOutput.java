@@ -17,6 +17,7 @@
 package com.twitter.serial.stream;
 
 import com.twitter.serial.util.InternalSerialUtils;
+import com.twitter.serial.util.SerializationUtils;
 import com.twitter.serial.serializer.SerializationContext;
 import com.twitter.serial.serializer.Serializer;
 
@@ -51,6 +52,54 @@ public abstract class SerializerOutput<S extends SerializerOutput> extends Seria
     @NotNull
     public abstract S writeByteArray(@Nullable byte[] val) throws IOException;
 
+    /**
+     * Writes a primitive array. By default, the elements are written one by one after the array length; streams that
+     * support it store the elements in a single block.
+     */
+    @NotNull
+    public S writeIntArray(@Nullable int[] val) throws IOException {
+        if (!SerializationUtils.writeNullIndicator(this, val)) {
+            writeInt(val.length);
+            for (int element : val) {
+                writeInt(element);
+            }
+        }
+        return InternalSerialUtils.cast(this);
+    }
+
+    @NotNull
+    public S writeLongArray(@Nullable long[] val) throws IOException {
+        if (!SerializationUtils.writeNullIndicator(this, val)) {
+            writeInt(val.length);
+            for (long element : val) {
+                writeLong(element);
+            }
+        }
+        return InternalSerialUtils.cast(this);
+    }
+
+    @NotNull
+    public S writeFloatArray(@Nullable float[] val) throws IOException {
+        if (!SerializationUtils.writeNullIndicator(this, val)) {
+            writeInt(val.length);
+            for (float element : val) {
+                writeFloat(element);
+            }
+        }
+        return InternalSerialUtils.cast(this);
+    }
+
+    @NotNull
+    public S writeDoubleArray(@Nullable double[] val) throws IOException {
+        if (!SerializationUtils.writeNullIndicator(this, val)) {
+            writeInt(val.length);
+            for (double element : val) {
+                writeDouble(element);
+            }
+        }
+        return InternalSerialUtils.cast(this);
+    }
+
     @NotNull
     public final <T> S writeObject(@NotNull SerializationContext context, @Nullable T val,
             @NotNull Serializer<T> serializer) throws IOException {
@@ -71,4 +120,19 @@ public abstract class SerializerOutput<S extends SerializerOutput> extends Seria
 
     @NotNull
     public abstract S writeObjectEnd() throws IOException;
+
+    /**
+     * Writes a reference to the object if it was already written by the serializer, when the output supports object
+     * references, see {@link com.twitter.serial.stream.bytebuffer.ByteBufferSerializerOutput#setObjectReferences}.
+     *
+     * @return false if the object must be written, in which case {@link #endObjectReference(Object, Serializer)}
+     * must be called after it.
+     */
+    public boolean writeObjectReference(@NotNull Object object, @NotNull Serializer<?> serializer)
+            throws IOException {
+        return false;
+    }
+
+    public void endObjectReference(@NotNull Object object, @NotNull Serializer<?> serializer) {
+    }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.bytebuffer;
+
+import com.twitter.serial.serializer.Serializer;
+import com.twitter.serial.util.InternalSerialUtils;
+import com.twitter.serial.util.Pools;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the operations of a {@link ByteBufferSerial} on an executor. Single values are serialized and deserialized
+ * asynchronously, and collections of values are split into partitions processed in parallel, each partition reusing
+ * one pooled buffer for all its values. The serializers must be safe to use from multiple threads.
+ * <p>
+ * The bulk operations wait for their partitions, so they must not be called from a thread of a bounded executor
+ * whose other threads may all be waiting as well.
+ */
+public class AsyncSerial {
+    public static final int PARTITION_BUFFER_SIZE = 16 * InternalSerialUtils.KB_BYTES;
+
+    @NotNull
+    private final ByteBufferSerial mSerial;
+    @NotNull
+    private final ExecutorService mExecutor;
+    private final int mParallelism;
+    @NotNull
+    private final Pools.Pool<byte[]> mBufferPool;
+
+    public AsyncSerial(@NotNull ByteBufferSerial serial, @NotNull ExecutorService executor) {
+        this(serial, executor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism the maximum number of partitions of the bulk operations, which run concurrently if the
+     * executor has enough threads.
+     */
+    public AsyncSerial(@NotNull ByteBufferSerial serial, @NotNull ExecutorService executor, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism must be > 0");
+        }
+        mSerial = serial;
+        mExecutor = executor;
+        mParallelism = parallelism;
+        mBufferPool = new Pools.ConcurrentPool<>(parallelism);
+    }
+
+    @NotNull
+    public <T> Future<byte[]> toByteArrayAsync(@Nullable final T value, @NotNull final Serializer<T> serializer) {
+        return mExecutor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                return mSerial.toByteArray(value, serializer);
+            }
+        });
+    }
+
+    @NotNull
+    public <T> Future<T> fromByteArrayAsync(@Nullable final byte[] bytes, @NotNull final Serializer<T> serializer) {
+        return mExecutor.submit(new Callable<T>() {
+            @Override
+            public T call() throws IOException, ClassNotFoundException {
+                return mSerial.fromByteArray(bytes, serializer);
+            }
+        });
+    }
+
+    /**
+     * Serializes the values in parallel, the calling thread processing the first partition.
+     *
+     * @return the serialized values, in the iteration order of the collection.
+     */
+    @NotNull
+    public <T> List<byte[]> toByteArrays(@NotNull Collection<? extends T> values,
+            @NotNull final Serializer<T> serializer) throws IOException {
+        final List<? extends T> items = values instanceof List && values instanceof RandomAccess ?
+                (List<? extends T>) values : new ArrayList<>(values);
+        final byte[][] results = new byte[items.size()][];
+        try {
+            processPartitions(items.size(), new PartitionProcessor() {
+                @Override
+                public void process(int start, int end) throws IOException {
+                    byte[] buffer = mBufferPool.acquire();
+                    if (buffer == null) {
+                        buffer = new byte[PARTITION_BUFFER_SIZE];
+                    }
+                    try {
+                        for (int i = start; i < end; i++) {
+                            results[i] = mSerial.toByteArray(items.get(i), serializer, buffer);
+                        }
+                    } finally {
+                        mBufferPool.release(buffer);
+                    }
+                }
+            });
+        } catch (ClassNotFoundException e) {
+            // Only thrown when deserializing.
+            throw new IllegalStateException(e);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Deserializes the values in parallel, the calling thread processing the first partition.
+     *
+     * @return the deserialized values, in the iteration order of the collection.
+     */
+    @NotNull
+    public <T> List<T> fromByteArrays(@NotNull Collection<byte[]> values, @NotNull final Serializer<T> serializer)
+            throws IOException, ClassNotFoundException {
+        final List<byte[]> items = values instanceof List && values instanceof RandomAccess ?
+                (List<byte[]>) values : new ArrayList<>(values);
+        final Object[] results = new Object[items.size()];
+        processPartitions(items.size(), new PartitionProcessor() {
+            @Override
+            public void process(int start, int end) throws IOException, ClassNotFoundException {
+                for (int i = start; i < end; i++) {
+                    results[i] = mSerial.fromByteArray(items.get(i), serializer);
+                }
+            }
+        });
+        return InternalSerialUtils.cast(Arrays.asList(results));
+    }
+
+    /**
+     * Splits the range of values into at most {@link #mParallelism} partitions of the same size, submits all of them
+     * but the first one to the executor, and processes the first one on the calling thread. The first exception is
+     * rethrown once the other partitions are cancelled.
+     */
+    private void processPartitions(int size, @NotNull final PartitionProcessor processor)
+            throws IOException, ClassNotFoundException {
+        final int partitionCount = Math.min(size, mParallelism);
+        if (partitionCount < 2) {
+            processor.process(0, size);
+            return;
+        }
+        final List<Future<Void>> futures = new ArrayList<>(partitionCount - 1);
+        try {
+            for (int partition = 1; partition < partitionCount; partition++) {
+                final int start = (int) ((long) size * partition / partitionCount);
+                final int end = (int) ((long) size * (partition + 1) / partitionCount);
+                futures.add(mExecutor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException, ClassNotFoundException {
+                        processor.process(start, end);
+                        return null;
+                    }
+                }));
+            }
+            processor.process(0, size / partitionCount);
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the partitions.");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private interface PartitionProcessor {
+        void process(int start, int end) throws IOException, ClassNotFoundException;
+    }
+}
@@ -30,12 +30,22 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 public class ByteBufferSerial implements Serial {
+    @NotNull
+    private static final int[] NO_PATH = new int[0];
+
     @Nullable
-    private final Pools.SynchronizedPool<byte[]> mBufferPool;
+    private final Pools.Pool<byte[]> mBufferPool;
     @NotNull
     private final SerializationContext mContext;
+    private final boolean mExactSize;
+    private final boolean mVarIntEncoding;
+    private final boolean mStringTable;
+    private final boolean mObjectLengths;
+    private final boolean mObjectReferences;
 
     public ByteBufferSerial(int bufferCount, int bufferSize) {
         this(createPool(bufferCount, bufferSize));
@@ -49,14 +59,23 @@ public class ByteBufferSerial implements Serial {
         this(context, null);
     }
 
-    public ByteBufferSerial(@Nullable Pools.SynchronizedPool<byte[]> pool) {
+    public ByteBufferSerial(@Nullable Pools.Pool<byte[]> pool) {
         this(SerializationContext.ALWAYS_RELEASE, pool);
     }
 
     public ByteBufferSerial(@NotNull SerializationContext context,
-            @Nullable Pools.SynchronizedPool<byte[]> pool) {
-        mBufferPool = pool;
-        mContext = context;
+            @Nullable Pools.Pool<byte[]> pool) {
+        this(new Builder().setContext(context).setBufferPool(pool));
+    }
+
+    private ByteBufferSerial(@NotNull Builder builder) {
+        mBufferPool = builder.mBufferPool;
+        mContext = builder.mContext;
+        mExactSize = builder.mExactSize;
+        mVarIntEncoding = builder.mVarIntEncoding;
+        mStringTable = builder.mStringTable;
+        mObjectLengths = builder.mObjectLengths;
+        mObjectReferences = builder.mObjectReferences;
     }
 
     @Override
@@ -66,15 +85,36 @@ public class ByteBufferSerial implements Serial {
         if (value == null) {
             return InternalSerialUtils.EMPTY_BYTE_ARRAY;
         }
-        final Pools.SynchronizedPool<byte[]> currentPool = mBufferPool;
-        final byte[] tempBuffer = currentPool != null ? currentPool.acquire() : null;
+        if (mExactSize) {
+            return toExactSizeByteArray(value, serializer);
+        }
+        final Pools.Pool<byte[]> currentPool = mBufferPool;
+        final byte[] tempBuffer;
+        if (currentPool instanceof Pools.AdaptiveByteArrayPool) {
+            // Allocates a buffer when the pool is empty, so that the pool fills up as buffers are released.
+            final Pools.AdaptiveByteArrayPool adaptivePool = (Pools.AdaptiveByteArrayPool) currentPool;
+            final byte[] pooledBuffer = adaptivePool.acquire();
+            tempBuffer = pooledBuffer != null ? pooledBuffer : adaptivePool.acquire(0);
+        } else {
+            tempBuffer = currentPool != null ? currentPool.acquire() : null;
+        }
         if (tempBuffer != null) {
+            final ByteBufferSerializerOutput serializerOutput = new ByteBufferSerializerOutput(tempBuffer)
+                    .setVarIntEncoding(mVarIntEncoding)
+                    .setStringTable(mStringTable)
+                    .setObjectLengths(mObjectLengths)
+                    .setObjectReferences(mObjectReferences);
             try {
-                synchronized (tempBuffer) {
-                    return toByteArray(value, serializer, tempBuffer);
-                }
+                serializer.serialize(mContext, serializerOutput, value);
+                return serializerOutput.getSerializedData();
             } finally {
-                currentPool.release(tempBuffer);
+                // An adaptive pool keeps the buffer as it grew, so that the next values don't have to grow it again.
+                // If the grown buffer is too large to be kept, the original one is released instead.
+                final byte[] usedBuffer = serializerOutput.getByteBuffer().array();
+                if (usedBuffer == tempBuffer || !(currentPool instanceof Pools.AdaptiveByteArrayPool) ||
+                        !currentPool.release(usedBuffer)) {
+                    currentPool.release(tempBuffer);
+                }
             }
         }
         return toByteArray(value, serializer, null);
@@ -86,7 +126,11 @@ public class ByteBufferSerial implements Serial {
         if (value == null) {
             return InternalSerialUtils.EMPTY_BYTE_ARRAY;
         }
-        final ByteBufferSerializerOutput serializerOutput = new ByteBufferSerializerOutput(tempBuffer);
+        final ByteBufferSerializerOutput serializerOutput = new ByteBufferSerializerOutput(tempBuffer)
+                .setVarIntEncoding(mVarIntEncoding)
+                .setStringTable(mStringTable)
+                .setObjectLengths(mObjectLengths)
+                .setObjectReferences(mObjectReferences);
         try {
             serializer.serialize(mContext, serializerOutput, value);
         } catch (IOException e) {
@@ -95,6 +139,72 @@ public class ByteBufferSerial implements Serial {
         return serializerOutput.getSerializedData();
     }
 
+    /**
+     * Serializes the value into an array of the exact size of the serialized data, computed in a first pass with a
+     * {@link SizeCalculatingSerializerOutput}.
+     */
+    @NotNull
+    public <T> byte[] toExactSizeByteArray(@Nullable T value, @NotNull Serializer<T> serializer)
+            throws IOException {
+        final int size = getSerializedSize(value, serializer);
+        if (size == 0) {
+            return InternalSerialUtils.EMPTY_BYTE_ARRAY;
+        }
+        final ByteBufferSerializerOutput serializerOutput = new ByteBufferSerializerOutput(new byte[size])
+                .setVarIntEncoding(mVarIntEncoding)
+                .setStringTable(mStringTable)
+                .setObjectLengths(mObjectLengths)
+                .setObjectReferences(mObjectReferences);
+        serializer.serialize(mContext, serializerOutput, value);
+        if (serializerOutput.getPosition() != size) {
+            throw new SerializationException("The serializer wrote " + serializerOutput.getPosition() +
+                    " bytes instead of the " + size + " bytes computed for " + value + ".");
+        }
+        return serializerOutput.getByteBuffer().array();
+    }
+
+    /**
+     * @return the number of bytes written by {@link #toByteArray(Object, Serializer)} for the value.
+     */
+    public <T> int getSerializedSize(@Nullable T value, @NotNull Serializer<T> serializer) throws IOException {
+        if (value == null) {
+            return 0;
+        }
+        final SizeCalculatingSerializerOutput sizeOutput = new SizeCalculatingSerializerOutput(mVarIntEncoding)
+                .setStringTable(mStringTable)
+                .setObjectLengths(mObjectLengths)
+                .setObjectReferences(mObjectReferences);
+        serializer.serialize(mContext, sizeOutput, value);
+        return sizeOutput.getSize();
+    }
+
+    /**
+     * Serializes the value in place into the given heap or direct buffer, starting at its current position, without
+     * any intermediate copy. On success, the position of the buffer is advanced past the serialized data.
+     *
+     * @return the number of bytes written, or -1 if the serialized value doesn't fit between the position and the
+     * limit of the buffer, in which case the position is left unchanged.
+     */
+    public <T> int serializeInto(@Nullable T value, @NotNull Serializer<T> serializer, @NotNull ByteBuffer buffer)
+            throws IOException {
+        if (value == null) {
+            return 0;
+        }
+        final ByteBufferSerializerOutput serializerOutput = new ByteBufferSerializerOutput(buffer)
+                .setVarIntEncoding(mVarIntEncoding)
+                .setStringTable(mStringTable)
+                .setObjectLengths(mObjectLengths)
+                .setObjectReferences(mObjectReferences);
+        try {
+            serializer.serialize(mContext, serializerOutput, value);
+        } catch (BufferOverflowException ignore) {
+            return -1;
+        }
+        final int length = serializerOutput.getPosition();
+        buffer.position(buffer.position() + length);
+        return length;
+    }
+
     @Override
     @Nullable
     @Contract("null, _ -> null")
@@ -104,21 +214,175 @@ public class ByteBufferSerial implements Serial {
         if (bytes == null || bytes.length == 0) {
             return null;
         }
-        final SerializerInput serializerInput = new ByteBufferSerializerInput(bytes);
+        return deserialize(new ByteBufferSerializerInput(bytes).setStringTable(mStringTable)
+                .setObjectReferences(mObjectReferences), serializer);
+    }
+
+    /**
+     * Deserializes a value from a range of the given array, without copying it.
+     */
+    @Nullable
+    public <T> T fromByteArray(@NotNull byte[] bytes, int offset, int length, @NotNull Serializer<T> serializer)
+            throws IOException, ClassNotFoundException {
+        if (length == 0) {
+            return null;
+        }
+        return deserialize(new ByteBufferSerializerInput(bytes, offset, length).setStringTable(mStringTable)
+                .setObjectReferences(mObjectReferences), serializer);
+    }
+
+    /**
+     * Deserializes a value from the data between the position and the limit of the given heap, direct or read-only
+     * buffer (eg. a memory-mapped file), without copying it. The position of the buffer is not modified.
+     */
+    @Nullable
+    @Contract("null, _ -> null")
+    public <T> T fromByteBuffer(@Nullable ByteBuffer buffer, @NotNull Serializer<T> serializer)
+            throws IOException, ClassNotFoundException {
+        if (buffer == null || !buffer.hasRemaining()) {
+            return null;
+        }
+        return deserialize(new ByteBufferSerializerInput(buffer).setStringTable(mStringTable)
+                .setObjectReferences(mObjectReferences), serializer);
+    }
+
+    /**
+     * Deserializes only the value at the given path of field indexes of the serialized object, eg. an id or a
+     * timestamp, skipping the values before it without decoding them.
+     *
+     * @return the value, or null if the field doesn't exist.
+     * @see SerializationUtils#seekField(SerializerInput, int...)
+     */
+    @Nullable
+    public <T> T readField(@NotNull byte[] bytes, @NotNull Serializer<T> serializer, @NotNull int... path)
+            throws IOException, ClassNotFoundException {
+        if (bytes.length == 0) {
+            return null;
+        }
+        return deserialize(new ByteBufferSerializerInput(bytes).setStringTable(mStringTable)
+                .setObjectReferences(mObjectReferences), serializer, path);
+    }
+
+    @Nullable
+    private <T> T deserialize(@NotNull ByteBufferSerializerInput serializerInput, @NotNull Serializer<T> serializer)
+            throws IOException, ClassNotFoundException {
+        return deserialize(serializerInput, serializer, NO_PATH);
+    }
+
+    @Nullable
+    private <T> T deserialize(@NotNull ByteBufferSerializerInput serializerInput, @NotNull Serializer<T> serializer,
+            @NotNull int[] path) throws IOException, ClassNotFoundException {
         try {
+            if (!SerializationUtils.seekField(serializerInput, path)) {
+                return null;
+            }
             return serializer.deserialize(mContext, serializerInput);
         } catch (IOException | ClassNotFoundException | IllegalStateException e) {
+            final int position = serializerInput.getPosition();
+            serializerInput.rewind();
             throw new SerializationException("Invalid serialized data:\n" +
-                    SerializationUtils.dumpSerializedData(bytes, serializerInput.getPosition(), mContext.isDebug()), e);
+                    SerializationUtils.dumpSerializedData(serializerInput, position, mContext.isDebug()), e);
         }
     }
 
     @NotNull
-    private static Pools.SynchronizedPool<byte[]> createPool(int bufferCount, int bufferSize) {
-        final Pools.SynchronizedPool<byte[]> pool = new Pools.SynchronizedPool<>(bufferCount);
+    private static Pools.Pool<byte[]> createPool(int bufferCount, int bufferSize) {
+        final Pools.Pool<byte[]> pool = new Pools.ConcurrentPool<>(bufferCount);
         for (int i = 0; i < bufferCount; i++) {
             pool.release(new byte[bufferSize]);
         }
         return pool;
     }
+
+    public static class Builder {
+        @NotNull
+        SerializationContext mContext = SerializationContext.ALWAYS_RELEASE;
+        @Nullable
+        Pools.Pool<byte[]> mBufferPool;
+        boolean mExactSize;
+        boolean mVarIntEncoding;
+        boolean mStringTable;
+        boolean mObjectLengths;
+        boolean mObjectReferences;
+
+        @NotNull
+        public Builder setContext(@NotNull SerializationContext context) {
+            mContext = context;
+            return this;
+        }
+
+        /**
+         * Sets the pool of temporary buffers used by {@link ByteBufferSerial#toByteArray(Object, Serializer)}.
+         */
+        @NotNull
+        public Builder setBufferPool(@Nullable Pools.Pool<byte[]> bufferPool) {
+            mBufferPool = bufferPool;
+            return this;
+        }
+
+        /**
+         * Makes {@link ByteBufferSerial#toByteArray(Object, Serializer)} compute the size of the serialized data in a first pass,
+         * and then write it into an array of the exact size, without growing a buffer or copying the result. The
+         * serializers run twice, so this only pays off when writing the data costs more than walking the object
+         * graph, eg. for large strings and byte arrays.
+         */
+        @NotNull
+        public Builder setExactSize(boolean exactSize) {
+            mExactSize = exactSize;
+            return this;
+        }
+
+        /**
+         * @see ByteBufferSerializerOutput#setVarIntEncoding(boolean)
+         */
+        @NotNull
+        public Builder setVarIntEncoding(boolean varIntEncoding) {
+            mVarIntEncoding = varIntEncoding;
+            return this;
+        }
+
+        /**
+         * Writes the repeated strings of a value as references to their first occurrence, which makes the data
+         * smaller and avoids decoding the same strings again. The data must be read by a {@link ByteBufferSerial}
+         * with the same option.
+         *
+         * @see ByteBufferSerializerOutput#setStringTable(boolean)
+         */
+        @NotNull
+        public Builder setStringTable(boolean stringTable) {
+            mStringTable = stringTable;
+            return this;
+        }
+
+        /**
+         * Prefixes the serialized objects with their length, so that skipping an object, eg. an unknown subclass or a
+         * field before the one read by {@link ByteBufferSerial#readField(byte[], Serializer, int...)}, doesn't
+         * depend on its size. Each object takes 4 more bytes.
+         *
+         * @see ByteBufferSerializerOutput#setObjectLengths(boolean)
+         */
+        @NotNull
+        public Builder setObjectLengths(boolean objectLengths) {
+            mObjectLengths = objectLengths;
+            return this;
+        }
+
+        /**
+         * Writes the objects found more than once in a value, with the same serializer, as references to their first
+         * occurrence, so that shared objects are written once and read back as a single instance. A value containing
+         * a cycle can't be serialized. The data must be read by a {@link ByteBufferSerial} with the same option.
+         *
+         * @see ByteBufferSerializerOutput#setObjectReferences(boolean)
+         */
+        @NotNull
+        public Builder setObjectReferences(boolean objectReferences) {
+            mObjectReferences = objectReferences;
+            return this;
+        }
+
+        @NotNull
+        public ByteBufferSerial build() {
+            return new ByteBufferSerial(this);
+        }
+    }
 }
@@ -35,6 +35,16 @@ abstract class ByteBufferSerializerDefs extends SerializerDefs {
     public static final byte SUBTYPE_SHORT = 3;
     public static final byte SUBTYPE_INT = 4;
     public static final byte SUBTYPE_LONG = 5;
+    /**
+     * A zigzag encoded varint, used for small negative ints and longs when enabled.
+     */
+    public static final byte SUBTYPE_VARINT = 6;
+
+    /**
+     * Smallest values encoded as varints: larger negative values take as many bytes as the fixed size encoding.
+     */
+    public static final int MIN_VARINT_INT = -(1 << 20);
+    public static final long MIN_VARINT_LONG = -(1L << 48);
 
     public static final byte HEADER_BYTE = makeHeader(TYPE_BYTE, SUBTYPE_UNDEFINED);
     public static final byte HEADER_BYTE_ZERO = makeHeader(TYPE_BYTE, SUBTYPE_DEFAULT);
@@ -75,4 +85,24 @@ abstract class ByteBufferSerializerDefs extends SerializerDefs {
     public static byte getHeaderSubtype(byte header) {
         return (byte) (header & SUBTYPE_MASK);
     }
+
+    public static long encodeZigZag(long val) {
+        return (val << 1) ^ (val >> 63);
+    }
+
+    public static long decodeZigZag(long val) {
+        return (val >>> 1) ^ -(val & 1);
+    }
+
+    /**
+     * @return the number of bytes of the value encoded as a varint, 7 bits per byte.
+     */
+    public static int getVarIntSize(long val) {
+        int size = 1;
+        while ((val & ~0x7FL) != 0) {
+            val >>>= 7;
+            ++size;
+        }
+        return size;
+    }
 }
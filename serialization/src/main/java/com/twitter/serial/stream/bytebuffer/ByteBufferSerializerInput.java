@@ -16,6 +16,8 @@
 
 package com.twitter.serial.stream.bytebuffer;
 
+import com.twitter.serial.serializer.SerializationContext;
+import com.twitter.serial.serializer.Serializer;
 import com.twitter.serial.util.OptionalFieldException;
 import com.twitter.serial.util.SerializationException;
 import com.twitter.serial.stream.SerializerDefs;
@@ -30,15 +32,93 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Custom deserialization for objects serialized by {@link ByteBufferSerializerOutput}
+ * Custom deserialization for objects serialized by {@link ByteBufferSerializerOutput}. The data can be read from a
+ * byte array, a range of a byte array, or any heap, direct or read-only {@link ByteBuffer}, without copying it.
  */
 public class ByteBufferSerializerInput extends SerializerInput {
+    /**
+     * Decodes ASCII strings with a single copy of the bytes. StandardCharsets is only available in API 19+.
+     */
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
     @NotNull private final ByteBuffer mByteBuffer;
+    @Nullable private List<String> mStringTable;
+    /**
+     * The objects read, by position, with object references enabled.
+     */
+    @Nullable private Map<Integer, Object> mObjects;
 
     public ByteBufferSerializerInput(@NotNull byte[] byteArray) {
-        mByteBuffer = ByteBuffer.wrap(byteArray);
+        this(ByteBuffer.wrap(byteArray), true);
+    }
+
+    /**
+     * Reads the given range of the array.
+     */
+    public ByteBufferSerializerInput(@NotNull byte[] byteArray, int offset, int length) {
+        this(ByteBuffer.wrap(byteArray, offset, length).slice(), true);
+    }
+
+    /**
+     * Reads the data between the position and the limit of the buffer. The position of the given buffer is not
+     * modified.
+     */
+    public ByteBufferSerializerInput(@NotNull ByteBuffer byteBuffer) {
+        this(byteBuffer, false);
+    }
+
+    /**
+     * @param shareBuffer whether to read directly from the given buffer, which must be big endian, so that the
+     * data it holds can be refilled between reads. Otherwise, reads from a view of the buffer.
+     */
+    ByteBufferSerializerInput(@NotNull ByteBuffer byteBuffer, boolean shareBuffer) {
+        mByteBuffer = shareBuffer ? byteBuffer : byteBuffer.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Enables the string table, to read data written with {@link ByteBufferSerializerOutput#setStringTable(boolean)}.
+     * Every string read is kept, so that the references to it return the same instance.
+     */
+    @NotNull
+    public ByteBufferSerializerInput setStringTable(boolean stringTable) {
+        if (!stringTable) {
+            mStringTable = null;
+        } else if (mStringTable == null) {
+            mStringTable = new ArrayList<>();
+        }
+        return this;
+    }
+
+    public boolean isStringTable() {
+        return mStringTable != null;
+    }
+
+    /**
+     * Enables object references, to read data written with
+     * {@link ByteBufferSerializerOutput#setObjectReferences(boolean)}. Every object read is kept, so that the
+     * references to it return the same instance.
+     */
+    @NotNull
+    public ByteBufferSerializerInput setObjectReferences(boolean objectReferences) {
+        if (!objectReferences) {
+            mObjects = null;
+        } else if (mObjects == null) {
+            mObjects = new HashMap<>();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isObjectReferences() {
+        return mObjects != null;
     }
 
     @Override
@@ -51,6 +131,31 @@ public class ByteBufferSerializerInput extends SerializerInput {
         return mByteBuffer.position();
     }
 
+    /**
+     * Creates an input reading the data between the given positions of this input, which shares the buffer but not
+     * the position, eg. to read parts of the data from different threads. The string table and the objects read for
+     * object references are not shared.
+     */
+    @NotNull
+    public ByteBufferSerializerInput getRange(int start, int end) {
+        final ByteBuffer buffer = mByteBuffer.duplicate();
+        buffer.limit(end).position(start);
+        return new ByteBufferSerializerInput(buffer, false);
+    }
+
+    /**
+     * Moves back to the beginning of the data.
+     */
+    void rewind() {
+        mByteBuffer.rewind();
+        if (mStringTable != null) {
+            mStringTable.clear();
+        }
+        if (mObjects != null) {
+            mObjects.clear();
+        }
+    }
+
     @Override
     public byte readByte() throws IOException {
         try {
@@ -113,6 +218,9 @@ public class ByteBufferSerializerInput extends SerializerInput {
             readNull();
             return null;
         }
+        if (type == SerializerDefs.TYPE_STRING_REF) {
+            return readStringReference();
+        }
         if (type != SerializerDefs.TYPE_STRING_UTF8 && type != SerializerDefs.TYPE_STRING_ASCII) {
             reportUnexpectedHeader(SerializerDefs.TYPE_STRING_UTF8, type);
         }
@@ -122,7 +230,67 @@ public class ByteBufferSerializerInput extends SerializerInput {
         } else if (length == 0) {
             return "";
         }
-        return type == SerializerDefs.TYPE_STRING_UTF8 ? decodeUtf8String(length) : decodeAsciiString(length);
+        final String string =
+                type == SerializerDefs.TYPE_STRING_UTF8 ? decodeUtf8String(length) : decodeAsciiString(length);
+        if (mStringTable != null) {
+            mStringTable.add(string);
+        }
+        return string;
+    }
+
+    @NotNull
+    private String readStringReference() throws IOException {
+        if (mStringTable == null) {
+            throw new SerializationException("String reference found but the string table is not enabled.");
+        }
+        final int index = readIntHeader(SerializerDefs.TYPE_STRING_REF);
+        if (index < 0 || index >= mStringTable.size()) {
+            throw new SerializationException("Invalid string reference " + index + ", " + mStringTable.size() +
+                    " strings were read.");
+        }
+        return mStringTable.get(index);
+    }
+
+    /**
+     * Returns the object read at the referenced position. An object that was skipped, eg. by
+     * {@link com.twitter.serial.util.SerializationUtils#seekField}, is read from its position with the serializer.
+     */
+    @Nullable
+    @Override
+    public <T> T readObjectReference(@NotNull SerializationContext context, @NotNull Serializer<T> serializer)
+            throws IOException, ClassNotFoundException {
+        if (mObjects == null) {
+            return super.readObjectReference(context, serializer);
+        }
+        final int referencePosition = mByteBuffer.position();
+        final int position = readIntHeader(SerializerDefs.TYPE_OBJECT_REF);
+        if (position < 0 || position >= referencePosition) {
+            throw new SerializationException("Invalid object reference " + position + " at position " +
+                    referencePosition + ".");
+        }
+        final Object object = mObjects.get(position);
+        if (object != null || mObjects.containsKey(position)) {
+            return InternalSerialUtils.cast(object);
+        }
+        final int end = mByteBuffer.position();
+        // The strings of the skipped object are already in the table, and must not be added again.
+        final int stringCount = mStringTable != null ? mStringTable.size() : 0;
+        mByteBuffer.position(position);
+        try {
+            return serializer.deserialize(context, this);
+        } finally {
+            mByteBuffer.position(end);
+            if (mStringTable != null) {
+                mStringTable.subList(stringCount, mStringTable.size()).clear();
+            }
+        }
+    }
+
+    @Override
+    public void addObjectReference(int position, @Nullable Object object) {
+        if (mObjects != null) {
+            mObjects.put(position, object);
+        }
     }
 
     @Nullable
@@ -142,11 +310,66 @@ public class ByteBufferSerializerInput extends SerializerInput {
         } else if (length == 0) {
             return new byte[0];
         }
+        if (mByteBuffer.remaining() < length) {
+            throw new EOFException();
+        }
         final byte[] data = new byte[length];
         mByteBuffer.get(data);
         return data;
     }
 
+    @Nullable
+    @Override
+    public int[] readIntArray() throws IOException {
+        final int length = readArrayHeader(SerializerDefs.TYPE_INT_ARRAY, ByteBufferSerializerDefs.SIZE_INT);
+        if (length < 0) {
+            return null;
+        }
+        final int[] result = new int[length];
+        mByteBuffer.asIntBuffer().get(result);
+        skip(length * ByteBufferSerializerDefs.SIZE_INT);
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public long[] readLongArray() throws IOException {
+        final int length = readArrayHeader(SerializerDefs.TYPE_LONG_ARRAY, ByteBufferSerializerDefs.SIZE_LONG);
+        if (length < 0) {
+            return null;
+        }
+        final long[] result = new long[length];
+        mByteBuffer.asLongBuffer().get(result);
+        skip(length * ByteBufferSerializerDefs.SIZE_LONG);
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public float[] readFloatArray() throws IOException {
+        final int length = readArrayHeader(SerializerDefs.TYPE_FLOAT_ARRAY, ByteBufferSerializerDefs.SIZE_FLOAT);
+        if (length < 0) {
+            return null;
+        }
+        final float[] result = new float[length];
+        mByteBuffer.asFloatBuffer().get(result);
+        skip(length * ByteBufferSerializerDefs.SIZE_FLOAT);
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public double[] readDoubleArray() throws IOException {
+        final int length = readArrayHeader(SerializerDefs.TYPE_DOUBLE_ARRAY, ByteBufferSerializerDefs.SIZE_DOUBLE);
+        if (length < 0) {
+            return null;
+        }
+        final double[] result = new double[length];
+        mByteBuffer.asDoubleBuffer().get(result);
+        skip(length * ByteBufferSerializerDefs.SIZE_DOUBLE);
+        return result;
+    }
+
     @Override
     public int readObjectStart() throws IOException {
         final int versionNumber;
@@ -154,6 +377,11 @@ public class ByteBufferSerializerInput extends SerializerInput {
             versionNumber = readIntHeader(SerializerDefs.TYPE_START_OBJECT_DEBUG);
             // Skip the class name.
             readString();
+        } else if (peekType() == SerializerDefs.TYPE_START_OBJECT_SIZED) {
+            versionNumber = readIntHeader(SerializerDefs.TYPE_START_OBJECT_SIZED);
+            // Skip the length of the object, whose content is then read value by value and may not be buffered yet
+            // when reading from a stream.
+            readObjectLength();
         } else {
             versionNumber = readIntHeader(SerializerDefs.TYPE_START_OBJECT);
         }
@@ -211,6 +439,153 @@ public class ByteBufferSerializerInput extends SerializerInput {
         }
     }
 
+    /**
+     * Reads the header of a primitive array, or a null value, and checks that all the elements are available.
+     *
+     * @return the length of the array, or -1 if the value is null.
+     */
+    private int readArrayHeader(byte expectedType, int elementSize) throws IOException {
+        final byte type = peekType();
+        if (type == SerializerDefs.TYPE_NULL) {
+            readNull();
+            return -1;
+        }
+        if (type != expectedType) {
+            reportUnexpectedHeader(expectedType, type);
+        }
+        final int length = readIntHeader(type);
+        if (length < 0) {
+            throw new SerializationException(SerializerDefs.getTypeName(type) + " length is negative: " + length +
+                    ".");
+        }
+        if (mByteBuffer.remaining() / elementSize < length) {
+            throw new EOFException();
+        }
+        return length;
+    }
+
+    /**
+     * Skips strings, byte arrays and packed arrays without decoding them. Strings are still decoded when the string
+     * table is enabled, since they must be added to it.
+     */
+    @Override
+    public void skipValue() throws IOException {
+        final byte type = peekType();
+        switch (type) {
+            case SerializerDefs.TYPE_BYTE_ARRAY: {
+                skip(readArrayHeader(type, ByteBufferSerializerDefs.SIZE_BYTE));
+                return;
+            }
+            case SerializerDefs.TYPE_STRING_ASCII: {
+                if (mStringTable == null) {
+                    skip(readArrayHeader(type, ByteBufferSerializerDefs.SIZE_BYTE));
+                    return;
+                }
+                break;
+            }
+            case SerializerDefs.TYPE_STRING_UTF8: {
+                if (mStringTable == null) {
+                    skipUtf8String(readArrayHeader(type, ByteBufferSerializerDefs.SIZE_BYTE));
+                    return;
+                }
+                break;
+            }
+            case SerializerDefs.TYPE_INT_ARRAY:
+            case SerializerDefs.TYPE_FLOAT_ARRAY: {
+                skip(readArrayHeader(type, ByteBufferSerializerDefs.SIZE_INT) * ByteBufferSerializerDefs.SIZE_INT);
+                return;
+            }
+            case SerializerDefs.TYPE_LONG_ARRAY:
+            case SerializerDefs.TYPE_DOUBLE_ARRAY: {
+                skip(readArrayHeader(type, ByteBufferSerializerDefs.SIZE_LONG) * ByteBufferSerializerDefs.SIZE_LONG);
+                return;
+            }
+            case SerializerDefs.TYPE_OBJECT_REF: {
+                readIntHeader(type);
+                return;
+            }
+        }
+        super.skipValue();
+    }
+
+    /**
+     * Jumps over the object using its length prefix. Objects are skipped value by value when the string table is
+     * enabled, since their strings must be added to it.
+     */
+    @Override
+    public boolean skipSizedObject() throws IOException {
+        if (mStringTable != null || peekType() != SerializerDefs.TYPE_START_OBJECT_SIZED) {
+            return false;
+        }
+        final int start = mByteBuffer.position();
+        readIntHeader(SerializerDefs.TYPE_START_OBJECT_SIZED);
+        final int length = readObjectLength();
+        if (mByteBuffer.remaining() < length) {
+            mByteBuffer.position(start);
+            throw new EOFException();
+        }
+        if (length < ByteBufferSerializerDefs.SIZE_BYTE ||
+                mByteBuffer.get(mByteBuffer.position() + length - 1) != ByteBufferSerializerDefs.HEADER_END_OBJECT) {
+            mByteBuffer.position(start);
+            throw new SerializationException("Invalid object length: " + length + ".");
+        }
+        skip(length);
+        return true;
+    }
+
+    /**
+     * Reads the length of the content of an object.
+     */
+    private int readObjectLength() throws IOException {
+        if (mByteBuffer.remaining() < ByteBufferSerializerDefs.SIZE_INT) {
+            throw new EOFException();
+        }
+        final int length = mByteBuffer.getInt();
+        if (length < 0) {
+            throw new SerializationException("Invalid object length: " + length + ".");
+        }
+        return length;
+    }
+
+    /**
+     * Skips the UTF-8 encoded string of the given number of chars, using only the lead bytes.
+     */
+    private void skipUtf8String(int length) throws IOException {
+        final ByteBuffer buffer = mByteBuffer;
+        final int limit = buffer.limit();
+        int position = buffer.position();
+        int chars = 0;
+        while (chars < length) {
+            if (position >= limit) {
+                throw new EOFException();
+            }
+            final int b = buffer.get(position);
+            if (b >= 0) {
+                ++position;
+                ++chars;
+            } else if ((b & 0xE0) == 0xC0) {
+                position += 2;
+                ++chars;
+            } else if ((b & 0xF0) == 0xE0) {
+                position += 3;
+                ++chars;
+            } else if ((b & 0xF8) == 0xF0) {
+                position += 4;
+                chars += 2;
+            } else {
+                throw newMalformedStringException();
+            }
+        }
+        if (position > limit) {
+            throw new EOFException();
+        }
+        buffer.position(position);
+    }
+
+    private void skip(int size) {
+        mByteBuffer.position(mByteBuffer.position() + size);
+    }
+
     private static byte reportUnexpectedHeader(byte expectedType, byte actualType)
             throws OptionalFieldException, SerializationException {
         if (actualType == SerializerDefs.TYPE_END_OBJECT) {
@@ -226,6 +601,10 @@ public class ByteBufferSerializerInput extends SerializerInput {
      */
     private int readIntHeader(byte expectedType) throws IOException {
         final byte subtype = readHeader(expectedType);
+        if (subtype == ByteBufferSerializerDefs.SUBTYPE_UNDEFINED && expectedType == SerializerDefs.TYPE_BYTE_ARRAY) {
+            // The header of empty byte arrays has no length.
+            return 0;
+        }
         return readIntValue(subtype);
     }
 
@@ -237,6 +616,12 @@ public class ByteBufferSerializerInput extends SerializerInput {
                 return mByteBuffer.get() & 0xFF;
             } else if (subtype == ByteBufferSerializerDefs.SUBTYPE_SHORT) {
                 return mByteBuffer.getShort() & 0xFFFF;
+            } else if (subtype == ByteBufferSerializerDefs.SUBTYPE_VARINT) {
+                final long val = readVarIntValue();
+                if (val < Integer.MIN_VALUE) {
+                    throw new SerializationException("Varint out of the int range: " + val + ".");
+                }
+                return (int) val;
             } else {
                 return mByteBuffer.getInt();
             }
@@ -253,6 +638,8 @@ public class ByteBufferSerializerInput extends SerializerInput {
             final byte subtype = readHeader(expectedType);
             if (subtype == ByteBufferSerializerDefs.SUBTYPE_LONG) {
                 return mByteBuffer.getLong();
+            } else if (subtype == ByteBufferSerializerDefs.SUBTYPE_VARINT) {
+                return readVarIntValue();
             }
             return readIntValue(subtype) & 0xFFFFFFFFL;
         } catch (BufferUnderflowException ignore) {
@@ -260,56 +647,122 @@ public class ByteBufferSerializerInput extends SerializerInput {
         }
     }
 
+    /**
+     * Reads a zigzag encoded varint.
+     */
+    private long readVarIntValue() throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final byte b = mByteBuffer.get();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return ByteBufferSerializerDefs.decodeZigZag(zigZag);
+            }
+        }
+        throw new SerializationException("Malformed varint.");
+    }
+
+    /**
+     * Decodes the UTF-8 encoded string of the given number of chars directly from the backing array into a char
+     * array, or from a copy of the bytes for direct and read-only buffers.
+     */
     @NotNull
     private String decodeUtf8String(int length) throws IOException {
-        try {
-            final ByteBuffer buffer = mByteBuffer;
-            final StringBuilder builder = new StringBuilder(length);
-            for (int i = 0; i < length; ++i) {
-                final int b1 = buffer.get();
-                if ((b1 & 0x80) == 0) {
-                    builder.append((char) b1);
-                } else if ((b1 & 0xE0) == 0xC0) {
-                    final int b2 = buffer.get();
-                    builder.append((char) (((b1 << 6) ^ b2) ^ 0x0f80));
-                } else if ((b1 & 0xF0) == 0xE0) {
-                    final int b2 = buffer.get();
-                    final int b3 = buffer.get();
-                    builder.append((char) (((b1 << 12) ^ (b2 << 6) ^ b3) ^ 0x1f80));
-                } else if ((b1 & 0xF8) == 0xF0) {
-                    final int b2 = buffer.get();
-                    final int b3 = buffer.get();
-                    final int b4 = buffer.get();
-                    final int code = ((b1 & 0x07) << 18) | ((b2 & 0x3f) << 12) | ((b3 & 0x3f) << 6) | (b4 & 0x3f);
-                    builder.append(Surrogate.highSurrogate(code));
-                    builder.append(Surrogate.lowSurrogate(code));
-                    //noinspection AssignmentToForLoopParameter
-                    ++i;
-                } else {
-                    throw new SerializationException("Serialized string is malformed.");
+        final ByteBuffer buffer = mByteBuffer;
+        // A char takes at most 3 bytes, supplementary characters take 4 bytes for 2 chars.
+        final int maxSize = (int) Math.min(buffer.remaining(), 3L * length);
+        final byte[] bytes;
+        final int start;
+        if (buffer.hasArray()) {
+            bytes = buffer.array();
+            start = buffer.arrayOffset() + buffer.position();
+        } else {
+            bytes = new byte[maxSize];
+            buffer.duplicate().get(bytes);
+            start = 0;
+        }
+        final int end = start + maxSize;
+        final char[] chars = new char[length];
+        int offset = start;
+        int i = 0;
+        while (i < length) {
+            if (offset >= end) {
+                throw new EOFException();
+            }
+            final int b1 = bytes[offset];
+            if (b1 >= 0) {
+                chars[i++] = (char) b1;
+                ++offset;
+            } else if ((b1 & 0xE0) == 0xC0) {
+                checkAvailable(offset, 2, end);
+                final int b2 = getContinuationByte(bytes, offset + 1);
+                final int ch = ((b1 & 0x1F) << 6) | b2;
+                if (ch < 0x80) {
+                    throw newMalformedStringException();
+                }
+                chars[i++] = (char) ch;
+                offset += 2;
+            } else if ((b1 & 0xF0) == 0xE0) {
+                checkAvailable(offset, 3, end);
+                final int ch = ((b1 & 0x0F) << 12) | (getContinuationByte(bytes, offset + 1) << 6) |
+                        getContinuationByte(bytes, offset + 2);
+                if (ch < 0x800 || Surrogate.isSurrogate(ch)) {
+                    throw newMalformedStringException();
                 }
+                chars[i++] = (char) ch;
+                offset += 3;
+            } else if ((b1 & 0xF8) == 0xF0) {
+                checkAvailable(offset, 4, end);
+                final int code = ((b1 & 0x07) << 18) | (getContinuationByte(bytes, offset + 1) << 12) |
+                        (getContinuationByte(bytes, offset + 2) << 6) | getContinuationByte(bytes, offset + 3);
+                if (code < Surrogate.MIN_SUPPLEMENTARY_CODE_POINT || code > Surrogate.MAX_CODE_POINT ||
+                        i + 1 >= length) {
+                    throw newMalformedStringException();
+                }
+                chars[i++] = Surrogate.highSurrogate(code);
+                chars[i++] = Surrogate.lowSurrogate(code);
+                offset += 4;
+            } else {
+                throw newMalformedStringException();
             }
-            return builder.toString();
-        } catch (BufferUnderflowException ignore) {
+        }
+        buffer.position(buffer.position() + offset - start);
+        return new String(chars);
+    }
+
+    private static void checkAvailable(int offset, int size, int end) throws EOFException {
+        if (end - offset < size) {
             throw new EOFException();
         }
     }
 
+    private static int getContinuationByte(@NotNull byte[] bytes, int offset) throws SerializationException {
+        final int b = bytes[offset];
+        if ((b & 0xC0) != 0x80) {
+            throw newMalformedStringException();
+        }
+        return b & 0x3F;
+    }
+
+    @NotNull
+    private static SerializationException newMalformedStringException() {
+        return new SerializationException("Serialized string is malformed.");
+    }
+
     @NotNull
     private String decodeAsciiString(int length) throws IOException {
         if (mByteBuffer.remaining() < length) {
             throw new EOFException();
         }
-        final int position = mByteBuffer.position();
-        final int end = position + length;
-        mByteBuffer.position(end);
-
-        final byte[] bytes = mByteBuffer.array();
-        final char[] chars = new char[length];
-        for (int i = 0; i < length; ++i) {
-            chars[i] = (char) bytes[position + i];
+        if (mByteBuffer.hasArray()) {
+            final int position = mByteBuffer.position();
+            mByteBuffer.position(position + length);
+            return new String(mByteBuffer.array(), mByteBuffer.arrayOffset() + position, length, ISO_8859_1);
         }
-        return new String(chars);
+        // Direct or read-only buffer.
+        final byte[] bytes = new byte[length];
+        mByteBuffer.get(bytes);
+        return new String(bytes, ISO_8859_1);
     }
 
     /**
@@ -318,7 +771,13 @@ public class ByteBufferSerializerInput extends SerializerInput {
     private static class Surrogate {
         private static final int MIN_HIGH_SURROGATE = '\uD800';
         private static final int MIN_LOW_SURROGATE  = '\uDC00';
+        private static final int MAX_SURROGATE = '\uDFFF';
         private static final int MIN_SUPPLEMENTARY_CODE_POINT = 0x010000;
+        private static final int MAX_CODE_POINT = 0x10FFFF;
+
+        public static boolean isSurrogate(int ch) {
+            return ch >= MIN_HIGH_SURROGATE && ch <= MAX_SURROGATE;
+        }
 
         public static char highSurrogate(int codePoint) {
             return (char) ((codePoint >>> 10) + (MIN_HIGH_SURROGATE - (MIN_SUPPLEMENTARY_CODE_POINT >>> 10)));
@@ -16,22 +16,47 @@
 
 package com.twitter.serial.stream.bytebuffer;
 
+import com.twitter.serial.serializer.Serializer;
 import com.twitter.serial.stream.SerializerDefs;
 import com.twitter.serial.stream.SerializerOutput;
+import com.twitter.serial.util.InternalSerialUtils;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Custom serialization class to serialize primitive types and Strings. Objects can be serialized recursively as a
  * series of these types. Write methods for each type write the values to a {@link ByteBuffer} that will grow
  * automatically as needed. Use {@link ByteBufferSerializerOutput#getSerializedData()} to get the full byte array.
+ * <p>
+ * Alternatively, the values can be written in place into a caller-supplied heap or direct {@link ByteBuffer}, which
+ * never grows: writing more than the buffer can hold throws a {@link BufferOverflowException}.
  */
 public final class ByteBufferSerializerOutput extends SerializerOutput<ByteBufferSerializerOutput> {
+    /**
+     * A UTF-8 encoded char takes at most 3 bytes; supplementary characters take 4 bytes for 2 chars.
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
     @NotNull private ByteBuffer mByteBuffer;
+    private final int mStartPosition;
+    private final boolean mCanGrow;
+    private boolean mVarIntEncoding;
+    @Nullable private Map<String, Integer> mStringTable;
+    /**
+     * Positions of the length prefixes of the objects being written, or -1 for the objects written without one.
+     */
+    @Nullable private int[] mObjectLengthPositions;
+    private int mObjectDepth;
+    @Nullable private ObjectReferenceTable mObjectReferences;
 
     public ByteBufferSerializerOutput() {
         this(new byte[ByteBufferSerializerDefs.DEFAULT_BUFFER_SIZE]);
@@ -44,6 +69,95 @@ public final class ByteBufferSerializerOutput extends SerializerOutput<ByteBuffe
             throw new IllegalArgumentException("The byte buffer must be non empty.");
         }
         mByteBuffer = ByteBuffer.wrap(byteArray);
+        mStartPosition = 0;
+        mCanGrow = true;
+    }
+
+    /**
+     * Writes the values in place into the given buffer, starting at its current position and up to its limit. The
+     * position of the given buffer is not modified; use {@link #getPosition()} to get the number of bytes written.
+     */
+    public ByteBufferSerializerOutput(@NotNull ByteBuffer byteBuffer) {
+        mByteBuffer = byteBuffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        mStartPosition = byteBuffer.position();
+        mCanGrow = false;
+    }
+
+    /**
+     * Enables the zigzag varint encoding of small negative ints and longs, which then take 2 to 4 bytes instead of
+     * 5, and 2 to 8 bytes instead of 9 respectively. Data written this way can't be read by versions of the library
+     * that predate the varint subtype.
+     */
+    @NotNull
+    public ByteBufferSerializerOutput setVarIntEncoding(boolean varIntEncoding) {
+        mVarIntEncoding = varIntEncoding;
+        return this;
+    }
+
+    public boolean isVarIntEncoding() {
+        return mVarIntEncoding;
+    }
+
+    /**
+     * Enables the string table: a string that was already written is replaced by a reference to its first
+     * occurrence. The data must be read by a {@link ByteBufferSerializerInput} with the string table enabled, and
+     * can't be read by versions of the library that predate it.
+     */
+    @NotNull
+    public ByteBufferSerializerOutput setStringTable(boolean stringTable) {
+        if (!stringTable) {
+            mStringTable = null;
+        } else if (mStringTable == null) {
+            mStringTable = new HashMap<>();
+        }
+        return this;
+    }
+
+    public boolean isStringTable() {
+        return mStringTable != null;
+    }
+
+    /**
+     * Prefixes each object with the length of its content, which is written when the object ends. Readers can then
+     * skip a whole object in constant time instead of going through each of its values, see
+     * {@link com.twitter.serial.util.SerializationUtils#skipObject}. Objects written with a class name in debug mode
+     * are not prefixed. Data written this way can't be read by versions of the library that predate the prefix.
+     */
+    @NotNull
+    public ByteBufferSerializerOutput setObjectLengths(boolean objectLengths) {
+        if (!objectLengths) {
+            mObjectLengthPositions = null;
+        } else if (mObjectLengthPositions == null) {
+            mObjectLengthPositions = new int[8];
+        }
+        mObjectDepth = 0;
+        return this;
+    }
+
+    public boolean isObjectLengths() {
+        return mObjectLengthPositions != null;
+    }
+
+    /**
+     * Enables object references: an object that was already written by the same serializer is replaced by a
+     * reference to the position of its first occurrence, so that objects shared in a graph are written once and read
+     * back as a single instance. Cyclic references are not supported since the objects are built after their
+     * content is read, and throw a {@link com.twitter.serial.util.SerializationException}. The data must be read
+     * by a {@link ByteBufferSerializerInput} with object references enabled, and can't be read by versions of the
+     * library that predate them.
+     */
+    @NotNull
+    public ByteBufferSerializerOutput setObjectReferences(boolean objectReferences) {
+        if (!objectReferences) {
+            mObjectReferences = null;
+        } else if (mObjectReferences == null) {
+            mObjectReferences = new ObjectReferenceTable();
+        }
+        return this;
+    }
+
+    public boolean isObjectReferences() {
+        return mObjectReferences != null;
     }
 
     /**
@@ -53,30 +167,72 @@ public final class ByteBufferSerializerOutput extends SerializerOutput<ByteBuffe
      */
     @NotNull
     public byte[] getSerializedData() {
-        final byte[] arrayCopy = new byte[mByteBuffer.position()];
-        mByteBuffer.rewind();
+        final byte[] arrayCopy = new byte[getPosition()];
+        mByteBuffer.position(mStartPosition);
         mByteBuffer.get(arrayCopy);
         return arrayCopy;
     }
 
+    /**
+     * Appends the data written to the other output, eg. to concatenate parts of the data serialized from different
+     * threads. Both outputs must use the same encoding options, and the string table and object references can't be
+     * used since each output has its own.
+     */
+    @NotNull
+    public ByteBufferSerializerOutput writeSerializedData(@NotNull ByteBufferSerializerOutput output) {
+        if (mStringTable != null || output.mStringTable != null) {
+            throw new IllegalStateException("Serialized data can't be concatenated with a string table.");
+        }
+        if (mObjectReferences != null || output.mObjectReferences != null) {
+            throw new IllegalStateException("Serialized data can't be concatenated with object references.");
+        }
+        final int length = output.getPosition();
+        ensureCapacity(length);
+        final ByteBuffer data = output.mByteBuffer.duplicate();
+        data.limit(output.mStartPosition + length).position(output.mStartPosition);
+        mByteBuffer.put(data);
+        return this;
+    }
+
     @Override
     public boolean isPeekSupported() {
         return true;
     }
 
+    /**
+     * @return the number of bytes written so far.
+     */
     public int getPosition() {
-        return mByteBuffer.position();
+        return mByteBuffer.position() - mStartPosition;
     }
 
     public byte peekTypeAtPosition(int position) {
-        return position < mByteBuffer.position() ?
-                ByteBufferSerializerDefs.getHeaderType(mByteBuffer.get(position)) : SerializerDefs.TYPE_EOF;
+        return position < getPosition() ?
+                ByteBufferSerializerDefs.getHeaderType(mByteBuffer.get(mStartPosition + position)) :
+                SerializerDefs.TYPE_EOF;
     }
 
     public int getBufferCapacity() {
         return mByteBuffer.capacity();
     }
 
+    /**
+     * Returns the buffer holding the serialized content. The buffer is replaced whenever it has to grow, so the
+     * reference should not be kept across writes.
+     */
+    @NotNull
+    ByteBuffer getByteBuffer() {
+        return mByteBuffer;
+    }
+
+    /**
+     * Discards the serialized content, keeping the current buffer for the next writes.
+     */
+    void clear() {
+        mByteBuffer.position(mStartPosition);
+        mObjectDepth = 0;
+    }
+
     @Override
     @NotNull
     public ByteBufferSerializerOutput writeByte(byte val) {
@@ -148,6 +304,14 @@ public final class ByteBufferSerializerOutput extends SerializerOutput<ByteBuffe
             writeNull();
         } else if (val.isEmpty()) {
             writeHeader(ByteBufferSerializerDefs.HEADER_STRING_EMPTY);
+        } else if (mStringTable != null) {
+            final Integer index = mStringTable.get(val);
+            if (index != null) {
+                writeIntHeader(SerializerDefs.TYPE_STRING_REF, index);
+            } else {
+                mStringTable.put(val, mStringTable.size());
+                encodeString(val);
+            }
         } else {
             encodeString(val);
         }
@@ -169,6 +333,58 @@ public final class ByteBufferSerializerOutput extends SerializerOutput<ByteBuffe
         return this;
     }
 
+    @Override
+    @NotNull
+    public ByteBufferSerializerOutput writeIntArray(@Nullable int[] val) {
+        if (val == null) {
+            writeNull();
+        } else {
+            writeArrayHeader(SerializerDefs.TYPE_INT_ARRAY, val.length, ByteBufferSerializerDefs.SIZE_INT);
+            mByteBuffer.asIntBuffer().put(val);
+            skip(val.length * ByteBufferSerializerDefs.SIZE_INT);
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public ByteBufferSerializerOutput writeLongArray(@Nullable long[] val) {
+        if (val == null) {
+            writeNull();
+        } else {
+            writeArrayHeader(SerializerDefs.TYPE_LONG_ARRAY, val.length, ByteBufferSerializerDefs.SIZE_LONG);
+            mByteBuffer.asLongBuffer().put(val);
+            skip(val.length * ByteBufferSerializerDefs.SIZE_LONG);
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public ByteBufferSerializerOutput writeFloatArray(@Nullable float[] val) {
+        if (val == null) {
+            writeNull();
+        } else {
+            writeArrayHeader(SerializerDefs.TYPE_FLOAT_ARRAY, val.length, ByteBufferSerializerDefs.SIZE_FLOAT);
+            mByteBuffer.asFloatBuffer().put(val);
+            skip(val.length * ByteBufferSerializerDefs.SIZE_FLOAT);
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public ByteBufferSerializerOutput writeDoubleArray(@Nullable double[] val) {
+        if (val == null) {
+            writeNull();
+        } else {
+            writeArrayHeader(SerializerDefs.TYPE_DOUBLE_ARRAY, val.length, ByteBufferSerializerDefs.SIZE_DOUBLE);
+            mByteBuffer.asDoubleBuffer().put(val);
+            skip(val.length * ByteBufferSerializerDefs.SIZE_DOUBLE);
+        }
+        return this;
+    }
+
     @Override
     @NotNull
     public ByteBufferSerializerOutput writeNull() {
@@ -182,7 +398,14 @@ public final class ByteBufferSerializerOutput extends SerializerOutput<ByteBuffe
         if (versionNumber < 0) {
             throw new IllegalArgumentException("The version number is negative: " + versionNumber + ".");
         }
-        writeIntHeader(SerializerDefs.TYPE_START_OBJECT, versionNumber);
+        if (mObjectLengthPositions != null) {
+            writeIntHeader(SerializerDefs.TYPE_START_OBJECT_SIZED, versionNumber);
+            ensureCapacity(ByteBufferSerializerDefs.SIZE_INT);
+            pushObjectLengthPosition(mByteBuffer.position());
+            skip(ByteBufferSerializerDefs.SIZE_INT);
+        } else {
+            writeIntHeader(SerializerDefs.TYPE_START_OBJECT, versionNumber);
+        }
         return this;
     }
 
@@ -194,6 +417,9 @@ public final class ByteBufferSerializerOutput extends SerializerOutput<ByteBuffe
         }
         writeIntHeader(SerializerDefs.TYPE_START_OBJECT_DEBUG, versionNumber);
         writeString(className);
+        if (mObjectLengthPositions != null) {
+            pushObjectLengthPosition(-1);
+        }
         return this;
     }
 
@@ -201,15 +427,63 @@ public final class ByteBufferSerializerOutput extends SerializerOutput<ByteBuffe
     @NotNull
     public ByteBufferSerializerOutput writeObjectEnd() {
         writeHeader(ByteBufferSerializerDefs.HEADER_END_OBJECT);
+        if (mObjectLengthPositions != null && mObjectDepth > 0) {
+            // Backpatch the length prefix, now that the content of the object is known.
+            final int lengthPosition = mObjectLengthPositions[--mObjectDepth];
+            if (lengthPosition >= 0) {
+                mByteBuffer.putInt(lengthPosition,
+                        mByteBuffer.position() - lengthPosition - ByteBufferSerializerDefs.SIZE_INT);
+            }
+        }
         return this;
     }
 
+    @Override
+    public boolean writeObjectReference(@NotNull Object object, @NotNull Serializer<?> serializer)
+            throws IOException {
+        if (mObjectReferences == null) {
+            return false;
+        }
+        final int position = mObjectReferences.start(object, serializer, getPosition());
+        if (position < 0) {
+            return false;
+        }
+        writeIntHeader(SerializerDefs.TYPE_OBJECT_REF, position);
+        return true;
+    }
+
+    @Override
+    public void endObjectReference(@NotNull Object object, @NotNull Serializer<?> serializer) {
+        if (mObjectReferences != null) {
+            mObjectReferences.end(object, serializer);
+        }
+    }
+
+    private void pushObjectLengthPosition(int position) {
+        final int[] positions = InternalSerialUtils.checkIsNotNull(mObjectLengthPositions);
+        if (mObjectDepth == positions.length) {
+            mObjectLengthPositions = Arrays.copyOf(positions, 2 * mObjectDepth);
+        }
+        mObjectLengthPositions[mObjectDepth++] = position;
+    }
+
     private void writeHeader(byte headerType) {
         ensureCapacity(ByteBufferSerializerDefs.SIZE_BYTE);
         mByteBuffer.put(headerType);
     }
 
-    private void writeIntHeader(byte type, int val) {
+    void writeIntHeader(byte type, int val) {
+        if (mVarIntEncoding && val < 0 && val >= ByteBufferSerializerDefs.MIN_VARINT_INT) {
+            writeVarIntHeader(type, val);
+        } else {
+            writeFixedIntHeader(type, val);
+        }
+    }
+
+    /**
+     * Writes the int in the smallest of the byte, short and int subtypes, which are also read as unsigned longs.
+     */
+    private void writeFixedIntHeader(byte type, int val) {
         if (val == 0) {
             writeHeader(ByteBufferSerializerDefs.makeHeader(type, ByteBufferSerializerDefs.SUBTYPE_DEFAULT));
         } else if ((val & 0xFFFFFF00) == 0) {
@@ -227,9 +501,28 @@ public final class ByteBufferSerializerOutput extends SerializerOutput<ByteBuffe
         }
     }
 
+    /**
+     * Writes the header of a primitive array and makes room for its elements, which are written in a single block
+     * through a view of the buffer.
+     */
+    private void writeArrayHeader(byte type, int length, int elementSize) {
+        if (length > (Integer.MAX_VALUE - mByteBuffer.capacity()) / elementSize) {
+            throw new IllegalArgumentException("Array too large to be serialized: " + length + " elements.");
+        }
+        writeIntHeader(type, length);
+        ensureCapacity(length * elementSize);
+    }
+
+    private void skip(int size) {
+        mByteBuffer.position(mByteBuffer.position() + size);
+    }
+
     private void writeLongHeader(byte type, long val) {
         if ((val & 0xFFFFFFFF00000000L) == 0) {
-            writeIntHeader(type, (int) val);
+            // The cast int may be negative, but it must not be written as a negative varint.
+            writeFixedIntHeader(type, (int) val);
+        } else if (mVarIntEncoding && val < 0 && val >= ByteBufferSerializerDefs.MIN_VARINT_LONG) {
+            writeVarIntHeader(type, val);
         } else {
             writeHeader(ByteBufferSerializerDefs.makeHeader(type, ByteBufferSerializerDefs.SUBTYPE_LONG));
             ensureCapacity(ByteBufferSerializerDefs.SIZE_LONG);
@@ -237,49 +530,88 @@ public final class ByteBufferSerializerOutput extends SerializerOutput<ByteBuffe
         }
     }
 
+    private void writeVarIntHeader(byte type, long val) {
+        writeHeader(ByteBufferSerializerDefs.makeHeader(type, ByteBufferSerializerDefs.SUBTYPE_VARINT));
+        long zigZag = ByteBufferSerializerDefs.encodeZigZag(val);
+        ensureCapacity(ByteBufferSerializerDefs.getVarIntSize(zigZag));
+        while ((zigZag & ~0x7FL) != 0) {
+            mByteBuffer.put((byte) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        mByteBuffer.put((byte) zigZag);
+    }
+
     private void ensureCapacity(int sizeNeeded) {
         if (mByteBuffer.remaining() < sizeNeeded) {
+            if (!mCanGrow) {
+                throw new BufferOverflowException();
+            }
             final int position = mByteBuffer.position();
-            final byte[] bufferContents = mByteBuffer.array();
-            final byte[] newBufferContents = new byte[2 * mByteBuffer.capacity()];
-            System.arraycopy(bufferContents, 0, newBufferContents, 0, position);
+            int newCapacity = 2 * mByteBuffer.capacity();
+            while (newCapacity - position < sizeNeeded) {
+                newCapacity *= 2;
+            }
+            final byte[] newBufferContents = new byte[newCapacity];
+            System.arraycopy(mByteBuffer.array(), 0, newBufferContents, 0, position);
             final ByteBuffer newBuffer = ByteBuffer.wrap(newBufferContents);
             newBuffer.position(position);
             mByteBuffer = newBuffer;
-            ensureCapacity(sizeNeeded);
         }
     }
 
     /**
-     * Encodes the string into the buffer using UTF-8.
+     * Encodes the string into the buffer using UTF-8, after a header holding its length.
      */
     private void encodeString(@NotNull String string) {
         final int length = string.length();
         final int headerPosition = mByteBuffer.position();
         writeIntHeader(SerializerDefs.TYPE_STRING_ASCII, length);
+
+        // If the string is not ASCII, update the header.
+        if (!encodeChars(string, 0, length)) {
+            final int currentPosition = mByteBuffer.position();
+            mByteBuffer.position(headerPosition);
+            writeIntHeader(SerializerDefs.TYPE_STRING_UTF8, length);
+            mByteBuffer.position(currentPosition);
+        }
+    }
+
+    /**
+     * Encodes the chars of the string between the given indexes using UTF-8, without a header. The leading ASCII chars
+     * are copied in a single loop into the backing array; the capacity needed by the other chars is ensured once,
+     * before encoding them. A range must not end between the two chars of a surrogate pair.
+     *
+     * @return whether all the chars are ASCII.
+     */
+    boolean encodeChars(@NotNull String string, int start, int end) {
+        ensureCapacity(end - start);
+        final int asciiEnd = mByteBuffer.hasArray() ? encodeAsciiPrefix(string, start, end) : start;
+        if (asciiEnd == end) {
+            return true;
+        }
+        final int maxSize = MAX_BYTES_PER_CHAR * (end - asciiEnd);
+        if (mByteBuffer.remaining() < maxSize) {
+            ensureCapacity(SizeCalculatingSerializerOutput.getEncodedLength(string, asciiEnd));
+        }
         boolean isAscii = true;
-        for (int i = 0; i < length; ++i) {
+        for (int i = asciiEnd; i < end; ++i) {
             final int ch = (int) string.charAt(i);
             if (ch < 0x80) {
-                ensureCapacity(ByteBufferSerializerDefs.SIZE_BYTE);
                 mByteBuffer.put((byte) ch);
             } else {
                 isAscii = false;
                 if (ch < 0x800) {
-                    ensureCapacity(2 * ByteBufferSerializerDefs.SIZE_BYTE);
                     mByteBuffer.put((byte) ((ch >> 6) | 0xc0));
                     mByteBuffer.put((byte) ((ch & 0x3f) | 0x80));
                 } else if (isSurrogate(ch)) {
                     // A supplementary character.
-                    final int low = i + 1 != length ? string.charAt(i + 1) : 0;
+                    final int low = i + 1 != end ? string.charAt(i + 1) : 0;
                     if (!isSurrogateLead(ch) || !isSurrogate(low) || !isSurrogateTrail(low)) {
-                        ensureCapacity(ByteBufferSerializerDefs.SIZE_BYTE);
                         mByteBuffer.put((byte) '?');
                     } else {
                         // Now we know we have a *valid* surrogate pair, we can consume the low surrogate.
                         //noinspection AssignmentToForLoopParameter
                         ++i;
-                        ensureCapacity(4 * ByteBufferSerializerDefs.SIZE_BYTE);
                         final int supplementary = getSupplementary(ch, low);
                         mByteBuffer.put((byte) ((supplementary >> 18) | 0xf0));
                         mByteBuffer.put((byte) (((supplementary >> 12) & 0x3f) | 0x80));
@@ -287,21 +619,35 @@ public final class ByteBufferSerializerOutput extends SerializerOutput<ByteBuffe
                         mByteBuffer.put((byte) ((supplementary & 0x3f) | 0x80));
                     }
                 } else {
-                    ensureCapacity(3 * ByteBufferSerializerDefs.SIZE_BYTE);
                     mByteBuffer.put((byte) ((ch >> 12) | 0xe0));
                     mByteBuffer.put((byte) (((ch >> 6) & 0x3f) | 0x80));
                     mByteBuffer.put((byte) ((ch & 0x3f) | 0x80));
                 }
             }
         }
+        return isAscii;
+    }
 
-        // If the string is not ASCII, update the header.
-        if (!isAscii) {
-            final int currentPosition = mByteBuffer.position();
-            mByteBuffer.position(headerPosition);
-            writeIntHeader(SerializerDefs.TYPE_STRING_UTF8, length);
-            mByteBuffer.position(currentPosition);
+    /**
+     * Copies the chars of the string between the given indexes into the backing array until the first non ASCII
+     * char, which must fit in the remaining capacity.
+     *
+     * @return the index of the first char not copied.
+     */
+    private int encodeAsciiPrefix(@NotNull String string, int start, int end) {
+        final byte[] array = mByteBuffer.array();
+        final int offset = mByteBuffer.arrayOffset() + mByteBuffer.position() - start;
+        int i = start;
+        while (i < end) {
+            final char ch = string.charAt(i);
+            if (ch >= 0x80) {
+                break;
+            }
+            array[offset + i] = (byte) ch;
+            ++i;
         }
+        mByteBuffer.position(mByteBuffer.position() + i - start);
+        return i;
     }
 
     private static boolean isSurrogate(int ch) {
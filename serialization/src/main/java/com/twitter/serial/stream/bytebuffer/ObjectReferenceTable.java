@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.bytebuffer;
+
+import com.twitter.serial.serializer.Serializer;
+import com.twitter.serial.util.SerializationException;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The positions of the objects written with object references enabled, see
+ * {@link ByteBufferSerializerOutput#setObjectReferences(boolean)}. Objects are identified by instance, together with
+ * their serializer so that a reference is always read back by the serializer that wrote the object.
+ */
+final class ObjectReferenceTable {
+    @NotNull private final Map<Key, Integer> mPositions = new HashMap<>();
+    @NotNull private final Key mLookupKey = new Key();
+
+    /**
+     * Looks up an object about to be written at the given position.
+     *
+     * @return the position where the object was written, or -1 if it must be written, in which case
+     * {@link #end(Object, Serializer)} must be called once it is written.
+     */
+    int start(@NotNull Object object, @NotNull Serializer<?> serializer, int position)
+            throws SerializationException {
+        final Integer previousPosition = mPositions.get(mLookupKey.set(object, serializer));
+        mLookupKey.set(null, null);
+        if (previousPosition == null) {
+            // The position is stored as a negative value until the object is written.
+            mPositions.put(new Key().set(object, serializer), -position - 1);
+            return -1;
+        }
+        if (previousPosition < 0) {
+            throw new SerializationException("Cyclic reference to an instance of " + object.getClass().getName() +
+                    ", which is being written.");
+        }
+        return previousPosition;
+    }
+
+    void end(@NotNull Object object, @NotNull Serializer<?> serializer) {
+        final Key key = mLookupKey.set(object, serializer);
+        final Integer position = mPositions.get(key);
+        if (position != null && position < 0) {
+            mPositions.put(key, -position - 1);
+        }
+        mLookupKey.set(null, null);
+    }
+
+    void clear() {
+        mPositions.clear();
+    }
+
+    private static final class Key {
+        @Nullable private Object mObject;
+        @Nullable private Serializer<?> mSerializer;
+
+        @NotNull
+        Key set(@Nullable Object object, @Nullable Serializer<?> serializer) {
+            mObject = object;
+            mSerializer = serializer;
+            return this;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            return o instanceof Key && ((Key) o).mObject == mObject && ((Key) o).mSerializer == mSerializer;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(mObject) + System.identityHashCode(mSerializer);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.bytebuffer;
+
+import com.twitter.serial.serializer.Serializer;
+import com.twitter.serial.stream.SerializerOutput;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes the number of bytes that {@link ByteBufferSerializerOutput} would write for the same values, without
+ * writing anything. Used to allocate an array of the exact size before serializing into it.
+ */
+public final class SizeCalculatingSerializerOutput extends SerializerOutput<SizeCalculatingSerializerOutput> {
+    private final boolean mVarIntEncoding;
+    private int mSize;
+    @Nullable private Map<String, Integer> mStringTable;
+    private boolean mObjectLengths;
+    @Nullable private ObjectReferenceTable mObjectReferences;
+
+    public SizeCalculatingSerializerOutput() {
+        this(false);
+    }
+
+    /**
+     * @param varIntEncoding whether the sizes match an output using
+     * {@link ByteBufferSerializerOutput#setVarIntEncoding(boolean)}.
+     */
+    public SizeCalculatingSerializerOutput(boolean varIntEncoding) {
+        mVarIntEncoding = varIntEncoding;
+    }
+
+    /**
+     * Makes the sizes match an output using {@link ByteBufferSerializerOutput#setStringTable(boolean)}.
+     */
+    @NotNull
+    public SizeCalculatingSerializerOutput setStringTable(boolean stringTable) {
+        if (!stringTable) {
+            mStringTable = null;
+        } else if (mStringTable == null) {
+            mStringTable = new HashMap<>();
+        }
+        return this;
+    }
+
+    /**
+     * Makes the sizes match an output using {@link ByteBufferSerializerOutput#setObjectLengths(boolean)}.
+     */
+    @NotNull
+    public SizeCalculatingSerializerOutput setObjectLengths(boolean objectLengths) {
+        mObjectLengths = objectLengths;
+        return this;
+    }
+
+    /**
+     * Makes the sizes match an output using {@link ByteBufferSerializerOutput#setObjectReferences(boolean)}.
+     */
+    @NotNull
+    public SizeCalculatingSerializerOutput setObjectReferences(boolean objectReferences) {
+        if (!objectReferences) {
+            mObjectReferences = null;
+        } else if (mObjectReferences == null) {
+            mObjectReferences = new ObjectReferenceTable();
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of bytes written so far.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    @Override
+    public boolean isPeekSupported() {
+        return true;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeByte(byte val) {
+        mSize += val == 0 ? ByteBufferSerializerDefs.SIZE_BYTE : 2 * ByteBufferSerializerDefs.SIZE_BYTE;
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeBoolean(boolean val) {
+        mSize += ByteBufferSerializerDefs.SIZE_BYTE;
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeInt(int val) {
+        if (mVarIntEncoding && val < 0 && val >= ByteBufferSerializerDefs.MIN_VARINT_INT) {
+            mSize += getVarIntValueSize(val);
+        } else {
+            mSize += getIntValueSize(val);
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeLong(long val) {
+        if (mVarIntEncoding && val < 0 && val >= ByteBufferSerializerDefs.MIN_VARINT_LONG) {
+            mSize += getVarIntValueSize(val);
+        } else {
+            mSize += getLongValueSize(val);
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeFloat(float val) {
+        mSize += ByteBufferSerializerDefs.SIZE_BYTE + (val == 0f ? 0 : ByteBufferSerializerDefs.SIZE_FLOAT);
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeDouble(double val) {
+        mSize += ByteBufferSerializerDefs.SIZE_BYTE + (val == 0d ? 0 : ByteBufferSerializerDefs.SIZE_DOUBLE);
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeString(@Nullable String val) {
+        if (val == null || val.isEmpty()) {
+            mSize += ByteBufferSerializerDefs.SIZE_BYTE;
+        } else if (mStringTable != null) {
+            final Integer index = mStringTable.get(val);
+            if (index != null) {
+                mSize += getIntValueSize(index);
+            } else {
+                mStringTable.put(val, mStringTable.size());
+                mSize += getIntValueSize(val.length()) + getEncodedLength(val, 0);
+            }
+        } else {
+            mSize += getIntValueSize(val.length()) + getEncodedLength(val, 0);
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeByteArray(@Nullable byte[] val) {
+        if (val == null || val.length == 0) {
+            mSize += ByteBufferSerializerDefs.SIZE_BYTE;
+        } else {
+            mSize += getIntValueSize(val.length) + val.length;
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeIntArray(@Nullable int[] val) {
+        mSize += val == null ? ByteBufferSerializerDefs.SIZE_BYTE :
+                getIntValueSize(val.length) + val.length * ByteBufferSerializerDefs.SIZE_INT;
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeLongArray(@Nullable long[] val) {
+        mSize += val == null ? ByteBufferSerializerDefs.SIZE_BYTE :
+                getIntValueSize(val.length) + val.length * ByteBufferSerializerDefs.SIZE_LONG;
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeFloatArray(@Nullable float[] val) {
+        mSize += val == null ? ByteBufferSerializerDefs.SIZE_BYTE :
+                getIntValueSize(val.length) + val.length * ByteBufferSerializerDefs.SIZE_FLOAT;
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeDoubleArray(@Nullable double[] val) {
+        mSize += val == null ? ByteBufferSerializerDefs.SIZE_BYTE :
+                getIntValueSize(val.length) + val.length * ByteBufferSerializerDefs.SIZE_DOUBLE;
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeNull() {
+        mSize += ByteBufferSerializerDefs.SIZE_BYTE;
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeObjectStart(int versionNumber) {
+        if (versionNumber < 0) {
+            throw new IllegalArgumentException("The version number is negative: " + versionNumber + ".");
+        }
+        mSize += getIntValueSize(versionNumber) + (mObjectLengths ? ByteBufferSerializerDefs.SIZE_INT : 0);
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeObjectStart(int versionNumber, @NotNull String className) {
+        if (versionNumber < 0) {
+            throw new IllegalArgumentException("The version number is negative: " + versionNumber + ".");
+        }
+        mSize += getIntValueSize(versionNumber);
+        writeString(className);
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public SizeCalculatingSerializerOutput writeObjectEnd() {
+        mSize += ByteBufferSerializerDefs.SIZE_BYTE;
+        return this;
+    }
+
+    @Override
+    public boolean writeObjectReference(@NotNull Object object, @NotNull Serializer<?> serializer)
+            throws IOException {
+        if (mObjectReferences == null) {
+            return false;
+        }
+        final int position = mObjectReferences.start(object, serializer, mSize);
+        if (position < 0) {
+            return false;
+        }
+        mSize += getIntValueSize(position);
+        return true;
+    }
+
+    @Override
+    public void endObjectReference(@NotNull Object object, @NotNull Serializer<?> serializer) {
+        if (mObjectReferences != null) {
+            mObjectReferences.end(object, serializer);
+        }
+    }
+
+    /**
+     * @return the size of the header and of the compacted value written by
+     * {@link ByteBufferSerializerOutput#writeIntHeader(byte, int)}.
+     */
+    static int getIntValueSize(int val) {
+        if (val == 0) {
+            return ByteBufferSerializerDefs.SIZE_BYTE;
+        } else if ((val & 0xFFFFFF00) == 0) {
+            return 2 * ByteBufferSerializerDefs.SIZE_BYTE;
+        } else if ((val & 0xFFFF0000) == 0) {
+            return ByteBufferSerializerDefs.SIZE_BYTE + ByteBufferSerializerDefs.SIZE_SHORT;
+        }
+        return ByteBufferSerializerDefs.SIZE_BYTE + ByteBufferSerializerDefs.SIZE_INT;
+    }
+
+    static int getLongValueSize(long val) {
+        if ((val & 0xFFFFFFFF00000000L) == 0) {
+            return getIntValueSize((int) val);
+        }
+        return ByteBufferSerializerDefs.SIZE_BYTE + ByteBufferSerializerDefs.SIZE_LONG;
+    }
+
+    private static int getVarIntValueSize(long val) {
+        return ByteBufferSerializerDefs.SIZE_BYTE +
+                ByteBufferSerializerDefs.getVarIntSize(ByteBufferSerializerDefs.encodeZigZag(val));
+    }
+
+    /**
+     * @return the number of bytes of the string encoded in UTF-8 from the given index, with invalid surrogates
+     * replaced by '?'.
+     */
+    static int getEncodedLength(@NotNull String string, int start) {
+        final int length = string.length();
+        int encodedLength = length - start;
+        for (int i = start; i < length; ++i) {
+            final char ch = string.charAt(i);
+            if (ch >= 0x80) {
+                if (ch < 0x800) {
+                    encodedLength += 1;
+                } else if (ch >= Character.MIN_SURROGATE && ch <= Character.MAX_SURROGATE) {
+                    if (Character.isHighSurrogate(ch) && i + 1 < length &&
+                            Character.isLowSurrogate(string.charAt(i + 1))) {
+                        // Both chars of a valid surrogate pair are encoded in 4 bytes.
+                        encodedLength += 2;
+                        ++i;
+                    }
+                } else {
+                    encodedLength += 2;
+                }
+            }
+        }
+        return encodedLength;
+    }
+}
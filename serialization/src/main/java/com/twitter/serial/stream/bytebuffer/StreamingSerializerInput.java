@@ -0,0 +1,499 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.bytebuffer;
+
+import com.twitter.serial.stream.SerializerDefs;
+import com.twitter.serial.stream.SerializerInput;
+import com.twitter.serial.util.DebugClassDescriptor;
+import com.twitter.serial.util.SerializationException;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads data serialized by {@link ByteBufferSerializerOutput} or {@link StreamingSerializerOutput} incrementally from
+ * an {@link InputStream} or a {@link ReadableByteChannel}. Before each read, the header of the next value is
+ * inspected and the internal buffer is refilled until the whole value is available, so deserialization can start
+ * before all the data has been received. The buffer only grows beyond the chunk size to hold a single large string
+ * or primitive array; large byte arrays are read directly from the source.
+ */
+public class StreamingSerializerInput extends SerializerInput implements Closeable {
+    public static final int DEFAULT_CHUNK_SIZE = StreamingSerializerOutput.DEFAULT_CHUNK_SIZE;
+
+    /**
+     * A varint takes at most 10 bytes for a long, 7 bits per byte.
+     */
+    private static final int MAX_VARINT_SIZE = 10;
+
+    private static final int MIN_CHUNK_SIZE = 2 * (ByteBufferSerializerDefs.SIZE_BYTE +
+            ByteBufferSerializerDefs.SIZE_LONG);
+
+    @Nullable private final InputStream mInputStream;
+    @Nullable private final ReadableByteChannel mChannel;
+    private final int mChunkSize;
+    @NotNull private ByteBuffer mByteBuffer;
+    @NotNull private ByteBufferSerializerInput mInput;
+    private long mConsumedBytes;
+    private boolean mEndOfStream;
+
+    public StreamingSerializerInput(@NotNull InputStream inputStream) {
+        this(inputStream, DEFAULT_CHUNK_SIZE);
+    }
+
+    public StreamingSerializerInput(@NotNull InputStream inputStream, int chunkSize) {
+        this(inputStream, null, chunkSize);
+    }
+
+    public StreamingSerializerInput(@NotNull ReadableByteChannel channel) {
+        this(channel, DEFAULT_CHUNK_SIZE);
+    }
+
+    public StreamingSerializerInput(@NotNull ReadableByteChannel channel, int chunkSize) {
+        this(null, channel, chunkSize);
+    }
+
+    private StreamingSerializerInput(@Nullable InputStream inputStream, @Nullable ReadableByteChannel channel,
+            int chunkSize) {
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("The chunk size must be at least " + MIN_CHUNK_SIZE + " bytes.");
+        }
+        mInputStream = inputStream;
+        mChannel = channel;
+        mChunkSize = chunkSize;
+        mByteBuffer = ByteBuffer.wrap(new byte[chunkSize]);
+        mByteBuffer.limit(0);
+        mInput = new ByteBufferSerializerInput(mByteBuffer, true);
+    }
+
+    @Override
+    public boolean isPeekSupported() {
+        return true;
+    }
+
+    /**
+     * @return the number of bytes consumed from the source so far.
+     */
+    public long getLongPosition() {
+        return mConsumedBytes + mByteBuffer.position();
+    }
+
+    /**
+     * @return the number of bytes consumed from the source so far.
+     * @throws IllegalStateException if more than {@link Integer#MAX_VALUE} bytes were consumed, in which case the
+     * position must be read with {@link #getLongPosition()}.
+     */
+    @Override
+    public int getPosition() {
+        final long position = getLongPosition();
+        if (position > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The position " + position + " doesn't fit in an int, use " +
+                    "getLongPosition() instead.");
+        }
+        return (int) position;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        bufferNextValue();
+        return mInput.readByte();
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        bufferNextValue();
+        return mInput.readBoolean();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        bufferNextValue();
+        return mInput.readInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        bufferNextValue();
+        return mInput.readLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        bufferNextValue();
+        return mInput.readFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        bufferNextValue();
+        return mInput.readDouble();
+    }
+
+    @Override
+    @Nullable
+    public String readString() throws IOException {
+        bufferNextValue();
+        return mInput.readString();
+    }
+
+    @Override
+    @Nullable
+    public byte[] readByteArray() throws IOException {
+        final long size = getValueSize(0);
+        if (size <= mChunkSize || peekType() != SerializerDefs.TYPE_BYTE_ARRAY) {
+            fill(size);
+            return mInput.readByteArray();
+        }
+
+        // Too large for the buffer: copy the part that is already buffered and read the rest from the source.
+        final int position = mByteBuffer.position();
+        final byte subtype = ByteBufferSerializerDefs.getHeaderSubtype(mByteBuffer.get(position));
+        final int headerSize = ByteBufferSerializerDefs.SIZE_BYTE + getIntValueSize(subtype);
+        final byte[] data = new byte[(int) (size - headerSize)];
+        mByteBuffer.position(position + headerSize);
+        final int bufferedLength = Math.min(mByteBuffer.remaining(), data.length);
+        mByteBuffer.get(data, 0, bufferedLength);
+        readFully(data, bufferedLength, data.length - bufferedLength);
+        return data;
+    }
+
+    @Override
+    @Nullable
+    public int[] readIntArray() throws IOException {
+        bufferNextValue();
+        return mInput.readIntArray();
+    }
+
+    @Override
+    @Nullable
+    public long[] readLongArray() throws IOException {
+        bufferNextValue();
+        return mInput.readLongArray();
+    }
+
+    @Override
+    @Nullable
+    public float[] readFloatArray() throws IOException {
+        bufferNextValue();
+        return mInput.readFloatArray();
+    }
+
+    @Override
+    @Nullable
+    public double[] readDoubleArray() throws IOException {
+        bufferNextValue();
+        return mInput.readDoubleArray();
+    }
+
+    @Override
+    public int readObjectStart() throws IOException {
+        bufferNextValue();
+        return mInput.readObjectStart();
+    }
+
+    @Override
+    @NotNull
+    public DebugClassDescriptor readDebugObjectStart() throws IOException {
+        bufferNextValue();
+        return mInput.readDebugObjectStart();
+    }
+
+    @Override
+    public void readObjectEnd() throws IOException {
+        bufferNextValue();
+        mInput.readObjectEnd();
+    }
+
+    @Override
+    public void readNull() throws IOException {
+        bufferNextValue();
+        mInput.readNull();
+    }
+
+    @Override
+    public byte peekType() {
+        try {
+            fill(ByteBufferSerializerDefs.SIZE_BYTE);
+        } catch (IOException ignore) {
+            // The error is reported by the following read.
+        }
+        return mInput.peekType();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mInputStream != null) {
+            mInputStream.close();
+        } else if (mChannel != null) {
+            mChannel.close();
+        }
+    }
+
+    /**
+     * Buffers the next value. If the data ends before the value is complete, the value is left partially buffered
+     * and reading it throws an {@link EOFException}.
+     */
+    private void bufferNextValue() throws IOException {
+        fill(getValueSize(0));
+    }
+
+    /**
+     * Computes the encoded size of the value starting at the given offset from the current position, based on its
+     * header. The bytes of a UTF-8 string are buffered to find its size, since the data only records the number
+     * of chars.
+     */
+    private long getValueSize(int offset) throws IOException {
+        final int headerEnd = offset + ByteBufferSerializerDefs.SIZE_BYTE;
+        if (!fill(headerEnd)) {
+            return headerEnd;
+        }
+        final byte header = mByteBuffer.get(mByteBuffer.position() + offset);
+        final byte type = ByteBufferSerializerDefs.getHeaderType(header);
+        final byte subtype = ByteBufferSerializerDefs.getHeaderSubtype(header);
+        switch (type) {
+            case SerializerDefs.TYPE_BYTE: {
+                return subtype == ByteBufferSerializerDefs.SUBTYPE_DEFAULT ?
+                        headerEnd : headerEnd + ByteBufferSerializerDefs.SIZE_BYTE;
+            }
+            case SerializerDefs.TYPE_FLOAT: {
+                return subtype == ByteBufferSerializerDefs.SUBTYPE_DEFAULT ?
+                        headerEnd : headerEnd + ByteBufferSerializerDefs.SIZE_FLOAT;
+            }
+            case SerializerDefs.TYPE_DOUBLE: {
+                return subtype == ByteBufferSerializerDefs.SUBTYPE_DEFAULT ?
+                        headerEnd : headerEnd + ByteBufferSerializerDefs.SIZE_DOUBLE;
+            }
+            case SerializerDefs.TYPE_INT:
+            case SerializerDefs.TYPE_LONG:
+            case SerializerDefs.TYPE_STRING_REF:
+            case SerializerDefs.TYPE_OBJECT_REF:
+            case SerializerDefs.TYPE_START_OBJECT: {
+                return subtype == ByteBufferSerializerDefs.SUBTYPE_VARINT ?
+                        getVarIntEnd(headerEnd) : headerEnd + getIntValueSize(subtype);
+            }
+            case SerializerDefs.TYPE_START_OBJECT_SIZED: {
+                // The header is followed by the length of the object.
+                return headerEnd + getIntValueSize(subtype) + ByteBufferSerializerDefs.SIZE_INT;
+            }
+            case SerializerDefs.TYPE_START_OBJECT_DEBUG: {
+                // The header is followed by the class name.
+                return getValueSize(headerEnd + getIntValueSize(subtype));
+            }
+            case SerializerDefs.TYPE_STRING_ASCII:
+            case SerializerDefs.TYPE_BYTE_ARRAY: {
+                final int lengthEnd = headerEnd + getIntValueSize(subtype);
+                return lengthEnd + readLength(headerEnd, subtype);
+            }
+            case SerializerDefs.TYPE_STRING_UTF8: {
+                final int lengthEnd = headerEnd + getIntValueSize(subtype);
+                return getUtf8End(lengthEnd, readLength(headerEnd, subtype));
+            }
+            case SerializerDefs.TYPE_INT_ARRAY:
+            case SerializerDefs.TYPE_FLOAT_ARRAY: {
+                final int lengthEnd = headerEnd + getIntValueSize(subtype);
+                return lengthEnd + (long) ByteBufferSerializerDefs.SIZE_INT * readLength(headerEnd, subtype);
+            }
+            case SerializerDefs.TYPE_LONG_ARRAY:
+            case SerializerDefs.TYPE_DOUBLE_ARRAY: {
+                final int lengthEnd = headerEnd + getIntValueSize(subtype);
+                return lengthEnd + (long) ByteBufferSerializerDefs.SIZE_LONG * readLength(headerEnd, subtype);
+            }
+            default: {
+                return headerEnd;
+            }
+        }
+    }
+
+    private static int getIntValueSize(byte subtype) {
+        switch (subtype) {
+            case ByteBufferSerializerDefs.SUBTYPE_BYTE: {
+                return ByteBufferSerializerDefs.SIZE_BYTE;
+            }
+            case ByteBufferSerializerDefs.SUBTYPE_SHORT: {
+                return ByteBufferSerializerDefs.SIZE_SHORT;
+            }
+            case ByteBufferSerializerDefs.SUBTYPE_INT: {
+                return ByteBufferSerializerDefs.SIZE_INT;
+            }
+            case ByteBufferSerializerDefs.SUBTYPE_LONG: {
+                return ByteBufferSerializerDefs.SIZE_LONG;
+            }
+            default: {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Finds the end of the varint starting at the given offset from the current position, buffering its bytes until
+     * the last one, which doesn't have the continuation bit.
+     */
+    private long getVarIntEnd(int offset) throws IOException {
+        int end = offset;
+        while (end - offset < MAX_VARINT_SIZE) {
+            if (!fill(end + 1)) {
+                return end + 1;
+            }
+            if ((mByteBuffer.get(mByteBuffer.position() + end++) & 0x80) == 0) {
+                break;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Finds the end of the given number of UTF-8 encoded chars starting at the given offset from the current
+     * position. Each remaining char takes at least one byte, so the bytes are buffered in steps that never go past
+     * the end of the string, and reading doesn't wait for data that follows the string.
+     */
+    private long getUtf8End(int offset, int length) throws IOException {
+        long end = offset;
+        int remainingChars = length;
+        while (remainingChars > 0) {
+            if (!fill(end + remainingChars)) {
+                return end + remainingChars;
+            }
+            final int position = mByteBuffer.position();
+            final int limit = mByteBuffer.limit();
+            while (remainingChars > 0 && position + end < limit) {
+                final int b = mByteBuffer.get((int) (position + end));
+                if ((b & 0xE0) == 0xC0) {
+                    end += 2;
+                    --remainingChars;
+                } else if ((b & 0xF0) == 0xE0) {
+                    end += 3;
+                    --remainingChars;
+                } else if ((b & 0xF8) == 0xF0) {
+                    end += 4;
+                    remainingChars -= 2;
+                } else {
+                    // ASCII, or a malformed byte that is reported when the string is decoded.
+                    ++end;
+                    --remainingChars;
+                }
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Reads the non-negative length stored at the given offset from the current position, or returns 0 if it's
+     * not available. Invalid lengths are reported when the value itself is read.
+     */
+    private int readLength(int offset, byte subtype) throws IOException {
+        if (!fill(offset + getIntValueSize(subtype))) {
+            return 0;
+        }
+        final int index = mByteBuffer.position() + offset;
+        final int length;
+        switch (subtype) {
+            case ByteBufferSerializerDefs.SUBTYPE_BYTE: {
+                length = mByteBuffer.get(index) & 0xFF;
+                break;
+            }
+            case ByteBufferSerializerDefs.SUBTYPE_SHORT: {
+                length = mByteBuffer.getShort(index) & 0xFFFF;
+                break;
+            }
+            case ByteBufferSerializerDefs.SUBTYPE_INT: {
+                length = mByteBuffer.getInt(index);
+                break;
+            }
+            default: {
+                length = 0;
+                break;
+            }
+        }
+        return Math.max(length, 0);
+    }
+
+    /**
+     * Makes sure that at least the given number of bytes are buffered, refilling the buffer from the source.
+     *
+     * @return false if the data ended before enough bytes could be buffered.
+     */
+    private boolean fill(long size) throws IOException {
+        if (mByteBuffer.remaining() >= size) {
+            return true;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new SerializationException("Value too large to be buffered: " + size + " bytes.");
+        }
+        final int bufferSize = (int) size;
+        mConsumedBytes += mByteBuffer.position();
+        mByteBuffer.compact();
+        if (mByteBuffer.capacity() > mChunkSize && bufferSize <= mChunkSize) {
+            // Shrink the buffer back to the chunk size once a large value has been consumed.
+            resizeBuffer(mChunkSize);
+        }
+        while (mByteBuffer.position() < bufferSize && !mEndOfStream) {
+            if (!mByteBuffer.hasRemaining()) {
+                // Grow progressively, so that a corrupted length can't trigger a huge allocation.
+                resizeBuffer((int) Math.min(bufferSize, 2L * mByteBuffer.capacity()));
+            }
+            final int count;
+            if (mInputStream != null) {
+                count = mInputStream.read(mByteBuffer.array(), mByteBuffer.arrayOffset() + mByteBuffer.position(),
+                        mByteBuffer.remaining());
+                if (count > 0) {
+                    mByteBuffer.position(mByteBuffer.position() + count);
+                }
+            } else {
+                count = mChannel != null ? mChannel.read(mByteBuffer) : -1;
+            }
+            mEndOfStream = count < 0;
+        }
+        mByteBuffer.flip();
+        return mByteBuffer.remaining() >= bufferSize;
+    }
+
+    /**
+     * Replaces the buffer, which must be in write mode, by one with the given capacity.
+     */
+    private void resizeBuffer(int capacity) {
+        final ByteBuffer newBuffer = ByteBuffer.wrap(new byte[capacity]);
+        newBuffer.put(mByteBuffer.array(), mByteBuffer.arrayOffset(), mByteBuffer.position());
+        mByteBuffer = newBuffer;
+        mInput = new ByteBufferSerializerInput(mByteBuffer, true);
+    }
+
+    private void readFully(@NotNull byte[] data, int offset, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        while (buffer.hasRemaining()) {
+            final int count;
+            if (mInputStream != null) {
+                count = mInputStream.read(data, buffer.position(), buffer.remaining());
+                if (count > 0) {
+                    buffer.position(buffer.position() + count);
+                }
+            } else {
+                count = mChannel != null ? mChannel.read(buffer) : -1;
+            }
+            if (count < 0) {
+                mEndOfStream = true;
+                throw new EOFException();
+            }
+        }
+        mConsumedBytes += length;
+    }
+}
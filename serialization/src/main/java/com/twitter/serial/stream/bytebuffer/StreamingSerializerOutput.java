@@ -0,0 +1,404 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.bytebuffer;
+
+import com.twitter.serial.stream.SerializerDefs;
+import com.twitter.serial.stream.SerializerOutput;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes the same format as {@link ByteBufferSerializerOutput}, but sends the serialized data to an
+ * {@link OutputStream} or a {@link WritableByteChannel} through a fixed size chunk instead of accumulating it in
+ * memory. Byte arrays that don't fit in the chunk are written directly to the destination, and large strings and
+ * primitive arrays are encoded into the chunk one part at a time, so that the memory used doesn't depend on the size
+ * of the values.
+ * <p>
+ * Call {@link #flush()} or {@link #close()} once the serialization is complete, otherwise the end of the data may
+ * still be buffered.
+ */
+public class StreamingSerializerOutput extends SerializerOutput<StreamingSerializerOutput>
+        implements Flushable, Closeable {
+    public static final int DEFAULT_CHUNK_SIZE = 8 * ByteBufferSerializerDefs.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Largest encoded size of a value that has a fixed size (a header followed by a long).
+     */
+    private static final int MAX_FIXED_VALUE_SIZE = ByteBufferSerializerDefs.SIZE_BYTE +
+            ByteBufferSerializerDefs.SIZE_LONG;
+
+    /**
+     * A UTF-8 encoded char takes at most 3 bytes; supplementary characters take 4 bytes for 2 chars.
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private static final int MIN_CHUNK_SIZE = 2 * MAX_FIXED_VALUE_SIZE;
+
+    @Nullable private final OutputStream mOutputStream;
+    @Nullable private final WritableByteChannel mChannel;
+    private final int mChunkSize;
+    private boolean mVarIntEncoding;
+    @NotNull private ByteBufferSerializerOutput mChunk;
+    private long mFlushedBytes;
+
+    public StreamingSerializerOutput(@NotNull OutputStream outputStream) {
+        this(outputStream, DEFAULT_CHUNK_SIZE);
+    }
+
+    public StreamingSerializerOutput(@NotNull OutputStream outputStream, int chunkSize) {
+        this(outputStream, null, chunkSize);
+    }
+
+    public StreamingSerializerOutput(@NotNull WritableByteChannel channel) {
+        this(channel, DEFAULT_CHUNK_SIZE);
+    }
+
+    public StreamingSerializerOutput(@NotNull WritableByteChannel channel, int chunkSize) {
+        this(null, channel, chunkSize);
+    }
+
+    private StreamingSerializerOutput(@Nullable OutputStream outputStream, @Nullable WritableByteChannel channel,
+            int chunkSize) {
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("The chunk size must be at least " + MIN_CHUNK_SIZE + " bytes.");
+        }
+        mOutputStream = outputStream;
+        mChannel = channel;
+        mChunkSize = chunkSize;
+        mChunk = new ByteBufferSerializerOutput(new byte[chunkSize]);
+    }
+
+    @Override
+    public boolean isPeekSupported() {
+        return true;
+    }
+
+    /**
+     * @see ByteBufferSerializerOutput#setVarIntEncoding(boolean)
+     */
+    @NotNull
+    public StreamingSerializerOutput setVarIntEncoding(boolean varIntEncoding) {
+        mVarIntEncoding = varIntEncoding;
+        mChunk.setVarIntEncoding(varIntEncoding);
+        return this;
+    }
+
+    /**
+     * @return the total number of bytes serialized so far, including the ones that are still buffered.
+     */
+    public long getPosition() {
+        return mFlushedBytes + mChunk.getPosition();
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeByte(byte val) throws IOException {
+        reserve(MAX_FIXED_VALUE_SIZE);
+        mChunk.writeByte(val);
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeBoolean(boolean val) throws IOException {
+        reserve(MAX_FIXED_VALUE_SIZE);
+        mChunk.writeBoolean(val);
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeInt(int val) throws IOException {
+        reserve(MAX_FIXED_VALUE_SIZE);
+        mChunk.writeInt(val);
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeLong(long val) throws IOException {
+        reserve(MAX_FIXED_VALUE_SIZE);
+        mChunk.writeLong(val);
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeFloat(float val) throws IOException {
+        reserve(MAX_FIXED_VALUE_SIZE);
+        mChunk.writeFloat(val);
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeDouble(double val) throws IOException {
+        reserve(MAX_FIXED_VALUE_SIZE);
+        mChunk.writeDouble(val);
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeString(@Nullable String val) throws IOException {
+        if (val == null || val.length() <= (mChunkSize - MAX_FIXED_VALUE_SIZE) / MAX_BYTES_PER_CHAR) {
+            reserve(getMaxStringSize(val));
+            mChunk.writeString(val);
+        } else {
+            // Too large for the chunk: write the header, then encode the string in ranges that fit in the chunk.
+            final int length = val.length();
+            reserve(MAX_FIXED_VALUE_SIZE);
+            mChunk.writeIntHeader(isAscii(val) ? SerializerDefs.TYPE_STRING_ASCII : SerializerDefs.TYPE_STRING_UTF8,
+                    length);
+            final int maxRangeLength = mChunkSize / MAX_BYTES_PER_CHAR;
+            int start = 0;
+            while (start < length) {
+                int end = Math.min(length, start + maxRangeLength);
+                if (end < length && Character.isHighSurrogate(val.charAt(end - 1))) {
+                    // Keep the surrogate pair in the same range.
+                    --end;
+                }
+                reserve(MAX_BYTES_PER_CHAR * (end - start));
+                mChunk.encodeChars(val, start, end);
+                start = end;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeByteArray(@Nullable byte[] val) throws IOException {
+        if (val == null || val.length <= mChunkSize - MAX_FIXED_VALUE_SIZE) {
+            reserve(MAX_FIXED_VALUE_SIZE + (val != null ? val.length : 0));
+            mChunk.writeByteArray(val);
+        } else {
+            // Too large for the chunk: write the header, then the content directly to the destination.
+            reserve(MAX_FIXED_VALUE_SIZE);
+            mChunk.writeIntHeader(SerializerDefs.TYPE_BYTE_ARRAY, val.length);
+            flushChunk();
+            write(ByteBuffer.wrap(val));
+            mFlushedBytes += val.length;
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeIntArray(@Nullable int[] val) throws IOException {
+        if (val == null || fitsInChunk(val.length, ByteBufferSerializerDefs.SIZE_INT)) {
+            reserve(MAX_FIXED_VALUE_SIZE + (val != null ? val.length * ByteBufferSerializerDefs.SIZE_INT : 0));
+            mChunk.writeIntArray(val);
+        } else {
+            writeArrayElements(SerializerDefs.TYPE_INT_ARRAY, val, val.length, ByteBufferSerializerDefs.SIZE_INT);
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeLongArray(@Nullable long[] val) throws IOException {
+        if (val == null || fitsInChunk(val.length, ByteBufferSerializerDefs.SIZE_LONG)) {
+            reserve(MAX_FIXED_VALUE_SIZE + (val != null ? val.length * ByteBufferSerializerDefs.SIZE_LONG : 0));
+            mChunk.writeLongArray(val);
+        } else {
+            writeArrayElements(SerializerDefs.TYPE_LONG_ARRAY, val, val.length, ByteBufferSerializerDefs.SIZE_LONG);
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeFloatArray(@Nullable float[] val) throws IOException {
+        if (val == null || fitsInChunk(val.length, ByteBufferSerializerDefs.SIZE_FLOAT)) {
+            reserve(MAX_FIXED_VALUE_SIZE + (val != null ? val.length * ByteBufferSerializerDefs.SIZE_FLOAT : 0));
+            mChunk.writeFloatArray(val);
+        } else {
+            writeArrayElements(SerializerDefs.TYPE_FLOAT_ARRAY, val, val.length, ByteBufferSerializerDefs.SIZE_FLOAT);
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeDoubleArray(@Nullable double[] val) throws IOException {
+        if (val == null || fitsInChunk(val.length, ByteBufferSerializerDefs.SIZE_DOUBLE)) {
+            reserve(MAX_FIXED_VALUE_SIZE + (val != null ? val.length * ByteBufferSerializerDefs.SIZE_DOUBLE : 0));
+            mChunk.writeDoubleArray(val);
+        } else {
+            writeArrayElements(SerializerDefs.TYPE_DOUBLE_ARRAY, val, val.length, ByteBufferSerializerDefs.SIZE_DOUBLE);
+        }
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeNull() throws IOException {
+        reserve(MAX_FIXED_VALUE_SIZE);
+        mChunk.writeNull();
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeObjectStart(int versionNumber) throws IOException {
+        reserve(MAX_FIXED_VALUE_SIZE);
+        mChunk.writeObjectStart(versionNumber);
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeObjectStart(int versionNumber, @NotNull String className)
+            throws IOException {
+        reserve(MAX_FIXED_VALUE_SIZE + getMaxStringSize(className));
+        mChunk.writeObjectStart(versionNumber, className);
+        shrinkChunk();
+        return this;
+    }
+
+    @Override
+    @NotNull
+    public StreamingSerializerOutput writeObjectEnd() throws IOException {
+        reserve(MAX_FIXED_VALUE_SIZE);
+        mChunk.writeObjectEnd();
+        return this;
+    }
+
+    /**
+     * Writes the buffered data to the destination, and flushes the destination if it's an {@link OutputStream}.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushChunk();
+        if (mOutputStream != null) {
+            mOutputStream.flush();
+        }
+    }
+
+    /**
+     * Flushes the buffered data and closes the destination.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushChunk();
+        } finally {
+            if (mOutputStream != null) {
+                mOutputStream.close();
+            } else if (mChannel != null) {
+                mChannel.close();
+            }
+        }
+    }
+
+    private static int getMaxStringSize(@Nullable String val) {
+        return MAX_FIXED_VALUE_SIZE + (val != null ? MAX_BYTES_PER_CHAR * val.length() : 0);
+    }
+
+    private static boolean isAscii(@NotNull String val) {
+        for (int i = 0; i < val.length(); i++) {
+            if (val.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean fitsInChunk(int length, int elementSize) {
+        return MAX_FIXED_VALUE_SIZE + (long) length * elementSize <= mChunkSize;
+    }
+
+    /**
+     * Writes the header of a primitive array that doesn't fit in the chunk, and then its elements through views of
+     * the chunk, flushing it between the ranges of elements.
+     */
+    private void writeArrayElements(byte type, @NotNull Object array, int length, int elementSize)
+            throws IOException {
+        reserve(MAX_FIXED_VALUE_SIZE);
+        mChunk.writeIntHeader(type, length);
+        final int maxRangeLength = mChunkSize / elementSize;
+        int start = 0;
+        while (start < length) {
+            final int count = Math.min(maxRangeLength, length - start);
+            reserve(count * elementSize);
+            final ByteBuffer buffer = mChunk.getByteBuffer();
+            if (array instanceof int[]) {
+                buffer.asIntBuffer().put((int[]) array, start, count);
+            } else if (array instanceof long[]) {
+                buffer.asLongBuffer().put((long[]) array, start, count);
+            } else if (array instanceof float[]) {
+                buffer.asFloatBuffer().put((float[]) array, start, count);
+            } else {
+                buffer.asDoubleBuffer().put((double[]) array, start, count);
+            }
+            buffer.position(buffer.position() + count * elementSize);
+            start += count;
+        }
+    }
+
+    /**
+     * Flushes the chunk if it doesn't have room for the given number of bytes.
+     */
+    private void reserve(int size) throws IOException {
+        if (mChunk.getBufferCapacity() - mChunk.getPosition() < size) {
+            flushChunk();
+        }
+    }
+
+    /**
+     * Replaces the chunk by one of the configured size if it had to grow to fit a large class name.
+     */
+    private void shrinkChunk() throws IOException {
+        if (mChunk.getBufferCapacity() > mChunkSize) {
+            flushChunk();
+            mChunk = new ByteBufferSerializerOutput(new byte[mChunkSize]).setVarIntEncoding(mVarIntEncoding);
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        final int length = mChunk.getPosition();
+        if (length > 0) {
+            final ByteBuffer buffer = mChunk.getByteBuffer();
+            buffer.flip();
+            write(buffer);
+            // Restore the limit set by flip(), otherwise the next writes would grow the chunk.
+            buffer.limit(buffer.capacity());
+            mChunk.clear();
+            mFlushedBytes += length;
+        }
+    }
+
+    private void write(@NotNull ByteBuffer buffer) throws IOException {
+        if (mOutputStream != null) {
+            mOutputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        } else if (mChannel != null) {
+            while (buffer.hasRemaining()) {
+                mChannel.write(buffer);
+            }
+        }
+    }
+}
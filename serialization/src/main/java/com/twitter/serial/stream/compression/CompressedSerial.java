@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.compression;
+
+import com.twitter.serial.serializer.Serializer;
+import com.twitter.serial.stream.Serial;
+import com.twitter.serial.util.InternalSerialUtils;
+import com.twitter.serial.util.SerializationException;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A {@link Serial} that compresses the data of another serial, eg. a
+ * {@link com.twitter.serial.stream.bytebuffer.ByteBufferSerial}, for disk caches.
+ * <p>
+ * The data starts with a frame header: a magic byte, the id of the codec, and for compressed data the uncompressed
+ * length as a big endian int. Values smaller than the threshold, or that don't get smaller, are stored uncompressed
+ * with codec id 0. Data that doesn't start with the magic byte is passed as is to the other serial, so that data
+ * written before enabling compression can still be read.
+ */
+public class CompressedSerial implements Serial {
+    /**
+     * Never the first byte of the data written by ByteBufferSerial, whose header types use less than 5 bits.
+     */
+    static final byte MAGIC = (byte) 0xFB;
+    static final byte ID_UNCOMPRESSED = 0;
+    static final int HEADER_SIZE = 2;
+    static final int COMPRESSED_HEADER_SIZE = HEADER_SIZE + 4;
+
+    public static final int DEFAULT_MIN_COMPRESSED_SIZE = 128;
+
+    @NotNull private static final Lz4Codec LZ4 = new Lz4Codec();
+    @NotNull private static final DeflateCodec DEFLATE = new DeflateCodec();
+
+    @NotNull private final Serial mSerial;
+    @NotNull private final CompressionCodec mCodec;
+    private final int mMinCompressedSize;
+
+    /**
+     * Compresses the data with {@link Lz4Codec}.
+     */
+    public CompressedSerial(@NotNull Serial serial) {
+        this(serial, LZ4, DEFAULT_MIN_COMPRESSED_SIZE);
+    }
+
+    /**
+     * @param codec the codec used to compress the data. The data compressed by the built-in codecs can always be
+     * read, whichever codec is used.
+     * @param minCompressedSize the size under which the data is not compressed.
+     */
+    public CompressedSerial(@NotNull Serial serial, @NotNull CompressionCodec codec, int minCompressedSize) {
+        if (codec.getId() <= ID_UNCOMPRESSED) {
+            throw new IllegalArgumentException("Invalid codec id: " + codec.getId() + ".");
+        }
+        mSerial = serial;
+        mCodec = codec;
+        mMinCompressedSize = minCompressedSize;
+    }
+
+    @Override
+    @NotNull
+    public <T> byte[] toByteArray(@Nullable T value, @NotNull Serializer<T> serializer) throws IOException {
+        final byte[] bytes = mSerial.toByteArray(value, serializer);
+        if (bytes.length == 0) {
+            return bytes;
+        }
+        if (bytes.length >= mMinCompressedSize) {
+            final byte[] compressed =
+                    new byte[COMPRESSED_HEADER_SIZE + mCodec.getMaxCompressedLength(bytes.length)];
+            final int compressedLength =
+                    mCodec.compress(bytes, 0, bytes.length, compressed, COMPRESSED_HEADER_SIZE);
+            if (compressedLength < bytes.length - (COMPRESSED_HEADER_SIZE - HEADER_SIZE)) {
+                compressed[0] = MAGIC;
+                compressed[1] = mCodec.getId();
+                writeInt(compressed, HEADER_SIZE, bytes.length);
+                return Arrays.copyOf(compressed, COMPRESSED_HEADER_SIZE + compressedLength);
+            }
+        }
+        final byte[] uncompressed = new byte[HEADER_SIZE + bytes.length];
+        uncompressed[0] = MAGIC;
+        uncompressed[1] = ID_UNCOMPRESSED;
+        System.arraycopy(bytes, 0, uncompressed, HEADER_SIZE, bytes.length);
+        return uncompressed;
+    }
+
+    @Override
+    @Nullable
+    @Contract("null, _ -> null")
+    public <T> T fromByteArray(@Nullable byte[] bytes, @NotNull Serializer<T> serializer)
+            throws IOException, ClassNotFoundException {
+        return mSerial.fromByteArray(bytes != null ? decompress(bytes) : null, serializer);
+    }
+
+    /**
+     * @return the data written by the other serial, extracted from the given frame.
+     */
+    @NotNull
+    public byte[] decompress(@NotNull byte[] bytes) throws IOException {
+        if (bytes.length < HEADER_SIZE || bytes[0] != MAGIC) {
+            return bytes;
+        }
+        final byte codecId = bytes[1];
+        if (codecId == ID_UNCOMPRESSED) {
+            return Arrays.copyOfRange(bytes, HEADER_SIZE, bytes.length);
+        }
+        final CompressionCodec codec = getCodec(codecId);
+        if (bytes.length < COMPRESSED_HEADER_SIZE) {
+            throw new SerializationException("Truncated compression frame header.");
+        }
+        final int length = readInt(bytes, HEADER_SIZE);
+        if (length < 0 || length > codec.getMaxUncompressedLength(bytes.length - COMPRESSED_HEADER_SIZE)) {
+            throw new SerializationException("Invalid uncompressed length: " + length + ".");
+        }
+        if (length == 0) {
+            return InternalSerialUtils.EMPTY_BYTE_ARRAY;
+        }
+        final byte[] uncompressed = new byte[length];
+        codec.decompress(bytes, COMPRESSED_HEADER_SIZE, bytes.length - COMPRESSED_HEADER_SIZE, uncompressed, 0,
+                length);
+        return uncompressed;
+    }
+
+    @NotNull
+    private CompressionCodec getCodec(byte id) throws SerializationException {
+        if (id == mCodec.getId()) {
+            return mCodec;
+        } else if (id == Lz4Codec.ID) {
+            return LZ4;
+        } else if (id == DeflateCodec.ID) {
+            return DEFLATE;
+        }
+        throw new SerializationException("Unknown compression codec: " + id + ".");
+    }
+
+    private static void writeInt(@NotNull byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(@NotNull byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) |
+                ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.compression;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * A block compression algorithm used by {@link CompressedSerial}.
+ */
+public interface CompressionCodec {
+    /**
+     * @return the id written in the frame header of the data compressed by this codec, between 1 and 127. The
+     * built-in codecs use {@link Lz4Codec#ID} and {@link DeflateCodec#ID}.
+     */
+    byte getId();
+
+    /**
+     * @return the size of the destination buffer needed to compress data of the given length.
+     */
+    int getMaxCompressedLength(int length);
+
+    /**
+     * @return the largest length that data compressed to the given length can expand to, used to reject corrupt
+     * frame headers before allocating the destination buffer.
+     */
+    long getMaxUncompressedLength(int compressedLength);
+
+    /**
+     * Compresses the source range into the destination array, which has room for at least
+     * {@link #getMaxCompressedLength(int)} bytes after the offset.
+     *
+     * @return the number of bytes written.
+     */
+    int compress(@NotNull byte[] src, int srcOffset, int srcLength, @NotNull byte[] dst, int dstOffset)
+            throws IOException;
+
+    /**
+     * Decompresses the source range, which must hold exactly the data compressed by {@link #compress}, into the
+     * destination range of the uncompressed length.
+     */
+    void decompress(@NotNull byte[] src, int srcOffset, int srcLength, @NotNull byte[] dst, int dstOffset,
+            int dstLength) throws IOException;
+}
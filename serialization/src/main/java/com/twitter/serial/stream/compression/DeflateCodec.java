@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.compression;
+
+import com.twitter.serial.util.Pools;
+import com.twitter.serial.util.SerializationException;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate compression, smaller but slower than {@link Lz4Codec}. The native {@link Deflater} and {@link Inflater}
+ * instances are expensive to create and hold native memory until they are ended, so they are pooled and reused.
+ */
+public final class DeflateCodec implements CompressionCodec {
+    public static final byte ID = 2;
+
+    private static final int DEFAULT_POOL_SIZE = 4;
+
+    private final int mLevel;
+    @NotNull private final Pools.Pool<Deflater> mDeflaterPool;
+    @NotNull private final Pools.Pool<Inflater> mInflaterPool;
+
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}.
+     * @param poolSize the maximum number of idle deflaters and inflaters kept for reuse.
+     */
+    public DeflateCodec(int level, int poolSize) {
+        mLevel = level;
+        mDeflaterPool = new Pools.ConcurrentPool<>(poolSize);
+        mInflaterPool = new Pools.ConcurrentPool<>(poolSize);
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public int getMaxCompressedLength(int length) {
+        // Same bound as deflateBound() in zlib, for data stored in uncompressed blocks.
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+    }
+
+    @Override
+    public long getMaxUncompressedLength(int compressedLength) {
+        // The maximum compression ratio of deflate is 1032:1, for long runs of repeated bytes.
+        return 1033L * compressedLength + 16;
+    }
+
+    @Override
+    public int compress(@NotNull byte[] src, int srcOffset, int srcLength, @NotNull byte[] dst, int dstOffset) {
+        Deflater deflater = mDeflaterPool.acquire();
+        if (deflater == null) {
+            deflater = new Deflater(mLevel, true);
+        }
+        try {
+            deflater.setInput(src, srcOffset, srcLength);
+            deflater.finish();
+            final int dstEnd = dstOffset + getMaxCompressedLength(srcLength);
+            int op = dstOffset;
+            while (!deflater.finished()) {
+                if (op == dstEnd) {
+                    throw new IllegalStateException("The compressed data exceeds the maximum compressed length.");
+                }
+                op += deflater.deflate(dst, op, dstEnd - op);
+            }
+            return op - dstOffset;
+        } finally {
+            deflater.reset();
+            if (!mDeflaterPool.release(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    @Override
+    public void decompress(@NotNull byte[] src, int srcOffset, int srcLength, @NotNull byte[] dst, int dstOffset,
+            int dstLength) throws SerializationException {
+        Inflater inflater = mInflaterPool.acquire();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setInput(src, srcOffset, srcLength);
+            int op = dstOffset;
+            final int dstEnd = dstOffset + dstLength;
+            while (op < dstEnd) {
+                final int length = inflater.inflate(dst, op, dstEnd - op);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary() || inflater.finished())) {
+                    throw new SerializationException("Truncated deflate compressed data.");
+                }
+                op += length;
+            }
+            // The end of the stream may come after the last byte of output.
+            if (!inflater.finished()) {
+                if (inflater.inflate(new byte[1]) != 0) {
+                    throw new SerializationException("The deflate compressed data is larger than expected.");
+                } else if (!inflater.finished()) {
+                    throw new SerializationException("Truncated deflate compressed data.");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new SerializationException("Malformed deflate compressed data.", e);
+        } finally {
+            inflater.reset();
+            if (!mInflaterPool.release(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.compression;
+
+import com.twitter.serial.util.Pools;
+import com.twitter.serial.util.SerializationException;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A pure Java implementation of the LZ4 block format: fast compression with a single hash table lookup per position,
+ * and decompression that only copies literals and previous matches.
+ */
+public final class Lz4Codec implements CompressionCodec {
+    public static final byte ID = 1;
+
+    private static final int MIN_MATCH = 4;
+    /**
+     * The last 5 bytes are always literals, and the last match starts at least 12 bytes before the end.
+     */
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int RUN_MASK = 0x0F;
+    private static final int HASH_LOG = 12;
+    /**
+     * After 64 positions without a match, the search skips more and more positions, to quickly go through
+     * incompressible data.
+     */
+    private static final int SKIP_TRIGGER = 6;
+
+    @NotNull private final Pools.Pool<int[]> mHashTablePool = new Pools.ConcurrentPool<>(4);
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public int getMaxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public long getMaxUncompressedLength(int compressedLength) {
+        // Each byte of a match length extension adds at most 255 bytes.
+        return 255L * compressedLength + 16;
+    }
+
+    @Override
+    public int compress(@NotNull byte[] src, int srcOffset, int srcLength, @NotNull byte[] dst, int dstOffset) {
+        final int srcEnd = srcOffset + srcLength;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+        final int mfLimit = srcEnd - MF_LIMIT;
+        int anchor = srcOffset;
+        int op = dstOffset;
+        if (srcLength > MF_LIMIT) {
+            int[] hashTable = mHashTablePool.acquire();
+            if (hashTable == null) {
+                hashTable = new int[1 << HASH_LOG];
+            }
+            Arrays.fill(hashTable, -1);
+            int ip = srcOffset;
+            while (ip < mfLimit) {
+                final int sequence = readInt(src, ip);
+                final int hash = hash(sequence);
+                int ref = hashTable[hash];
+                hashTable[hash] = ip;
+                if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+                    continue;
+                }
+                while (ip > anchor && ref > srcOffset && src[ip - 1] == src[ref - 1]) {
+                    --ip;
+                    --ref;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    ++matchLength;
+                }
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+                ip += matchLength;
+                anchor = ip;
+            }
+            mHashTablePool.release(hashTable);
+        }
+        return writeLastLiterals(src, anchor, srcEnd - anchor, dst, op) - dstOffset;
+    }
+
+    @Override
+    public void decompress(@NotNull byte[] src, int srcOffset, int srcLength, @NotNull byte[] dst, int dstOffset,
+            int dstLength) throws SerializationException {
+        final int srcEnd = srcOffset + srcLength;
+        final int dstEnd = dstOffset + dstLength;
+        int ip = srcOffset;
+        int op = dstOffset;
+        while (true) {
+            if (ip >= srcEnd) {
+                throw newMalformedDataException();
+            }
+            final int token = src[ip++] & 0xFF;
+
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= srcEnd) {
+                        throw newMalformedDataException();
+                    }
+                    b = src[ip++] & 0xFF;
+                    literalLength += b;
+                } while (b == 0xFF && literalLength > 0);
+            }
+            if (literalLength < 0 || literalLength > srcEnd - ip || literalLength > dstEnd - op) {
+                throw newMalformedDataException();
+            }
+            System.arraycopy(src, ip, dst, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+            if (ip == srcEnd) {
+                break;
+            }
+
+            if (srcEnd - ip < 2) {
+                throw newMalformedDataException();
+            }
+            final int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+            ip += 2;
+            if (offset == 0 || offset > op - dstOffset) {
+                throw newMalformedDataException();
+            }
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= srcEnd) {
+                        throw newMalformedDataException();
+                    }
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 0xFF && matchLength > 0);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength < MIN_MATCH || matchLength > dstEnd - op) {
+                throw newMalformedDataException();
+            }
+            final int ref = op - offset;
+            if (offset >= matchLength) {
+                System.arraycopy(dst, ref, dst, op, matchLength);
+            } else {
+                // The match overlaps the bytes being written, eg. a run of the same byte.
+                for (int i = 0; i < matchLength; ++i) {
+                    dst[op + i] = dst[ref + i];
+                }
+            }
+            op += matchLength;
+        }
+        if (op != dstEnd) {
+            throw newMalformedDataException();
+        }
+    }
+
+    private static int writeSequence(@NotNull byte[] src, int literalOffset, int literalLength, int offset,
+            int matchLength, @NotNull byte[] dst, int op) {
+        final int extraMatchLength = matchLength - MIN_MATCH;
+        dst[op++] = (byte) ((Math.min(literalLength, RUN_MASK) << 4) | Math.min(extraMatchLength, RUN_MASK));
+        op = writeLength(literalLength, dst, op);
+        System.arraycopy(src, literalOffset, dst, op, literalLength);
+        op += literalLength;
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        return writeLength(extraMatchLength, dst, op);
+    }
+
+    private static int writeLastLiterals(@NotNull byte[] src, int literalOffset, int literalLength,
+            @NotNull byte[] dst, int op) {
+        dst[op++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+        op = writeLength(literalLength, dst, op);
+        System.arraycopy(src, literalOffset, dst, op, literalLength);
+        return op + literalLength;
+    }
+
+    /**
+     * Writes the part of the length that doesn't fit in the 4 bits of the token.
+     */
+    private static int writeLength(int length, @NotNull byte[] dst, int op) {
+        if (length >= RUN_MASK) {
+            int remaining = length - RUN_MASK;
+            while (remaining >= 0xFF) {
+                dst[op++] = (byte) 0xFF;
+                remaining -= 0xFF;
+            }
+            dst[op++] = (byte) remaining;
+        }
+        return op;
+    }
+
+    private static int readInt(@NotNull byte[] src, int offset) {
+        return (src[offset] & 0xFF) | ((src[offset + 1] & 0xFF) << 8) | ((src[offset + 2] & 0xFF) << 16) |
+                (src[offset + 3] << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (Integer.SIZE - HASH_LOG);
+    }
+
+    @NotNull
+    private static SerializationException newMalformedDataException() {
+        return new SerializationException("Malformed LZ4 compressed data.");
+    }
+}
@@ -19,6 +19,8 @@ package com.twitter.serial.util;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * Helper class for crating pools of objects. An example use looks like this:
  * <pre>
@@ -166,4 +168,210 @@ public final class Pools {
             }
         }
     }
+
+    /**
+     * Lock-free pool of objects, safe to use from multiple threads. Each thread starts looking for a free slot at a
+     * different index, so that threads rarely compete for the same slot. Unlike {@link SimplePool}, releasing an
+     * instance that is already in the pool is not detected.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class ConcurrentPool<T> implements Pool<T> {
+        @NotNull
+        private final AtomicReferenceArray<T> mPool;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSize The max pool size.
+         *
+         * @throws IllegalArgumentException If the max pool size is less than zero.
+         */
+        public ConcurrentPool(int maxPoolSize) {
+            if (maxPoolSize <= 0) {
+                throw new IllegalArgumentException("The max pool size must be > 0");
+            }
+            mPool = new AtomicReferenceArray<>(maxPoolSize);
+        }
+
+        @Override
+        @Nullable
+        public T acquire() {
+            final int poolSize = mPool.length();
+            int index = getStartIndex(poolSize);
+            for (int i = 0; i < poolSize; i++) {
+                if (mPool.get(index) != null) {
+                    final T instance = mPool.getAndSet(index, null);
+                    if (instance != null) {
+                        return instance;
+                    }
+                }
+                if (++index == poolSize) {
+                    index = 0;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean release(@NotNull T instance) {
+            final int poolSize = mPool.length();
+            int index = getStartIndex(poolSize);
+            for (int i = 0; i < poolSize; i++) {
+                if (mPool.get(index) == null && mPool.compareAndSet(index, null, instance)) {
+                    return true;
+                }
+                if (++index == poolSize) {
+                    index = 0;
+                }
+            }
+            return false;
+        }
+
+        private static int getStartIndex(int poolSize) {
+            return (int) (Thread.currentThread().getId() % poolSize);
+        }
+    }
+
+    /**
+     * Pool keeping one instance per thread in front of a shared pool, so that a thread reusing the same instance
+     * doesn't touch any shared state. Instances only move to the shared pool when the thread already holds one, so
+     * a thread can keep an instance that other threads are waiting for: size the shared pool for the number of
+     * threads using it.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class ThreadLocalPool<T> implements Pool<T> {
+        @NotNull
+        private final Pool<T> mSharedPool;
+        @NotNull
+        private final ThreadLocal<T> mLocalInstance = new ThreadLocal<>();
+
+        /**
+         * Creates a new instance.
+         *
+         * @param sharedPool The pool used when the current thread doesn't hold an instance, or already holds one.
+         * Must be safe to use from multiple threads.
+         */
+        public ThreadLocalPool(@NotNull Pool<T> sharedPool) {
+            mSharedPool = sharedPool;
+        }
+
+        @Override
+        @Nullable
+        public T acquire() {
+            final T instance = mLocalInstance.get();
+            if (instance != null) {
+                mLocalInstance.set(null);
+                return instance;
+            }
+            return mSharedPool.acquire();
+        }
+
+        @Override
+        public boolean release(@NotNull T instance) {
+            if (mLocalInstance.get() == null) {
+                mLocalInstance.set(instance);
+                return true;
+            }
+            return mSharedPool.release(instance);
+        }
+    }
+
+    /**
+     * Pool of byte arrays of different sizes, grouped in power-of-two size classes. Buffers that grew while in use
+     * can be released instead of the ones that were acquired, so that the next acquisitions get a buffer large enough
+     * for the data seen recently: {@link #acquire()} starts looking in the size class of the last released buffer.
+     * Buffers larger than the max retained size are not kept. Safe to use from multiple threads.
+     */
+    public static class AdaptiveByteArrayPool implements Pool<byte[]> {
+        @NotNull
+        private final ConcurrentPool<byte[]>[] mBuckets;
+        private final int mMinBufferSize;
+        private final int mMaxRetainedSize;
+        private volatile int mPreferredBucket;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param buffersPerBucket The number of buffers kept for each size class.
+         * @param minBufferSize The size of the smallest size class, rounded up to a power of two.
+         * @param maxRetainedSize The size of the largest buffer kept by the pool.
+         *
+         * @throws IllegalArgumentException If a size or the number of buffers is less than zero, or if the max
+         * retained size is smaller than the min buffer size.
+         */
+        public AdaptiveByteArrayPool(int buffersPerBucket, int minBufferSize, int maxRetainedSize) {
+            if (minBufferSize <= 0 || maxRetainedSize < minBufferSize || maxRetainedSize > (1 << 30)) {
+                throw new IllegalArgumentException("Invalid buffer sizes: " + minBufferSize + ", " + maxRetainedSize);
+            }
+            mMinBufferSize = Integer.highestOneBit(minBufferSize) == minBufferSize ?
+                    minBufferSize : Integer.highestOneBit(minBufferSize) << 1;
+            mMaxRetainedSize = maxRetainedSize;
+            mBuckets = InternalSerialUtils.cast(new ConcurrentPool[getBucket(maxRetainedSize) + 1]);
+            for (int i = 0; i < mBuckets.length; i++) {
+                mBuckets[i] = new ConcurrentPool<>(buffersPerBucket);
+            }
+        }
+
+        /**
+         * @return A buffer from the size class of the last released buffer if available, otherwise the closest
+         * one from a larger or smaller size class, or null if the pool is empty.
+         */
+        @Override
+        @Nullable
+        public byte[] acquire() {
+            final int preferredBucket = mPreferredBucket;
+            for (int i = preferredBucket; i < mBuckets.length; i++) {
+                final byte[] buffer = mBuckets[i].acquire();
+                if (buffer != null) {
+                    return buffer;
+                }
+            }
+            for (int i = preferredBucket - 1; i >= 0; i--) {
+                final byte[] buffer = mBuckets[i].acquire();
+                if (buffer != null) {
+                    return buffer;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return A buffer of at least the given size, allocated if none is available in the pool.
+         */
+        @NotNull
+        public byte[] acquire(int minSize) {
+            if (minSize <= mMaxRetainedSize) {
+                for (int i = getBucket(minSize); i < mBuckets.length; i++) {
+                    final byte[] buffer = mBuckets[i].acquire();
+                    if (buffer != null && buffer.length >= minSize) {
+                        return buffer;
+                    } else if (buffer != null) {
+                        mBuckets[i].release(buffer);
+                    }
+                }
+            }
+            return new byte[Math.max(minSize, mMinBufferSize)];
+        }
+
+        @Override
+        public boolean release(@NotNull byte[] buffer) {
+            if (buffer.length < mMinBufferSize || buffer.length > mMaxRetainedSize) {
+                return false;
+            }
+            final int bucket = getBucket(buffer.length);
+            mPreferredBucket = bucket;
+            return mBuckets[bucket].release(buffer);
+        }
+
+        /**
+         * @return The size class of buffers of the given size, such that buffers of a size class are at least
+         * {@code mMinBufferSize << sizeClass} bytes long.
+         */
+        private int getBucket(int size) {
+            return size <= mMinBufferSize ? 0 :
+                    31 - Integer.numberOfLeadingZeros(size) - Integer.numberOfTrailingZeros(mMinBufferSize);
+        }
+    }
 }
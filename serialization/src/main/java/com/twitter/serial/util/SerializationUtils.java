@@ -27,6 +27,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.lang.reflect.Array;
 
 /**
  * Some methods here are helpful for debugging.
@@ -36,9 +37,9 @@ public class SerializationUtils {
     private static final byte MAX_LEN_TO_DUMP = 32;
 
     @Nullable
-    private static volatile Pools.SynchronizedPool<byte[]> sBufferPool;
+    private static volatile Pools.Pool<byte[]> sBufferPool;
 
-    public static void initializePool(@NotNull Pools.SynchronizedPool<byte[]> pool) {
+    public static void initializePool(@NotNull Pools.Pool<byte[]> pool) {
         sBufferPool = pool;
     }
 
@@ -95,12 +96,39 @@ public class SerializationUtils {
     }
 
     /**
-     * Skip over object during deserialization
+     * Skip over object during deserialization. Objects written with their length are skipped in constant time.
      */
     public static void skipObject(@NotNull SerializerInput input) throws IOException {
         readStream(input, true);
     }
 
+    /**
+     * Moves the input to the value at the given path of field indexes, skipping the values before it without
+     * deserializing them: path[0] is the index of a value of the object at the current position, path[1] the index
+     * of a value of the object found there, and so on. A nested object counts as a single value.
+     *
+     * @return false if an object of the path is null, or ends before the field, eg. when it was serialized by an
+     * older version of its serializer.
+     */
+    public static boolean seekField(@NotNull SerializerInput input, @NotNull int... path) throws IOException {
+        for (int index : path) {
+            if (readNullIndicator(input)) {
+                return false;
+            }
+            input.readObjectStart();
+            for (int i = 0; i < index; ++i) {
+                if (input.peekType() == SerializerDefs.TYPE_END_OBJECT) {
+                    return false;
+                }
+                input.skipValue();
+            }
+            if (input.peekType() == SerializerDefs.TYPE_END_OBJECT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Deserialize a stream of serialized data as read using {@link ByteBufferSerializerInput} into a
      * displayable string. In the case of error, it will return a partial result.
@@ -209,7 +237,8 @@ public class SerializationUtils {
                             break;
                         }
                         case SerializerDefs.TYPE_STRING_ASCII:
-                        case SerializerDefs.TYPE_STRING_UTF8: {
+                        case SerializerDefs.TYPE_STRING_UTF8:
+                        case SerializerDefs.TYPE_STRING_REF: {
                             final String string = input.readNotNullString();
                             if (includeValues) {
                                 builder.append("String: \"")
@@ -235,13 +264,35 @@ public class SerializationUtils {
                             }
                             break;
                         }
-                        case SerializerDefs.TYPE_START_OBJECT: {
+                        case SerializerDefs.TYPE_INT_ARRAY: {
+                            appendArray(builder, "int[]", input.readIntArray(), includeValues);
+                            break;
+                        }
+                        case SerializerDefs.TYPE_LONG_ARRAY: {
+                            appendArray(builder, "long[]", input.readLongArray(), includeValues);
+                            break;
+                        }
+                        case SerializerDefs.TYPE_FLOAT_ARRAY: {
+                            appendArray(builder, "float[]", input.readFloatArray(), includeValues);
+                            break;
+                        }
+                        case SerializerDefs.TYPE_DOUBLE_ARRAY: {
+                            appendArray(builder, "double[]", input.readDoubleArray(), includeValues);
+                            break;
+                        }
+                        case SerializerDefs.TYPE_START_OBJECT:
+                        case SerializerDefs.TYPE_START_OBJECT_SIZED: {
                             final int version = input.readObjectStart();
                             builder.append("Object: Unknown type, v").append(version).append(" {");
                             ++objectNesting;
                             indentation = InternalSerialUtils.repeat("    ", objectNesting + 1);
                             break;
                         }
+                        case SerializerDefs.TYPE_OBJECT_REF: {
+                            input.skipValue();
+                            builder.append("Object reference");
+                            break;
+                        }
                         case SerializerDefs.TYPE_START_OBJECT_DEBUG: {
                             final DebugClassDescriptor objectInfo = input.readDebugObjectStart();
                             builder.append("Object: ").append(objectInfo.className)
@@ -270,6 +321,27 @@ public class SerializationUtils {
         return builder.append('}').toString();
     }
 
+    /**
+     * Appends the length of the primitive array, and its first elements if the values are included.
+     */
+    private static void appendArray(@NotNull StringBuilder builder, @NotNull String typeName,
+            @Nullable Object array, boolean includeValues) {
+        final int length = Array.getLength(InternalSerialUtils.checkIsNotNull(array));
+        if (includeValues) {
+            final int writeLen = length > MAX_LEN_TO_DUMP ? MAX_LEN_TO_DUMP : length;
+            builder.append(typeName).append(": [");
+            for (int i = 0; i < writeLen; i++) {
+                builder.append(i > 0 ? ", " : "").append(Array.get(array, i));
+            }
+            if (length > writeLen) {
+                builder.append(", ... ").append(length - writeLen).append(" more elements");
+            }
+            builder.append(']');
+        } else {
+            builder.append(typeName).append(" (").append(length).append(')');
+        }
+    }
+
     private static void readStream(@NotNull SerializerInput input, boolean singleObject) throws IOException {
         int objectNesting = 0;
         byte type;
@@ -278,7 +350,12 @@ public class SerializationUtils {
                 return;
             }
             type = input.peekType();
-            if (type != SerializerDefs.TYPE_START_OBJECT && type != SerializerDefs.TYPE_START_OBJECT_DEBUG) {
+            if (type == SerializerDefs.TYPE_OBJECT_REF) {
+                input.skipValue();
+                return;
+            }
+            if (type != SerializerDefs.TYPE_START_OBJECT && type != SerializerDefs.TYPE_START_OBJECT_DEBUG &&
+                    type != SerializerDefs.TYPE_START_OBJECT_SIZED) {
                 throw new SerializationException(
                         "Method skipObject can only be used to skip Objects in deserialization," +
                                 " expected start object header but found " + SerializerDefs.getTypeName(type));
@@ -286,45 +363,16 @@ public class SerializationUtils {
         }
         while ((type = input.peekType()) != SerializerDefs.TYPE_EOF) {
             switch (type) {
-                case SerializerDefs.TYPE_BYTE: {
-                    input.readByte();
-                    break;
-                }
-                case SerializerDefs.TYPE_INT: {
-                    input.readInt();
-                    break;
-                }
-                case SerializerDefs.TYPE_LONG: {
-                    input.readLong();
-                    break;
-                }
-                case SerializerDefs.TYPE_FLOAT: {
-                    input.readFloat();
-                    break;
-                }
-                case SerializerDefs.TYPE_DOUBLE: {
-                    input.readDouble();
-                    break;
-                }
-                case SerializerDefs.TYPE_BOOLEAN: {
-                    input.readBoolean();
-                    break;
-                }
-                case SerializerDefs.TYPE_NULL: {
-                    input.readNull();
-                    break;
-                }
-                case SerializerDefs.TYPE_STRING_ASCII:
-                case SerializerDefs.TYPE_STRING_UTF8: {
-                    input.readString();
-                    break;
-                }
-                case SerializerDefs.TYPE_BYTE_ARRAY: {
-                    input.readByteArray();
-                    break;
-                }
                 case SerializerDefs.TYPE_START_OBJECT:
-                case SerializerDefs.TYPE_START_OBJECT_DEBUG: {
+                case SerializerDefs.TYPE_START_OBJECT_DEBUG:
+                case SerializerDefs.TYPE_START_OBJECT_SIZED: {
+                    // The content of the skipped objects is only validated when validating the whole stream.
+                    if (singleObject && input.skipSizedObject()) {
+                        if (objectNesting == 0) {
+                            return;
+                        }
+                        break;
+                    }
                     input.readObjectStart();
                     ++objectNesting;
                     break;
@@ -341,7 +389,8 @@ public class SerializationUtils {
                     break;
                 }
                 default: {
-                    throw new SerializationException("Unknown type: " + SerializerDefs.getTypeName(type) + '.');
+                    input.skipValue();
+                    break;
                 }
             }
         }
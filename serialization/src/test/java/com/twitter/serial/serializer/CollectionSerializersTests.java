@@ -17,14 +17,25 @@
 package com.twitter.serial.serializer;
 
 import com.twitter.serial.SerializationTestUtils;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerOutput;
+import com.twitter.serial.util.SerializationException;
 
+import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.junit.Assert.fail;
+
 public class CollectionSerializersTests {
     @Test
     public void testNullCollections() throws Exception {
@@ -78,4 +89,53 @@ public class CollectionSerializersTests {
         SerializationTestUtils.checkSerialization(
                 set, CollectionSerializers.getSetSerializer(SerializationTestUtils.TestObject.SERIALIZER));
     }
+
+    @Test
+    public void testCollectionFactories() throws Exception {
+        final Map<String, Integer> map = new LinkedHashMap<>();
+        for (int i = 20; i > 0; i--) {
+            map.put("key " + i, i);
+        }
+        final Map<String, Integer> linkedMap = SerializationTestUtils.performRoundTripThroughSerialization(map,
+                CollectionSerializers.getMapSerializer(CoreSerializers.STRING, CoreSerializers.INTEGER,
+                        CollectionFactory.<String, Integer>linkedHashMap()));
+        assertThat(linkedMap).isInstanceOf(LinkedHashMap.class);
+        assertThat(new ArrayList<>(linkedMap.keySet())).isEqualTo(new ArrayList<>(map.keySet()));
+
+        final List<Integer> list = Arrays.asList(1, 2, 3);
+        final List<Integer> unmodifiableList = SerializationTestUtils.performRoundTripThroughSerialization(list,
+                CollectionSerializers.getListSerializer(CoreSerializers.INTEGER,
+                        CollectionFactory.<Integer>unmodifiableList()));
+        assertThat(unmodifiableList).isEqualTo(list);
+        try {
+            unmodifiableList.add(4);
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException ignore) {
+        }
+
+        final Serializer<LinkedList<Integer>> linkedListSerializer = CollectionSerializers.getListSerializer(
+                CoreSerializers.INTEGER, new CollectionFactory<LinkedList<Integer>>() {
+                    @NotNull
+                    @Override
+                    public LinkedList<Integer> create(int capacity) {
+                        return new LinkedList<>();
+                    }
+                });
+        SerializationTestUtils.checkSerialization(new LinkedList<>(list), linkedListSerializer);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testNegativeSize() throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput().writeObjectStart(0).writeInt(-1).writeObjectEnd()
+                .getSerializedData();
+        new ByteBufferSerial().fromByteArray(bytes, CollectionSerializers.getListSerializer(CoreSerializers.INTEGER));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testCorruptSize() throws Exception {
+        // The list isn't allocated for the size found in the data, which fails on the first missing element.
+        final byte[] bytes = new ByteBufferSerializerOutput().writeObjectStart(0).writeInt(Integer.MAX_VALUE)
+                .writeInt(1).writeObjectEnd().getSerializedData();
+        new ByteBufferSerial().fromByteArray(bytes, CollectionSerializers.getListSerializer(CoreSerializers.INTEGER));
+    }
 }
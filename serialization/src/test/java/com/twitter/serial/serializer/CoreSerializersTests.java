@@ -18,6 +18,8 @@ package com.twitter.serial.serializer;
 
 import com.twitter.serial.SerializationTestUtils;
 import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerInput;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerOutput;
 import com.twitter.serial.stream.Serial;
 import com.twitter.serial.util.SerializableClass;
 import com.twitter.serial.util.SerializationException;
@@ -27,10 +29,27 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class CoreSerializersTests {
+    private static final SerializationContext DEBUG_CONTEXT = new SerializationContext() {
+        @Override
+        public boolean isDebug() {
+            return true;
+        }
+
+        @Override
+        public boolean isRelease() {
+            return false;
+        }
+    };
+
     private Serial mSerial;
 
     @Before
@@ -38,6 +57,18 @@ public class CoreSerializersTests {
         mSerial = new ByteBufferSerial();
     }
 
+    @Test
+    public void testReadUnpackedPrimitiveArrays() throws Exception {
+        // Format written by the first version of the array serializers.
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput();
+        output.writeObjectStart(0).writeInt(2).writeInt(-5).writeInt(7).writeObjectEnd();
+        output.writeObjectStart(0).writeInt(1).writeDouble(2.5).writeObjectEnd();
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(output.getSerializedData());
+        final SerializationContext context = SerializationContext.ALWAYS_RELEASE;
+        assertThat(CoreSerializers.INT_ARRAY.deserialize(context, input)).containsExactly(-5, 7);
+        assertThat(CoreSerializers.DOUBLE_ARRAY.deserialize(context, input)).containsExactly(2.5);
+    }
+
     @Test
     public void testBaseSerializers() throws Exception {
         SerializationTestUtils.checkSerialization(true, CoreSerializers.BOOLEAN);
@@ -90,6 +121,44 @@ public class CoreSerializersTests {
                 CoreSerializers.getEnumSerializer(SerializationTestUtils.TestType.class));
     }
 
+    @Test
+    public void testSerializeEnumAsId() throws Exception {
+        final Serializer<SerializationTestUtils.TestType> ordinalSerializer =
+                CoreSerializers.getOrdinalEnumSerializer(SerializationTestUtils.TestType.class);
+        for (SerializationTestUtils.TestType value : SerializationTestUtils.TestType.values()) {
+            SerializationTestUtils.checkSerialization(value, ordinalSerializer);
+        }
+        SerializationTestUtils.checkSerialization(null, ordinalSerializer);
+        assertThat(mSerial.toByteArray(SerializationTestUtils.TestType.SECOND, ordinalSerializer)).hasSize(2);
+
+        final Map<SerializationTestUtils.TestType, Integer> ids = new HashMap<>();
+        ids.put(SerializationTestUtils.TestType.DEFAULT, 0);
+        ids.put(SerializationTestUtils.TestType.FIRST, 10);
+        ids.put(SerializationTestUtils.TestType.SECOND, 5);
+        final Serializer<SerializationTestUtils.TestType> idSerializer = CoreSerializers.getEnumSerializer(
+                SerializationTestUtils.TestType.class, ids, SerializationTestUtils.TestType.DEFAULT);
+        final byte[] bytes = mSerial.toByteArray(SerializationTestUtils.TestType.FIRST, idSerializer);
+        assertThat(new ByteBufferSerializerInput(bytes).readInt()).isEqualTo(10);
+        assertThat(mSerial.fromByteArray(bytes, idSerializer)).isEqualTo(SerializationTestUtils.TestType.FIRST);
+
+        final byte[] unknownId = new ByteBufferSerializerOutput().writeInt(7).getSerializedData();
+        assertThat(mSerial.fromByteArray(unknownId, idSerializer)).isEqualTo(SerializationTestUtils.TestType.DEFAULT);
+        try {
+            mSerial.fromByteArray(unknownId, ordinalSerializer);
+            fail("Expected a SerializationException");
+        } catch (SerializationException ignore) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnumSerializerWithDuplicateIds() {
+        final Map<SerializationTestUtils.TestType, Integer> ids = new HashMap<>();
+        ids.put(SerializationTestUtils.TestType.DEFAULT, 0);
+        ids.put(SerializationTestUtils.TestType.FIRST, 1);
+        ids.put(SerializationTestUtils.TestType.SECOND, 1);
+        CoreSerializers.getEnumSerializer(SerializationTestUtils.TestType.class, ids, null);
+    }
+
     @Test
     public void testReadNullWithDefaultSerializer() throws Exception {
         final SerializationTestUtils.TestObject testObject = new SerializationTestUtils.TestObject("testName", 1);
@@ -141,6 +210,65 @@ public class CoreSerializersTests {
     }
 
 
+    @Test
+    public void testBaseClassSerializerRegister() throws Exception {
+        final List<SerializableClass<? extends SerializationTestUtils.BaseTestObject>> subclasses = new ArrayList<>();
+        subclasses.add(SerializableClass.create(SerializationTestUtils.TestObject.class,
+                new SerializationTestUtils.TestObject.TestObjectSerializer()));
+        final BaseClassSerializer<SerializationTestUtils.BaseTestObject> baseSerializer =
+                new BaseClassSerializer<>(subclasses);
+        final SerializationTestUtils.TestObject testObject = new SerializationTestUtils.TestObject("test name", 1);
+        final SerializationTestUtils.TestObject2 testObject2 = new SerializationTestUtils.TestObject2(true);
+        final byte[] testObjectBytes = mSerial.toByteArray(testObject, baseSerializer);
+        try {
+            mSerial.toByteArray(testObject2, baseSerializer);
+            fail();
+        } catch (SerializationException ignore) {
+        }
+
+        assertThat(baseSerializer.register(SerializableClass.create(SerializationTestUtils.TestObject2.class,
+                SerializationTestUtils.TestObject2.SERIALIZER))).isEqualTo(1);
+        assertThat(mSerial.toByteArray(testObject, baseSerializer)).isEqualTo(testObjectBytes);
+        SerializationTestUtils.checkSerializationComparingFieldByField(testObject, baseSerializer);
+        SerializationTestUtils.checkSerializationComparingFieldByField(testObject2, baseSerializer);
+    }
+
+    @Test
+    public void testBaseClassSerializerInvalidType() throws Exception {
+        final Serializer<SerializationTestUtils.BaseTestObject> baseSerializer =
+                CoreSerializers.<SerializationTestUtils.BaseTestObject>getBaseClassSerializer(
+                        SerializableClass.create(SerializationTestUtils.TestObject2.class,
+                                SerializationTestUtils.TestObject2.SERIALIZER));
+        final byte[] bytes = new ByteBufferSerializerOutput()
+                .writeObjectStart(0)
+                .writeInt(1)
+                .writeObjectEnd()
+                .getSerializedData();
+        try {
+            baseSerializer.deserialize(SerializationContext.ALWAYS_RELEASE, new ByteBufferSerializerInput(bytes));
+            fail();
+        } catch (SerializationException e) {
+            assertThat(e.getMessage()).contains("Invalid type");
+        }
+    }
+
+    @Test
+    public void testBaseClassSerializerDuplicateClass() throws Exception {
+        final Serializer<SerializationTestUtils.BaseTestObject> baseSerializer =
+                CoreSerializers.<SerializationTestUtils.BaseTestObject>getBaseClassSerializer(
+                        SerializableClass.create(SerializationTestUtils.TestObject2.class,
+                                SerializationTestUtils.TestObject2.SERIALIZER),
+                        SerializableClass.create(SerializationTestUtils.TestObject2.class,
+                                SerializationTestUtils.TestObject2.SERIALIZER));
+        final SerializationTestUtils.TestObject2 testObject2 = new SerializationTestUtils.TestObject2(true);
+        SerializationTestUtils.checkSerializationComparingFieldByField(testObject2, baseSerializer);
+        // The first index is used, in debug mode too.
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(
+                new ByteBufferSerial(DEBUG_CONTEXT).toByteArray(testObject2, baseSerializer));
+        input.readObjectStart();
+        assertThat(input.readInt()).isEqualTo(0);
+    }
+
     @Test
     public void testSerializableSerializer() throws IOException, ClassNotFoundException {
         final Serializer<Integer> integerSerializer = CoreSerializers.getSerializableSerializer();
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.serializer;
+
+import com.twitter.serial.SerializationTestUtils;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerInput;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerializerOutput;
+import com.twitter.serial.util.SerializationException;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class FieldSerializerTests {
+    @Test
+    public void testSerialization() throws Exception {
+        final Serializer<AllTypes> serializer = CoreSerializers.getFieldSerializer(AllTypes.class);
+        SerializationTestUtils.checkSerializationComparingFieldByFieldRecursively(new AllTypes(), serializer);
+        SerializationTestUtils.checkSerializationComparingFieldByFieldRecursively(createAllTypes(), serializer);
+        SerializationTestUtils.checkSerializationComparingFieldByField(null, serializer);
+    }
+
+    @Test
+    public void testTransientFields() throws Exception {
+        final AllTypes object = createAllTypes();
+        object.transientValue = 3;
+        final AllTypes result = SerializationTestUtils.performRoundTripThroughSerialization(object,
+                CoreSerializers.getFieldSerializer(AllTypes.class));
+        assertThat(result.transientValue).isEqualTo(0);
+        assertThat(result.i).isEqualTo(object.i);
+    }
+
+    @Test
+    public void testClassWithoutDefaultConstructor() throws Exception {
+        final Serializer<Point> serializer = CoreSerializers.getFieldSerializer(Point.class);
+        final Point point = SerializationTestUtils.performRoundTripThroughSerialization(new Point(1, -2), serializer);
+        assertThat(point.x).isEqualTo(1);
+        assertThat(point.y).isEqualTo(-2);
+    }
+
+    @Test
+    public void testRecursiveClass() throws Exception {
+        final Node node = new Node();
+        node.value = 1;
+        node.next = new Node();
+        node.next.value = 2;
+        SerializationTestUtils.checkSerializationComparingFieldByFieldRecursively(node,
+                CoreSerializers.getFieldSerializer(Node.class));
+    }
+
+    @Test
+    public void testSmallerThanSerializable() throws Exception {
+        final AllTypes object = createAllTypes();
+        final byte[] fields = new ByteBufferSerializerOutput().writeObject(SerializationContext.ALWAYS_RELEASE,
+                object, CoreSerializers.getFieldSerializer(AllTypes.class)).getSerializedData();
+        final byte[] serializable = new ByteBufferSerializerOutput().writeObject(SerializationContext.ALWAYS_RELEASE,
+                object, CoreSerializers.<AllTypes>getSerializableSerializer()).getSerializedData();
+        assertThat(fields.length * 4).isLessThan(serializable.length);
+    }
+
+    @Test
+    public void testSubclass() throws Exception {
+        try {
+            new ByteBufferSerializerOutput().writeObject(SerializationContext.ALWAYS_RELEASE, new SubNode(),
+                    CoreSerializers.getFieldSerializer(Node.class));
+            fail();
+        } catch (SerializationException ignore) {
+        }
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testChangedFields() throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput().writeObject(SerializationContext.ALWAYS_RELEASE,
+                new Point(1, 2), CoreSerializers.getFieldSerializer(Point.class)).getSerializedData();
+        CoreSerializers.getFieldSerializer(RenamedPoint.class).deserialize(SerializationContext.ALWAYS_RELEASE,
+                new ByteBufferSerializerInput(bytes));
+    }
+
+    @Test
+    public void testUnsupportedTypes() {
+        try {
+            CoreSerializers.getFieldSerializer(Unsupported.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("Unsupported.value");
+        }
+        try {
+            CoreSerializers.getFieldSerializer(Runnable.class);
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    @NotNull
+    private static AllTypes createAllTypes() {
+        final AllTypes object = new AllTypes();
+        object.flag = true;
+        object.b = -1;
+        object.s = Short.MIN_VALUE;
+        object.c = 'c';
+        object.i = 42;
+        object.l = Long.MIN_VALUE;
+        object.f = 1.5f;
+        object.d = -0.25;
+        object.string = "string";
+        object.bytes = new byte[] { 1, 2 };
+        object.ints = new int[] { 3, 4 };
+        object.longs = new long[] { 5 };
+        object.floats = new float[] { 6 };
+        object.doubles = new double[] { 7 };
+        object.boxed = 8;
+        object.type = SerializationTestUtils.TestType.SECOND;
+        object.strings = new ArrayList<>(Arrays.asList("a", null, "b"));
+        object.map = Collections.singletonMap("key", Arrays.asList(new int[] { 9 }));
+        object.point = new Point(10, 11);
+        return object;
+    }
+
+    private static class Base implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        int i;
+    }
+
+    private static final class AllTypes extends Base {
+        private static final long serialVersionUID = 1L;
+
+        private boolean flag;
+        byte b;
+        short s;
+        char c;
+        long l;
+        float f;
+        double d;
+        @Nullable String string;
+        @Nullable byte[] bytes;
+        @Nullable int[] ints;
+        @Nullable long[] longs;
+        @Nullable float[] floats;
+        @Nullable double[] doubles;
+        @Nullable Integer boxed;
+        @Nullable SerializationTestUtils.TestType type;
+        @Nullable ArrayList<String> strings;
+        @Nullable Map<String, ? extends List<int[]>> map;
+        @Nullable Point point;
+        transient int transientValue;
+    }
+
+    private static final class Point implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static final class RenamedPoint {
+        int x;
+        int z;
+    }
+
+    private static class Node {
+        int value;
+        @Nullable Node next;
+    }
+
+    private static final class SubNode extends Node {
+    }
+
+    private static final class Unsupported {
+        @Nullable Object value;
+    }
+}
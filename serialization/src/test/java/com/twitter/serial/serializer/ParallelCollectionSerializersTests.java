@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.serializer;
+
+import com.twitter.serial.SerializationTestUtils;
+import com.twitter.serial.stream.SerializerInput;
+import com.twitter.serial.stream.SerializerOutput;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
+import com.twitter.serial.util.SerializationException;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ParallelCollectionSerializersTests {
+    private static final int CHUNK_SIZE = 10;
+
+    private ForkJoinPool mPool;
+
+    @Before
+    public void setUp() {
+        mPool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Test
+    public void testSerializeList() throws Exception {
+        final List<SerializationTestUtils.TestObject> list = new ArrayList<>();
+        for (int i = 0; i < 95; i++) {
+            list.add(i % 7 == 0 ? null : new SerializationTestUtils.TestObject("item " + i, i));
+        }
+        final Serializer<List<SerializationTestUtils.TestObject>> serializer =
+                ParallelCollectionSerializers.getListSerializer(SerializationTestUtils.TestObject.SERIALIZER, mPool,
+                        CHUNK_SIZE);
+        final Serializer<List<SerializationTestUtils.TestObject>> sequentialSerializer =
+                CollectionSerializers.getListSerializer(SerializationTestUtils.TestObject.SERIALIZER);
+        final ByteBufferSerial serial = new ByteBufferSerial();
+        final byte[] bytes = serial.toByteArray(list, serializer);
+        assertThat(bytes).isEqualTo(serial.toByteArray(list, sequentialSerializer));
+        assertThat(serial.toByteArray(new LinkedList<>(list), serializer)).isEqualTo(bytes);
+        assertThat(serial.fromByteArray(bytes, serializer)).isEqualTo(list);
+
+        final ByteBufferSerial objectLengthsSerial = new ByteBufferSerial.Builder().setObjectLengths(true).build();
+        final byte[] objectLengthsBytes = objectLengthsSerial.toByteArray(list, serializer);
+        assertThat(objectLengthsBytes).isEqualTo(objectLengthsSerial.toByteArray(list, sequentialSerializer));
+        assertThat(objectLengthsSerial.fromByteArray(objectLengthsBytes, serializer)).isEqualTo(list);
+
+        // The string table and the object references are shared by all the values, so they are serialized
+        // sequentially.
+        final ByteBufferSerial stringTableSerial = new ByteBufferSerial.Builder().setStringTable(true).build();
+        assertThat(stringTableSerial.fromByteArray(stringTableSerial.toByteArray(list, serializer), serializer))
+                .isEqualTo(list);
+        final ByteBufferSerial objectReferencesSerial =
+                new ByteBufferSerial.Builder().setObjectReferences(true).build();
+        list.set(1, list.get(CHUNK_SIZE + 1));
+        assertThat(objectReferencesSerial.fromByteArray(objectReferencesSerial.toByteArray(list, serializer),
+                serializer)).isEqualTo(list);
+
+        SerializationTestUtils.checkSerialization(new ArrayList<SerializationTestUtils.TestObject>(), serializer);
+        SerializationTestUtils.checkSerialization(null, serializer);
+    }
+
+    @Test
+    public void testSerializeMap() throws Exception {
+        final Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < 42; i++) {
+            map.put("key " + i, i % 5 == 0 ? null : i);
+        }
+        final Serializer<Map<String, Integer>> serializer = ParallelCollectionSerializers.getMapSerializer(
+                CoreSerializers.STRING, CoreSerializers.INTEGER, mPool, CHUNK_SIZE);
+        final ByteBufferSerial serial = new ByteBufferSerial();
+        final byte[] bytes = serial.toByteArray(map, serializer);
+        assertThat(bytes).isEqualTo(serial.toByteArray(map,
+                CollectionSerializers.getMapSerializer(CoreSerializers.STRING, CoreSerializers.INTEGER)));
+        assertThat(serial.fromByteArray(bytes, serializer)).isEqualTo(map);
+    }
+
+    @Test
+    public void testChunkException() throws Exception {
+        final List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            list.add(i);
+        }
+        final Serializer<Integer> failingSerializer = new ValueSerializer<Integer>() {
+            @Override
+            protected void serializeValue(@NotNull SerializationContext context, @NotNull SerializerOutput output,
+                    @NotNull Integer value) throws IOException {
+                if (value == 42) {
+                    throw new SerializationException("Invalid value.");
+                }
+                output.writeInt(value);
+            }
+
+            @NotNull
+            @Override
+            protected Integer deserializeValue(@NotNull SerializationContext context, @NotNull SerializerInput input)
+                    throws IOException {
+                return input.readInt();
+            }
+        };
+        try {
+            new ByteBufferSerial().toByteArray(list,
+                    ParallelCollectionSerializers.getListSerializer(failingSerializer, mPool, CHUNK_SIZE));
+            fail("Expected a SerializationException");
+        } catch (SerializationException e) {
+            assertThat(e.getMessage()).isEqualTo("Invalid value.");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.store;
+
+import com.twitter.serial.SerializationTestUtils.TestObject;
+import com.twitter.serial.model.Place;
+import com.twitter.serial.model.SampleDataProvider;
+import com.twitter.serial.serializer.CoreSerializers;
+import com.twitter.serial.util.InternalSerialUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class RecordStoreTests {
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testAppendAndRead() throws Exception {
+        final File file = mTemporaryFolder.newFile();
+        final Place place = SampleDataProvider.createSamplePlace();
+        final long firstOffset;
+        final long placeOffset;
+        final long nullOffset;
+        try (RecordStore store = new RecordStore(file)) {
+            firstOffset = store.append(new TestObject("first", 1), TestObject.SERIALIZER);
+            placeOffset = store.append(place, Place.SERIALIZER);
+            nullOffset = store.append(null, TestObject.SERIALIZER);
+
+            assertThat(store.getRecordCount()).isEqualTo(3);
+            assertThat(store.getRecordOffsets()).containsExactly(firstOffset, placeOffset, nullOffset);
+            assertThat(store.read(firstOffset, TestObject.SERIALIZER)).isEqualTo(new TestObject("first", 1));
+            assertThat(store.read(placeOffset, Place.SERIALIZER)).isEqualTo(place);
+            assertThat(store.read(nullOffset, TestObject.SERIALIZER)).isNull();
+        }
+
+        try (RecordStore store = new RecordStore(file)) {
+            assertThat(store.getRecordOffsets()).containsExactly(firstOffset, placeOffset, nullOffset);
+            assertThat(store.read(placeOffset, Place.SERIALIZER)).isEqualTo(place);
+            final long offset = store.append(new TestObject("second", 2), TestObject.SERIALIZER);
+            assertThat(offset).isGreaterThan(nullOffset);
+            assertThat(store.read(offset, TestObject.SERIALIZER)).isEqualTo(new TestObject("second", 2));
+        }
+    }
+
+    @Test
+    public void testGrowMappedFile() throws Exception {
+        final String value = InternalSerialUtils.repeat("0123456789", 1000);
+        try (RecordStore store = new RecordStore(mTemporaryFolder.newFile())) {
+            final long[] offsets = new long[20];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = store.append(value + i, CoreSerializers.STRING);
+            }
+            assertThat(store.getSize()).isGreaterThan(200000);
+            for (int i = 0; i < offsets.length; i++) {
+                assertThat(store.read(offsets[i], CoreSerializers.STRING)).isEqualTo(value + i);
+            }
+        }
+    }
+
+    @Test
+    public void testRemoveAndCompact() throws Exception {
+        final File file = mTemporaryFolder.newFile();
+        try (RecordStore store = new RecordStore(file)) {
+            final long[] offsets = new long[10];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = store.append(new TestObject("object" + i, i), TestObject.SERIALIZER);
+            }
+            for (int i = 0; i < offsets.length; i += 2) {
+                store.remove(offsets[i]);
+            }
+            assertThat(store.getRecordCount()).isEqualTo(5);
+            assertInvalidOffset(store, offsets[0]);
+            assertInvalidOffset(store, offsets[1] + 1);
+
+            final long size = store.getSize();
+            final Map<Long, Long> newOffsets = store.compact();
+            assertThat(store.getSize()).isLessThan(size);
+            assertThat(newOffsets).hasSize(5);
+            assertThat(store.getRecordOffsets()).containsExactly(newOffsets.get(offsets[1]),
+                    newOffsets.get(offsets[3]), newOffsets.get(offsets[5]), newOffsets.get(offsets[7]),
+                    newOffsets.get(offsets[9]));
+            for (int i = 1; i < offsets.length; i += 2) {
+                assertThat(store.read(newOffsets.get(offsets[i]), TestObject.SERIALIZER))
+                        .isEqualTo(new TestObject("object" + i, i));
+            }
+        }
+
+        try (RecordStore store = new RecordStore(file)) {
+            assertThat(store.getRecordCount()).isEqualTo(5);
+        }
+    }
+
+    @Test
+    public void testInvalidFile() throws Exception {
+        final File file = mTemporaryFolder.newFile();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(new byte[32]);
+        }
+        try {
+            new RecordStore(file);
+            fail();
+        } catch (IOException ignore) {
+        }
+        // The file isn't modified when it can't be opened.
+        assertThat(file.length()).isEqualTo(32);
+    }
+
+    private static void assertInvalidOffset(@NotNull RecordStore store, long offset) throws Exception {
+        try {
+            store.read(offset, TestObject.SERIALIZER);
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+}
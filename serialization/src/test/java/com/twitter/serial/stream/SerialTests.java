@@ -18,11 +18,19 @@ package com.twitter.serial.stream;
 
 import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
 import com.twitter.serial.SerializationTestUtils;
+import com.twitter.serial.serializer.CollectionSerializers;
+import com.twitter.serial.serializer.CoreSerializers;
+import com.twitter.serial.serializer.Serializer;
+import com.twitter.serial.util.InternalSerialUtils;
 import com.twitter.serial.util.Pools;
+import com.twitter.serial.util.SerializationException;
 
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
 
@@ -64,4 +72,210 @@ public class SerialTests {
         assertThat(serialWithOneEntry.fromByteArray(serializedObj3, SerializationTestUtils.TestObject.SERIALIZER))
                 .isEqualTo(testObject);
     }
+
+    @Test
+    public void testAdaptivePoolKeepsGrownBuffer() throws Exception {
+        final Pools.AdaptiveByteArrayPool pool = new Pools.AdaptiveByteArrayPool(1, 64, 64 * 1024);
+        final Serial serial = new ByteBufferSerial(pool);
+        final String value = InternalSerialUtils.repeat("0123456789", 100);
+        final byte[] serializedValue = serial.toByteArray(value, CoreSerializers.STRING);
+        assertThat(serial.fromByteArray(serializedValue, CoreSerializers.STRING)).isEqualTo(value);
+
+        // The pool starts empty and keeps the buffer allocated for the value, as it grew.
+        final byte[] pooledBuffer = pool.acquire();
+        assertThat(pooledBuffer).isNotNull();
+        assertThat(pooledBuffer.length).isGreaterThanOrEqualTo(serializedValue.length);
+        assertThat(pool.acquire()).isNull();
+    }
+
+    @Test
+    public void testAdaptivePoolKeepsBufferWhenGrownBufferIsTooLarge() throws Exception {
+        final Pools.AdaptiveByteArrayPool pool = new Pools.AdaptiveByteArrayPool(1, 64, 256);
+        final byte[] initialBuffer = new byte[64];
+        pool.release(initialBuffer);
+        final Serial serial = new ByteBufferSerial(pool);
+        final String value = InternalSerialUtils.repeat("0123456789", 100);
+        final byte[] serializedValue = serial.toByteArray(value, CoreSerializers.STRING);
+        assertThat(serial.fromByteArray(serializedValue, CoreSerializers.STRING)).isEqualTo(value);
+
+        assertThat(pool.acquire()).isSameAs(initialBuffer);
+    }
+
+    @Test
+    public void testExactSize() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial.Builder().setExactSize(true).build();
+        final SerializationTestUtils.TestObject testObject = new SerializationTestUtils.TestObject("t1", 1);
+        final byte[] expected = new ByteBufferSerial().toByteArray(testObject,
+                SerializationTestUtils.TestObject.SERIALIZER);
+
+        assertThat(serial.getSerializedSize(testObject, SerializationTestUtils.TestObject.SERIALIZER))
+                .isEqualTo(expected.length);
+        assertThat(serial.toByteArray(testObject, SerializationTestUtils.TestObject.SERIALIZER))
+                .isEqualTo(expected);
+        assertThat(serial.toByteArray(null, SerializationTestUtils.TestObject.SERIALIZER)).isEmpty();
+    }
+
+    @Test
+    public void testVarIntEncoding() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial.Builder().setVarIntEncoding(true).build();
+        final SerializationTestUtils.TestObject testObject = new SerializationTestUtils.TestObject("t1", -1);
+        final byte[] serializedObject = serial.toByteArray(testObject, SerializationTestUtils.TestObject.SERIALIZER);
+        assertThat(serializedObject.length).isLessThan(new ByteBufferSerial()
+                .toByteArray(testObject, SerializationTestUtils.TestObject.SERIALIZER).length);
+        assertThat(serial.fromByteArray(serializedObject, SerializationTestUtils.TestObject.SERIALIZER))
+                .isEqualTo(testObject);
+    }
+
+    @Test
+    public void testStringTable() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial.Builder().setStringTable(true).build();
+        final List<SerializationTestUtils.TestObject> list = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            list.add(new SerializationTestUtils.TestObject("repeated name", i));
+        }
+        final Serializer<List<SerializationTestUtils.TestObject>> serializer =
+                CollectionSerializers.getListSerializer(SerializationTestUtils.TestObject.SERIALIZER);
+        final byte[] serializedList = serial.toByteArray(list, serializer);
+        assertThat(serializedList.length).isLessThan(new ByteBufferSerial().toByteArray(list, serializer).length);
+        assertThat(serial.getSerializedSize(list, serializer)).isEqualTo(serializedList.length);
+
+        final List<SerializationTestUtils.TestObject> deserializedList =
+                serial.fromByteArray(serializedList, serializer);
+        assertThat(deserializedList).isEqualTo(list);
+        assertThat(deserializedList.get(9).name).isSameAs(deserializedList.get(0).name);
+    }
+
+    @Test
+    public void testReadField() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial();
+        final List<SerializationTestUtils.TestObject> list = new ArrayList<>();
+        list.add(new SerializationTestUtils.TestObject("first", 1));
+        list.add(new SerializationTestUtils.TestObject("second", 2));
+        final byte[] bytes = serial.toByteArray(list,
+                CollectionSerializers.getListSerializer(SerializationTestUtils.TestObject.SERIALIZER));
+
+        // The list starts with its size, the test objects with a null.
+        assertThat(serial.readField(bytes, CoreSerializers.INTEGER, 0)).isEqualTo(2);
+        assertThat(serial.readField(bytes, SerializationTestUtils.TestObject.SERIALIZER, 2))
+                .isEqualTo(list.get(1));
+        assertThat(serial.readField(bytes, CoreSerializers.STRING, 2, 1)).isEqualTo("second");
+        assertThat(serial.readField(bytes, CoreSerializers.INTEGER, 1, 2)).isEqualTo(1);
+        assertThat(serial.readField(bytes, CoreSerializers.INTEGER, 3)).isNull();
+    }
+
+    @Test
+    public void testObjectLengths() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial.Builder().setObjectLengths(true).build();
+        final List<SerializationTestUtils.TestObject> list = new ArrayList<>();
+        list.add(new SerializationTestUtils.TestObject("first", 1));
+        list.add(new SerializationTestUtils.TestObject("second", 2));
+        final Serializer<List<SerializationTestUtils.TestObject>> serializer =
+                CollectionSerializers.getListSerializer(SerializationTestUtils.TestObject.SERIALIZER);
+        final byte[] bytes = serial.toByteArray(list, serializer);
+        assertThat(bytes.length).isEqualTo(new ByteBufferSerial().toByteArray(list, serializer).length + 3 * 4);
+        assertThat(serial.getSerializedSize(list, serializer)).isEqualTo(bytes.length);
+
+        assertThat(serial.fromByteArray(bytes, serializer)).isEqualTo(list);
+        assertThat(serial.readField(bytes, CoreSerializers.INTEGER, 2, 2)).isEqualTo(2);
+    }
+
+    @Test
+    public void testObjectReferences() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial.Builder().setObjectReferences(true).build();
+        final SerializationTestUtils.TestObject shared = new SerializationTestUtils.TestObject("shared", 1);
+        final List<SerializationTestUtils.TestObject> list = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            list.add(shared);
+        }
+        list.add(new SerializationTestUtils.TestObject("other", 2));
+        final Serializer<List<SerializationTestUtils.TestObject>> serializer =
+                CollectionSerializers.getListSerializer(SerializationTestUtils.TestObject.SERIALIZER);
+        final byte[] serializedList = serial.toByteArray(list, serializer);
+        assertThat(serializedList.length).isLessThan(new ByteBufferSerial().toByteArray(list, serializer).length);
+        assertThat(serial.getSerializedSize(list, serializer)).isEqualTo(serializedList.length);
+
+        final List<SerializationTestUtils.TestObject> deserializedList =
+                serial.fromByteArray(serializedList, serializer);
+        assertThat(deserializedList).isEqualTo(list);
+        assertThat(deserializedList.get(9)).isSameAs(deserializedList.get(0));
+        assertThat(serial.readField(serializedList, SerializationTestUtils.TestObject.SERIALIZER, 5))
+                .isEqualTo(shared);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testCyclicObjectReference() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial.Builder().setObjectReferences(true).build();
+        final Node node = new Node();
+        node.next = node;
+        serial.toByteArray(node, CoreSerializers.getFieldSerializer(Node.class));
+    }
+
+    @Test
+    public void testSerializeIntoHeapBuffer() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial();
+        final SerializationTestUtils.TestObject testObject = new SerializationTestUtils.TestObject("t1", 1);
+        final byte[] expected = serial.toByteArray(testObject, SerializationTestUtils.TestObject.SERIALIZER);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.position(10);
+        final int length = serial.serializeInto(testObject, SerializationTestUtils.TestObject.SERIALIZER, buffer);
+        assertThat(length).isEqualTo(expected.length);
+        assertThat(buffer.position()).isEqualTo(10 + length);
+
+        final byte[] bytes = new byte[length];
+        System.arraycopy(buffer.array(), 10, bytes, 0, length);
+        assertThat(bytes).isEqualTo(expected);
+    }
+
+    @Test
+    public void testSerializeIntoDirectBuffer() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial();
+        final SerializationTestUtils.TestObject testObject = new SerializationTestUtils.TestObject("t1", 123456);
+        final byte[] expected = serial.toByteArray(testObject, SerializationTestUtils.TestObject.SERIALIZER);
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        final int length = serial.serializeInto(testObject, SerializationTestUtils.TestObject.SERIALIZER, buffer);
+        assertThat(length).isEqualTo(expected.length);
+
+        buffer.flip();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertThat(bytes).isEqualTo(expected);
+    }
+
+    @Test
+    public void testSerializeIntoOverflow() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial();
+        final SerializationTestUtils.TestObject testObject = new SerializationTestUtils.TestObject("t1", 1);
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        buffer.position(60);
+        assertThat(serial.serializeInto(testObject, SerializationTestUtils.TestObject.SERIALIZER, buffer))
+                .isEqualTo(-1);
+        assertThat(buffer.position()).isEqualTo(60);
+    }
+
+    @Test
+    public void testDeserializeFromSlice() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial();
+        final SerializationTestUtils.TestObject testObject = new SerializationTestUtils.TestObject("t1", 1);
+        final byte[] bytes = serial.toByteArray(testObject, SerializationTestUtils.TestObject.SERIALIZER);
+        final byte[] frame = new byte[bytes.length + 20];
+        System.arraycopy(bytes, 0, frame, 10, bytes.length);
+
+        assertThat(serial.fromByteArray(frame, 10, bytes.length, SerializationTestUtils.TestObject.SERIALIZER))
+                .isEqualTo(testObject);
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(frame.length);
+        buffer.put(frame);
+        buffer.position(10);
+        buffer.limit(10 + bytes.length);
+        assertThat(serial.fromByteBuffer(buffer.asReadOnlyBuffer(), SerializationTestUtils.TestObject.SERIALIZER))
+                .isEqualTo(testObject);
+        assertThat(buffer.position()).isEqualTo(10);
+    }
+
+    private static class Node {
+        Node next;
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.bytebuffer;
+
+import com.twitter.serial.SerializationTestUtils;
+import com.twitter.serial.serializer.ObjectSerializer;
+import com.twitter.serial.serializer.SerializationContext;
+import com.twitter.serial.stream.SerializerInput;
+import com.twitter.serial.stream.SerializerOutput;
+import com.twitter.serial.util.SerializationException;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class AsyncSerialTests {
+    private ExecutorService mExecutor;
+    private AsyncSerial mSerial;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(3);
+        mSerial = new AsyncSerial(new ByteBufferSerial(), mExecutor, 4);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        final SerializationTestUtils.TestObject testObject = new SerializationTestUtils.TestObject("t1", 1);
+        final byte[] bytes =
+                mSerial.toByteArrayAsync(testObject, SerializationTestUtils.TestObject.SERIALIZER).get();
+        assertThat(bytes).isEqualTo(
+                new ByteBufferSerial().toByteArray(testObject, SerializationTestUtils.TestObject.SERIALIZER));
+        assertThat(mSerial.fromByteArrayAsync(bytes, SerializationTestUtils.TestObject.SERIALIZER).get())
+                .isEqualTo(testObject);
+    }
+
+    @Test
+    public void testBulk() throws Exception {
+        final List<SerializationTestUtils.TestObject> list = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            list.add(i % 5 == 0 ? null : new SerializationTestUtils.TestObject("item " + i, i));
+        }
+        final ByteBufferSerial serial = new ByteBufferSerial();
+        final List<byte[]> bytes = mSerial.toByteArrays(list, SerializationTestUtils.TestObject.SERIALIZER);
+        assertThat(bytes).hasSize(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            assertThat(bytes.get(i)).isEqualTo(
+                    serial.toByteArray(list.get(i), SerializationTestUtils.TestObject.SERIALIZER));
+        }
+        assertThat(mSerial.fromByteArrays(bytes, SerializationTestUtils.TestObject.SERIALIZER)).isEqualTo(list);
+
+        // Collections that aren't random access lists are copied first.
+        assertThat(mSerial.toByteArrays(new LinkedHashSet<>(list.subList(1, 3)),
+                SerializationTestUtils.TestObject.SERIALIZER)).containsExactly(bytes.get(1), bytes.get(2));
+        assertThat(mSerial.toByteArrays(new ArrayList<SerializationTestUtils.TestObject>(),
+                SerializationTestUtils.TestObject.SERIALIZER)).isEmpty();
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testBulkRethrowsException() throws Exception {
+        final List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            values.add(i);
+        }
+        mSerial.toByteArrays(values, new ObjectSerializer<Integer>() {
+            @Override
+            protected void serializeObject(@NotNull SerializationContext context, @NotNull SerializerOutput output,
+                    @NotNull Integer object) throws IOException {
+                if (object == 9) {
+                    throw new SerializationException("Invalid value.");
+                }
+                output.writeInt(object);
+            }
+
+            @NotNull
+            @Override
+            protected Integer deserializeObject(@NotNull SerializationContext context, @NotNull SerializerInput input,
+                    int versionNumber) throws IOException {
+                return input.readInt();
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new AsyncSerial(new ByteBufferSerial(), mExecutor, 0);
+    }
+}
@@ -23,6 +23,7 @@ import com.twitter.serial.SerializationTestUtils;
 import com.twitter.serial.util.OptionalFieldException;
 import com.twitter.serial.stream.SerializerDefs;
 import com.twitter.serial.util.SerializationException;
+import com.twitter.serial.util.SerializationUtils;
 import com.twitter.serial.stream.SerializerInput;
 import com.twitter.serial.stream.SerializerOutput;
 
@@ -32,8 +33,12 @@ import org.junit.Test;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class ByteBufferSerializationTests {
 
@@ -121,6 +126,96 @@ public class ByteBufferSerializationTests {
         assertThat(input.readByteArray()).isEqualTo(buffer);
     }
 
+    @Test
+    public void testPrimitiveArrays() throws Exception {
+        final int[] ints = { -50, 0, 1, 1337, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        final long[] longs = { -50L, 0L, Long.MAX_VALUE, Long.MIN_VALUE };
+        final float[] floats = new float[1000];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = i / 3f;
+        }
+        final double[] doubles = { -50.0d, 0.0d, Double.MAX_VALUE, Double.NaN };
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput(new byte[16]);
+        output.writeIntArray(ints);
+        assertThat(output.getPosition()).isEqualTo(2 + ints.length * 4);
+        output.writeLongArray(longs)
+                .writeFloatArray(floats)
+                .writeDoubleArray(doubles)
+                .writeIntArray(new int[0])
+                .writeFloatArray(null);
+        final byte[] bytes = output.getSerializedData();
+        assertThat(bytes).hasSize(2 + ints.length * 4 + 2 + longs.length * 8 + 3 + floats.length * 4 +
+                2 + doubles.length * 8 + 1 + 1);
+
+        final ByteBuffer directBuffer = ByteBuffer.allocateDirect(bytes.length);
+        directBuffer.put(bytes).flip();
+        for (ByteBufferSerializerInput input : Arrays.asList(new ByteBufferSerializerInput(bytes),
+                new ByteBufferSerializerInput(directBuffer))) {
+            assertThat(input.readIntArray()).isEqualTo(ints);
+            assertThat(input.readLongArray()).isEqualTo(longs);
+            assertThat(input.readFloatArray()).isEqualTo(floats);
+            assertThat(input.readDoubleArray()).isEqualTo(doubles);
+            assertThat(input.readIntArray()).isEmpty();
+            assertThat(input.readFloatArray()).isNull();
+            assertThat(input.peekType()).isEqualTo(SerializerDefs.TYPE_EOF);
+        }
+    }
+
+    @Test
+    public void testVarIntEncoding() throws Exception {
+        final int[] ints = { -1, -12, -64, -65, -8192, ByteBufferSerializerDefs.MIN_VARINT_INT,
+                ByteBufferSerializerDefs.MIN_VARINT_INT - 1, Integer.MIN_VALUE, 0, 12, 1234 };
+        final int[] intSizes = { 2, 2, 2, 3, 3, 4, 5, 5, 1, 2, 3 };
+        final long[] longs = { -1L, -12L, Integer.MIN_VALUE, ByteBufferSerializerDefs.MIN_VARINT_LONG,
+                ByteBufferSerializerDefs.MIN_VARINT_LONG - 1, Long.MIN_VALUE, 345678901234L,
+                // Longs just below 2^32 are written as ints, which are negative but must not use the varint subtype.
+                4294967295L, 4294000000L, (1L << 32) - (1 << 20) };
+        final int[] longSizes = { 2, 2, 6, 8, 9, 9, 9, 5, 5, 5 };
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput().setVarIntEncoding(true);
+        for (int i = 0; i < ints.length; i++) {
+            final int position = output.getPosition();
+            output.writeInt(ints[i]);
+            assertThat(output.getPosition() - position).as(String.valueOf(ints[i])).isEqualTo(intSizes[i]);
+        }
+        for (int i = 0; i < longs.length; i++) {
+            final int position = output.getPosition();
+            output.writeLong(longs[i]);
+            assertThat(output.getPosition() - position).as(String.valueOf(longs[i])).isEqualTo(longSizes[i]);
+        }
+
+        final SizeCalculatingSerializerOutput sizeOutput = new SizeCalculatingSerializerOutput(true);
+        for (int value : ints) {
+            sizeOutput.writeInt(value);
+        }
+        for (long value : longs) {
+            sizeOutput.writeLong(value);
+        }
+        assertThat(sizeOutput.getSize()).isEqualTo(output.getPosition());
+
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(output.getSerializedData());
+        for (int value : ints) {
+            assertThat(input.readInt()).isEqualTo(value);
+        }
+        for (long value : longs) {
+            assertThat(input.readLong()).isEqualTo(value);
+        }
+        assertThat(input.peekType()).isEqualTo(SerializerDefs.TYPE_EOF);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testVarIntOutOfIntRange() throws Exception {
+        final byte header = ByteBufferSerializerDefs.makeHeader(SerializerDefs.TYPE_INT,
+                ByteBufferSerializerDefs.SUBTYPE_VARINT);
+        final byte[] bytes = { header, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x7F };
+        new ByteBufferSerializerInput(bytes).readInt();
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedPrimitiveArray() throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput().writeLongArray(new long[] { 1, 2 }).getSerializedData();
+        new ByteBufferSerializerInput(bytes, 0, bytes.length - 1).readLongArray();
+    }
+
     @Test
     public void testResizeBuffer() throws Exception {
         final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput(new byte[4]);
@@ -148,6 +243,56 @@ public class ByteBufferSerializationTests {
         assertThat(output.getSerializedData()).hasSize(26);
     }
 
+    @Test
+    public void testWriteIntoByteBuffer() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+        buffer.position(2);
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput(buffer)
+                .writeInt(123456789)
+                .writeString("test");
+
+        assertThat(output.getPosition()).isEqualTo(11);
+        assertThat(output.peekTypeAtPosition(5)).isEqualTo(SerializerDefs.TYPE_STRING_ASCII);
+        assertThat(buffer.position()).isEqualTo(2);
+
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(output.getSerializedData());
+        assertThat(input.readInt()).isEqualTo(123456789);
+        assertThat(input.readString()).isEqualTo("test");
+    }
+
+    @Test
+    public void testReadFromByteBuffers() throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput()
+                .writeString("this is a test")
+                .writeInt(123456789)
+                .getSerializedData();
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 4);
+        direct.position(4);
+        direct.put(bytes);
+        direct.position(4);
+        final ByteBuffer readOnly = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        final byte[] largerArray = new byte[bytes.length + 8];
+        System.arraycopy(bytes, 0, largerArray, 4, bytes.length);
+
+        final ByteBufferSerializerInput[] inputs = {
+                new ByteBufferSerializerInput(direct),
+                new ByteBufferSerializerInput(readOnly),
+                new ByteBufferSerializerInput(largerArray, 4, bytes.length),
+        };
+        for (ByteBufferSerializerInput input : inputs) {
+            assertThat(input.readString()).isEqualTo("this is a test");
+            assertThat(input.readInt()).isEqualTo(123456789);
+            assertThat(input.peekType()).isEqualTo(SerializerDefs.TYPE_EOF);
+            assertThat(input.getPosition()).isEqualTo(bytes.length);
+        }
+        assertThat(direct.position()).isEqualTo(4);
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void testByteBufferOverflow() throws Exception {
+        new ByteBufferSerializerOutput(ByteBuffer.allocate(4)).writeInt(123456789);
+    }
+
     @Test
     public void testSerializeString() throws Exception {
         final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput();
@@ -188,6 +333,241 @@ public class ByteBufferSerializationTests {
         assertThat(longStringInput.readString()).isEqualTo(longString);
     }
 
+    @Test
+    public void testSerializeStringIntoByteBuffers() throws Exception {
+        final String[] strings = {
+                "this is a test",
+                "ascii prefix, then áéíóü",
+                "この世の全てを手に入れた男",
+                "emojis: \uD83D\uDE01\uD83D\uDE02 and an invalid surrogate \uD83D",
+        };
+        for (String string : strings) {
+            final byte[] expected = new ByteBufferSerializerOutput().writeString(string).getSerializedData();
+
+            // The buffers are just large enough for the encoded string, and smaller than the worst case.
+            final ByteBuffer[] buffers = { ByteBuffer.allocate(expected.length),
+                    ByteBuffer.allocateDirect(expected.length) };
+            final String expectedString = new ByteBufferSerializerInput(expected).readString();
+            for (ByteBuffer buffer : buffers) {
+                final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput(buffer).writeString(string);
+                assertThat(output.getSerializedData()).isEqualTo(expected);
+                assertThat(new ByteBufferSerializerInput(buffer).readString()).isEqualTo(expectedString);
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedUtf8String() throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput().writeString("aé海").getSerializedData();
+        final int end = bytes.length;
+        // Invalid continuation byte, overlong encoding, surrogate code point and unknown lead byte.
+        final byte[][] malformedSequences = {
+                { (byte) 0xE6, (byte) 0x77, (byte) 0xB7 },
+                { (byte) 0xE0, (byte) 0x81, (byte) 0xA9 },
+                { (byte) 0xED, (byte) 0xA0, (byte) 0x80 },
+                { (byte) 0xFF, (byte) 0xB5, (byte) 0xB7 },
+        };
+        for (byte[] sequence : malformedSequences) {
+            final byte[] malformed = bytes.clone();
+            System.arraycopy(sequence, 0, malformed, end - 3, 3);
+            try {
+                new ByteBufferSerializerInput(malformed).readString();
+                fail("Expected a SerializationException for " + Arrays.toString(sequence));
+            } catch (SerializationException e) {
+                assertThat(e).hasMessage("Serialized string is malformed.");
+            }
+        }
+
+        try {
+            new ByteBufferSerializerInput(Arrays.copyOf(bytes, end - 1)).readString();
+            fail("Expected an EOFException");
+        } catch (EOFException ignore) {
+        }
+    }
+
+    @Test
+    public void testStringTable() throws Exception {
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput().setStringTable(true)
+                .writeString("first")
+                .writeString("second")
+                .writeString("")
+                .writeString("first");
+        assertThat(output.peekTypeAtPosition(16)).isEqualTo(SerializerDefs.TYPE_STRING_REF);
+        output.writeString("second");
+        assertThat(output.getPosition()).isEqualTo(19);
+        final byte[] bytes = output.getSerializedData();
+
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(bytes).setStringTable(true);
+        final String first = input.readString();
+        assertThat(first).isEqualTo("first");
+        assertThat(input.readString()).isEqualTo("second");
+        assertThat(input.readString()).isEmpty();
+        assertThat(input.readString()).isSameAs(first);
+        assertThat(input.readString()).isEqualTo("second");
+
+        final SizeCalculatingSerializerOutput sizeOutput = new SizeCalculatingSerializerOutput().setStringTable(true)
+                .writeString("first")
+                .writeString("second")
+                .writeString("")
+                .writeString("first")
+                .writeString("second");
+        assertThat(sizeOutput.getSize()).isEqualTo(bytes.length);
+
+        // Skipped strings must still be added to the table.
+        final byte[] objectBytes = new ByteBufferSerializerOutput().setStringTable(true)
+                .writeObjectStart(1)
+                .writeString("first")
+                .writeObjectEnd()
+                .writeString("first")
+                .getSerializedData();
+        final ByteBufferSerializerInput skippingInput =
+                new ByteBufferSerializerInput(objectBytes).setStringTable(true);
+        SerializationUtils.skipObject(skippingInput);
+        assertThat(skippingInput.readString()).isEqualTo("first");
+    }
+
+    @Test
+    public void testObjectLengths() throws Exception {
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput().setObjectLengths(true)
+                .writeObjectStart(1)
+                .writeObjectStart(2)
+                .writeString("inner")
+                .writeObjectEnd()
+                .writeObjectStart(3, "Debug")
+                .writeObjectEnd()
+                .writeObjectEnd()
+                .writeInt(42);
+        final byte[] bytes = output.getSerializedData();
+        assertThat(output.peekTypeAtPosition(0)).isEqualTo(SerializerDefs.TYPE_START_OBJECT_SIZED);
+        // The lengths cover the content of the objects up to their object end, but not the int written after them.
+        assertThat(ByteBuffer.wrap(bytes, 2, 4).getInt()).isEqualTo(bytes.length - 6 - 2);
+        assertThat(ByteBuffer.wrap(bytes, 8, 4).getInt()).isEqualTo(8);
+
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(bytes);
+        assertThat(input.readObjectStart()).isEqualTo(1);
+        assertThat(input.readObjectStart()).isEqualTo(2);
+        assertThat(input.readString()).isEqualTo("inner");
+        input.readObjectEnd();
+        assertThat(input.readDebugObjectStart().className).isEqualTo("Debug");
+        input.readObjectEnd();
+        input.readObjectEnd();
+        assertThat(input.readInt()).isEqualTo(42);
+        SerializationUtils.validateSerializedData(bytes);
+
+        final SizeCalculatingSerializerOutput sizeOutput = new SizeCalculatingSerializerOutput().setObjectLengths(true)
+                .writeObjectStart(1)
+                .writeObjectStart(2)
+                .writeString("inner")
+                .writeObjectEnd()
+                .writeObjectStart(3, "Debug")
+                .writeObjectEnd()
+                .writeObjectEnd()
+                .writeInt(42);
+        assertThat(sizeOutput.getSize()).isEqualTo(bytes.length);
+
+        // Skipping jumps over the content of the object without reading it.
+        bytes[12] = ByteBufferSerializerDefs.makeHeader(SerializerDefs.TYPE_UNKNOWN,
+                ByteBufferSerializerDefs.SUBTYPE_UNDEFINED);
+        final ByteBufferSerializerInput skippingInput = new ByteBufferSerializerInput(bytes);
+        SerializationUtils.skipObject(skippingInput);
+        assertThat(skippingInput.readInt()).isEqualTo(42);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testInvalidObjectLength() throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput().setObjectLengths(true)
+                .writeObjectStart(1)
+                .writeInt(1)
+                .writeObjectEnd()
+                .getSerializedData();
+        bytes[5] -= 1;
+        SerializationUtils.skipObject(new ByteBufferSerializerInput(bytes));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testStringReferenceWithoutStringTable() throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput().setStringTable(true)
+                .writeString("first")
+                .writeString("first")
+                .getSerializedData();
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(bytes);
+        input.readString();
+        input.readString();
+    }
+
+    @Test
+    public void testObjectReferences() throws Exception {
+        final SerializationTestUtils.TestObject shared = new SerializationTestUtils.TestObject("shared", 1);
+        final Serializer<SerializationTestUtils.TestObject> serializer = SerializationTestUtils.TestObject.SERIALIZER;
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput().setObjectReferences(true);
+        serializer.serialize(SerializationContext.ALWAYS_RELEASE, output, shared);
+        serializer.serialize(SerializationContext.ALWAYS_RELEASE, output, shared);
+        serializer.serialize(SerializationContext.ALWAYS_RELEASE, output,
+                new SerializationTestUtils.TestObject("shared", 1));
+        final byte[] bytes = output.getSerializedData();
+
+        final SizeCalculatingSerializerOutput sizeOutput =
+                new SizeCalculatingSerializerOutput().setObjectReferences(true);
+        serializer.serialize(SerializationContext.ALWAYS_RELEASE, sizeOutput, shared);
+        serializer.serialize(SerializationContext.ALWAYS_RELEASE, sizeOutput, shared);
+        serializer.serialize(SerializationContext.ALWAYS_RELEASE, sizeOutput,
+                new SerializationTestUtils.TestObject("shared", 1));
+        assertThat(sizeOutput.getSize()).isEqualTo(bytes.length);
+
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(bytes).setObjectReferences(true);
+        final SerializationTestUtils.TestObject first =
+                serializer.deserialize(SerializationContext.ALWAYS_RELEASE, input);
+        assertThat(first).isEqualTo(shared);
+        assertThat(input.peekType()).isEqualTo(SerializerDefs.TYPE_OBJECT_REF);
+        assertThat(serializer.deserialize(SerializationContext.ALWAYS_RELEASE, input)).isSameAs(first);
+        final SerializationTestUtils.TestObject third =
+                serializer.deserialize(SerializationContext.ALWAYS_RELEASE, input);
+        assertThat(third).isEqualTo(shared).isNotSameAs(first);
+
+        // A reference to a skipped object reads the object again.
+        final ByteBufferSerializerInput skippingInput =
+                new ByteBufferSerializerInput(bytes).setObjectReferences(true);
+        skippingInput.skipValue();
+        assertThat(serializer.deserialize(SerializationContext.ALWAYS_RELEASE, skippingInput)).isEqualTo(shared);
+        assertThat(SerializationUtils.dumpSerializedData(bytes)).contains("Object reference");
+    }
+
+    @Test
+    public void testObjectReferenceToSkippedObjectWithStringTable() throws Exception {
+        final SerializationTestUtils.TestObject shared = new SerializationTestUtils.TestObject("shared", 1);
+        final Serializer<SerializationTestUtils.TestObject> serializer = SerializationTestUtils.TestObject.SERIALIZER;
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput().setStringTable(true)
+                .setObjectReferences(true)
+                .writeObjectStart(1);
+        serializer.serialize(SerializationContext.ALWAYS_RELEASE, output, shared);
+        output.writeInt(42).writeObjectEnd();
+        serializer.serialize(SerializationContext.ALWAYS_RELEASE, output, shared);
+        output.writeString("later").writeString("later").writeString("shared");
+        final byte[] bytes = output.getSerializedData();
+
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(bytes).setStringTable(true)
+                .setObjectReferences(true);
+        assertThat(SerializationUtils.seekField(input, 1)).isTrue();
+        assertThat(input.readInt()).isEqualTo(42);
+        input.readObjectEnd();
+        assertThat(serializer.deserialize(SerializationContext.ALWAYS_RELEASE, input)).isEqualTo(shared);
+        assertThat(input.readString()).isEqualTo("later");
+        assertThat(input.readString()).isEqualTo("later");
+        assertThat(input.readString()).isEqualTo("shared");
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testObjectReferenceWithoutObjectReferences() throws Exception {
+        final SerializationTestUtils.TestObject shared = new SerializationTestUtils.TestObject("shared", 1);
+        final Serializer<SerializationTestUtils.TestObject> serializer = SerializationTestUtils.TestObject.SERIALIZER;
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput().setObjectReferences(true);
+        serializer.serialize(SerializationContext.ALWAYS_RELEASE, output, shared);
+        serializer.serialize(SerializationContext.ALWAYS_RELEASE, output, shared);
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(output.getSerializedData());
+        serializer.deserialize(SerializationContext.ALWAYS_RELEASE, input);
+        serializer.deserialize(SerializationContext.ALWAYS_RELEASE, input);
+    }
+
     @Test(expected = SerializationException.class)
     public void testHeaderMismatch() throws Exception {
         final ByteBufferSerializerInput input = new ByteBufferSerializerInput(
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.bytebuffer;
+
+import com.twitter.serial.model.Place;
+import com.twitter.serial.model.SampleDataProvider;
+import com.twitter.serial.serializer.SerializationContext;
+import com.twitter.serial.stream.SerializerOutput;
+import com.twitter.serial.util.InternalSerialUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class SizeCalculatingSerializerOutputTests {
+    @NotNull
+    private final SerializationContext mContext = SerializationContext.ALWAYS_RELEASE;
+
+    @Test
+    public void testSizeMatchesByteBufferOutput() throws Exception {
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput();
+        final SizeCalculatingSerializerOutput sizeOutput = new SizeCalculatingSerializerOutput();
+        writeValues(output);
+        writeValues(sizeOutput);
+        assertThat(sizeOutput.getSize()).isEqualTo(output.getPosition());
+    }
+
+    @Test
+    public void testSizeWithVarIntEncoding() throws Exception {
+        final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput().setVarIntEncoding(true);
+        final SizeCalculatingSerializerOutput sizeOutput = new SizeCalculatingSerializerOutput(true);
+        writeValues(output);
+        writeValues(sizeOutput);
+        assertThat(sizeOutput.getSize()).isEqualTo(output.getPosition());
+    }
+
+    @Test
+    public void testStringSizes() {
+        final String[] strings = {
+                "", "ascii", "été", "海賊王", "😀 smiley", "\ud83d", "\ude00\ud83d", "a\ud83dz",
+                InternalSerialUtils.repeat("xé海", 30000)
+        };
+        for (String string : strings) {
+            final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput();
+            output.writeString(string);
+            assertThat(new SizeCalculatingSerializerOutput().writeString(string).getSize())
+                    .as(string).isEqualTo(output.getPosition());
+        }
+    }
+
+    private void writeValues(@NotNull SerializerOutput<?> output) throws IOException {
+        final Place place = SampleDataProvider.createSamplePlace();
+        output.writeByte((byte) 0)
+                .writeByte((byte) -3)
+                .writeBoolean(true)
+                .writeInt(0)
+                .writeInt(200)
+                .writeInt(40000)
+                .writeInt(-12)
+                .writeInt(-300000)
+                .writeInt(Integer.MAX_VALUE)
+                .writeLong(0)
+                .writeLong(345678901234L)
+                .writeLong(-1L)
+                .writeLong(-345678901234L)
+                .writeFloat(0f)
+                .writeFloat(1.5f)
+                .writeDouble(0d)
+                .writeDouble(23.45)
+                .writeString(null)
+                .writeString("ascii")
+                .writeByteArray(null)
+                .writeByteArray(new byte[0])
+                .writeByteArray(new byte[300])
+                .writeIntArray(null)
+                .writeIntArray(new int[] { 1, 2 })
+                .writeLongArray(new long[300])
+                .writeFloatArray(new float[0])
+                .writeDoubleArray(new double[] { 1.5 })
+                .writeNull()
+                .writeObject(mContext, place, Place.SERIALIZER)
+                .writeObjectStart(3)
+                .writeObjectStart(300, "DebugObject")
+                .writeObjectEnd()
+                .writeObjectEnd();
+    }
+}
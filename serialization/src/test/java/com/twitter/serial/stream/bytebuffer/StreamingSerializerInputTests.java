@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.bytebuffer;
+
+import com.twitter.serial.model.Place;
+import com.twitter.serial.model.SampleDataProvider;
+import com.twitter.serial.serializer.SerializationContext;
+import com.twitter.serial.stream.SerializerDefs;
+import com.twitter.serial.util.InternalSerialUtils;
+import com.twitter.serial.util.SerializationUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class StreamingSerializerInputTests {
+    private static final int CHUNK_SIZE = 32;
+
+    @NotNull
+    private final SerializationContext mContext = SerializationContext.ALWAYS_RELEASE;
+
+    @Test
+    public void testReadValues() throws Exception {
+        final String longString = InternalSerialUtils.repeat("海賊王ゴールド・ロジャー", 10);
+        final byte[] largeArray = new byte[3 * CHUNK_SIZE];
+        for (int i = 0; i < largeArray.length; i++) {
+            largeArray[i] = (byte) i;
+        }
+        final Place place = SampleDataProvider.createSamplePlace();
+        final byte[] bytes = new ByteBufferSerializerOutput()
+                .writeInt(-12)
+                .writeLong(345678901234L)
+                .writeString(longString)
+                .writeByteArray(largeArray)
+                .writeIntArray(new int[] { 1, -2, 3 })
+                .writeLongArray(new long[CHUNK_SIZE])
+                .writeObject(mContext, place, Place.SERIALIZER)
+                .writeObjectStart(1, "TestObject")
+                .writeDouble(23.45)
+                .writeObjectEnd()
+                .getSerializedData();
+
+        final StreamingSerializerInput input = new StreamingSerializerInput(new TricklingInputStream(bytes),
+                CHUNK_SIZE);
+        assertThat(input.readInt()).isEqualTo(-12);
+        assertThat(input.readLong()).isEqualTo(345678901234L);
+        assertThat(input.readString()).isEqualTo(longString);
+        assertThat(input.readByteArray()).isEqualTo(largeArray);
+        assertThat(input.readIntArray()).containsExactly(1, -2, 3);
+        assertThat(input.readLongArray()).isEqualTo(new long[CHUNK_SIZE]);
+        assertThat(Place.SERIALIZER.deserialize(mContext, input)).isEqualTo(place);
+        assertThat(input.readDebugObjectStart().className).isEqualTo("TestObject");
+        assertThat(input.readDouble()).isEqualTo(23.45);
+        input.readObjectEnd();
+        assertThat(input.peekType()).isEqualTo(SerializerDefs.TYPE_EOF);
+        assertThat(input.getPosition()).isEqualTo(bytes.length);
+        assertThat(input.getLongPosition()).isEqualTo(bytes.length);
+    }
+
+    @Test
+    public void testReadVarInts() throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput()
+                .setVarIntEncoding(true)
+                .writeInt(-1)
+                .writeLong(-345678901234L)
+                .writeInt(-300000)
+                .getSerializedData();
+        final StreamingSerializerInput input = new StreamingSerializerInput(new TricklingInputStream(bytes),
+                CHUNK_SIZE);
+        assertThat(input.readInt()).isEqualTo(-1);
+        assertThat(input.readLong()).isEqualTo(-345678901234L);
+        assertThat(input.readInt()).isEqualTo(-300000);
+        assertThat(input.peekType()).isEqualTo(SerializerDefs.TYPE_EOF);
+    }
+
+    @Test
+    public void testReadFromChannel() throws Exception {
+        final Place place = SampleDataProvider.createSamplePlace();
+        final byte[] bytes = new ByteBufferSerializerOutput()
+                .writeObject(mContext, place, Place.SERIALIZER)
+                .getSerializedData();
+
+        final StreamingSerializerInput input = new StreamingSerializerInput(
+                Channels.newChannel(new ByteArrayInputStream(bytes)), CHUNK_SIZE);
+        assertThat(Place.SERIALIZER.deserialize(mContext, input)).isEqualTo(place);
+    }
+
+    @Test
+    public void testReadObjectLengths() throws Exception {
+        final Place place = SampleDataProvider.createSamplePlace();
+        final byte[] bytes = new ByteBufferSerializerOutput().setObjectLengths(true)
+                .writeObject(mContext, place, Place.SERIALIZER)
+                .writeInt(12)
+                .getSerializedData();
+
+        // The objects are larger than the chunk, so their content isn't buffered when their length is read.
+        final StreamingSerializerInput input =
+                new StreamingSerializerInput(new TricklingInputStream(bytes), CHUNK_SIZE);
+        assertThat(Place.SERIALIZER.deserialize(mContext, input)).isEqualTo(place);
+        assertThat(input.readInt()).isEqualTo(12);
+        SerializationUtils.validateSerializedData(
+                new StreamingSerializerInput(new ByteArrayInputStream(bytes), CHUNK_SIZE));
+    }
+
+    @Test
+    public void testValidateSerializedData() throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput()
+                .writeObject(mContext, SampleDataProvider.createSamplePlace(), Place.SERIALIZER)
+                .getSerializedData();
+        SerializationUtils.validateSerializedData(
+                new StreamingSerializerInput(new TricklingInputStream(bytes), CHUNK_SIZE));
+    }
+
+    @Test
+    public void testReadUtf8StringAtEndOfMessage() throws Exception {
+        final String longString = InternalSerialUtils.repeat("海賊王 €1\uD83D\uDE00", 10);
+        final byte[] bytes = new ByteBufferSerializerOutput()
+                .writeString(longString)
+                .writeString("café")
+                .getSerializedData();
+
+        // The strings take fewer than 3 bytes per char, so the reads must not wait for more data.
+        final StreamingSerializerInput input =
+                new StreamingSerializerInput(new BlockingInputStream(bytes), CHUNK_SIZE);
+        assertThat(input.readString()).isEqualTo(longString);
+        assertThat(input.readString()).isEqualTo("café");
+        assertThat(input.getPosition()).isEqualTo(bytes.length);
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedData() throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput()
+                .writeString("this is a test")
+                .getSerializedData();
+        final byte[] truncatedBytes = new byte[bytes.length - 2];
+        System.arraycopy(bytes, 0, truncatedBytes, 0, truncatedBytes.length);
+
+        new StreamingSerializerInput(new ByteArrayInputStream(truncatedBytes), CHUNK_SIZE).readString();
+    }
+
+    /**
+     * Returns at most 3 bytes per read, to exercise the refills.
+     */
+    private static class TricklingInputStream extends InputStream {
+        @NotNull private final ByteArrayInputStream mInputStream;
+
+        TricklingInputStream(@NotNull byte[] bytes) {
+            mInputStream = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() {
+            return mInputStream.read();
+        }
+
+        @Override
+        public int read(@NotNull byte[] bytes, int offset, int length) {
+            return mInputStream.read(bytes, offset, Math.min(length, 3));
+        }
+    }
+
+    /**
+     * Returns at most 3 bytes per read, and fails instead of blocking when a read is made after the data, as a
+     * socket that stays open would.
+     */
+    private static class BlockingInputStream extends TricklingInputStream {
+        BlockingInputStream(@NotNull byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public int read(@NotNull byte[] bytes, int offset, int length) {
+            final int count = super.read(bytes, offset, length);
+            if (count < 0) {
+                throw new AssertionError("Read after the end of the data would block.");
+            }
+            return count;
+        }
+    }
+}
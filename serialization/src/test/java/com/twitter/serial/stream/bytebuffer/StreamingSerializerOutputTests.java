@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.bytebuffer;
+
+import com.twitter.serial.model.Place;
+import com.twitter.serial.model.SampleDataProvider;
+import com.twitter.serial.serializer.SerializationContext;
+import com.twitter.serial.stream.SerializerOutput;
+import com.twitter.serial.util.InternalSerialUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class StreamingSerializerOutputTests {
+    private static final int CHUNK_SIZE = 32;
+
+    @NotNull
+    private final SerializationContext mContext = SerializationContext.ALWAYS_RELEASE;
+
+    @Test
+    public void testSameFormatAsByteBufferOutput() throws Exception {
+        final ByteBufferSerializerOutput expected = new ByteBufferSerializerOutput();
+        writeValues(expected);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final StreamingSerializerOutput output = new StreamingSerializerOutput(outputStream, CHUNK_SIZE);
+        writeValues(output);
+        output.flush();
+
+        assertThat(outputStream.toByteArray()).isEqualTo(expected.getSerializedData());
+        assertThat(output.getPosition()).isEqualTo(expected.getPosition());
+    }
+
+    @Test
+    public void testWriteToChannel() throws Exception {
+        final ByteBufferSerializerOutput expected = new ByteBufferSerializerOutput();
+        writeValues(expected);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final StreamingSerializerOutput output =
+                new StreamingSerializerOutput(Channels.newChannel(outputStream), CHUNK_SIZE);
+        writeValues(output);
+        output.close();
+
+        assertThat(outputStream.toByteArray()).isEqualTo(expected.getSerializedData());
+    }
+
+    @Test
+    public void testDataIsBufferedUntilFlush() throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final StreamingSerializerOutput output = new StreamingSerializerOutput(outputStream, CHUNK_SIZE);
+        output.writeInt(1).writeString("test");
+
+        assertThat(outputStream.size()).isZero();
+        output.flush();
+        assertThat(outputStream.size()).isEqualTo(8);
+    }
+
+    @Test
+    public void testLargeValuesDontGrowChunk() throws Exception {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            // Supplementary characters at every offset, so that some of them are at the end of a range.
+            builder.append("a\ud83d\ude00é").append(i);
+        }
+        final String utf8String = builder.toString();
+        final String asciiString = InternalSerialUtils.repeat("ascii", 40);
+        final long[] longs = new long[5 * CHUNK_SIZE];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = -i;
+        }
+        final ByteBufferSerializerOutput expected = new ByteBufferSerializerOutput()
+                .writeString(utf8String)
+                .writeString(asciiString)
+                .writeLongArray(longs)
+                .writeFloatArray(new float[] { 1.5f, -2.5f });
+
+        final int[] maxWriteLength = new int[1];
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(@NotNull byte[] bytes, int offset, int length) {
+                maxWriteLength[0] = Math.max(maxWriteLength[0], length);
+                super.write(bytes, offset, length);
+            }
+        };
+        final StreamingSerializerOutput output = new StreamingSerializerOutput(outputStream, CHUNK_SIZE);
+        output.writeString(utf8String)
+                .writeString(asciiString)
+                .writeLongArray(longs)
+                .writeFloatArray(new float[] { 1.5f, -2.5f })
+                .flush();
+
+        assertThat(outputStream.toByteArray()).isEqualTo(expected.getSerializedData());
+        assertThat(maxWriteLength[0]).isLessThanOrEqualTo(CHUNK_SIZE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testChunkTooSmall() {
+        new StreamingSerializerOutput(new ByteArrayOutputStream(), 4);
+    }
+
+    private void writeValues(@NotNull SerializerOutput<?> output) throws IOException {
+        final byte[] largeArray = new byte[3 * CHUNK_SIZE];
+        for (int i = 0; i < largeArray.length; i++) {
+            largeArray[i] = (byte) i;
+        }
+        final Place place = SampleDataProvider.createSamplePlace();
+        output.writeInt(-12)
+                .writeLong(345678901234L)
+                .writeString("この世の全てを手に入れた男、海賊王ゴールド・ロジャー。")
+                .writeByteArray(new byte[] { 1, 2, 3 })
+                .writeByteArray(largeArray)
+                .writeIntArray(new int[] { 1, -2, 3 })
+                .writeDoubleArray(new double[CHUNK_SIZE])
+                .writeObject(mContext, place, Place.SERIALIZER)
+                .writeObjectStart(1, "TestObject")
+                .writeDouble(23.45)
+                .writeObjectEnd();
+    }
+}
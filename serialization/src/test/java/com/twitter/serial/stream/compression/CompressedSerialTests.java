@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.stream.compression;
+
+import com.twitter.serial.SerializationTestUtils;
+import com.twitter.serial.serializer.CollectionSerializers;
+import com.twitter.serial.serializer.CoreSerializers;
+import com.twitter.serial.serializer.Serializer;
+import com.twitter.serial.stream.bytebuffer.ByteBufferSerial;
+import com.twitter.serial.util.SerializationException;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CompressedSerialTests {
+    private static final Serializer<List<SerializationTestUtils.TestObject>> LIST_SERIALIZER =
+            CollectionSerializers.getListSerializer(SerializationTestUtils.TestObject.SERIALIZER);
+
+    @Test
+    public void testCodecs() throws Exception {
+        final Random random = new Random(42);
+        final byte[] repetitive = new byte[100000];
+        for (int i = 0; i < repetitive.length; i++) {
+            repetitive[i] = (byte) (i % 1000 < 500 ? 'a' : random.nextInt(4));
+        }
+        final byte[] incompressible = new byte[70000];
+        random.nextBytes(incompressible);
+        final byte[][] inputs = { new byte[0], new byte[] { 1 }, "short but repeated, repeated".getBytes("UTF-8"),
+                repetitive, incompressible, new byte[1 << 20] };
+        for (CompressionCodec codec : Arrays.asList(new Lz4Codec(), new DeflateCodec())) {
+            for (byte[] input : inputs) {
+                final byte[] compressed = new byte[3 + codec.getMaxCompressedLength(input.length)];
+                final int compressedLength = codec.compress(input, 0, input.length, compressed, 3);
+                assertThat(compressedLength).isLessThanOrEqualTo(codec.getMaxCompressedLength(input.length));
+                assertThat(codec.getMaxUncompressedLength(compressedLength)).isGreaterThanOrEqualTo(input.length);
+
+                final byte[] decompressed = new byte[input.length + 2];
+                codec.decompress(compressed, 3, compressedLength, decompressed, 2, input.length);
+                assertThat(Arrays.copyOfRange(decompressed, 2, decompressed.length)).isEqualTo(input);
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedData() throws Exception {
+        final byte[] input = new byte[1000];
+        Arrays.fill(input, (byte) 'x');
+        for (CompressionCodec codec : Arrays.asList(new Lz4Codec(), new DeflateCodec())) {
+            final byte[] compressed = new byte[codec.getMaxCompressedLength(input.length)];
+            final int compressedLength = codec.compress(input, 0, input.length, compressed, 0);
+            checkMalformed(codec, compressed, compressedLength - 1, input.length);
+            checkMalformed(codec, compressed, compressedLength, input.length + 1);
+        }
+        // A match with an offset before the start of the data.
+        checkMalformed(new Lz4Codec(), new byte[] { 0x10, 'a', 0x02, 0x00, 0x00 }, 5, 10);
+    }
+
+    @Test
+    public void testCompressedSerial() throws Exception {
+        final List<SerializationTestUtils.TestObject> list = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            list.add(new SerializationTestUtils.TestObject("name", i));
+        }
+        final ByteBufferSerial serial = new ByteBufferSerial();
+        final byte[] uncompressed = serial.toByteArray(list, LIST_SERIALIZER);
+        for (CompressionCodec codec : Arrays.asList(new Lz4Codec(), new DeflateCodec())) {
+            final CompressedSerial compressedSerial = new CompressedSerial(serial, codec, 64);
+            final byte[] compressed = compressedSerial.toByteArray(list, LIST_SERIALIZER);
+            assertThat(compressed[1]).isEqualTo(codec.getId());
+            assertThat(compressed.length).isLessThan(uncompressed.length / 2);
+            assertThat(compressedSerial.fromByteArray(compressed, LIST_SERIALIZER)).isEqualTo(list);
+
+            // Any serial can read the data of the built-in codecs.
+            assertThat(new CompressedSerial(serial).fromByteArray(compressed, LIST_SERIALIZER)).isEqualTo(list);
+        }
+    }
+
+    @Test
+    public void testUncompressedData() throws Exception {
+        final ByteBufferSerial serial = new ByteBufferSerial();
+        final CompressedSerial compressedSerial = new CompressedSerial(serial);
+        final byte[] small = compressedSerial.toByteArray("small", CoreSerializers.STRING);
+        assertThat(small[0]).isEqualTo(CompressedSerial.MAGIC);
+        assertThat(small[1]).isEqualTo(CompressedSerial.ID_UNCOMPRESSED);
+        assertThat(compressedSerial.fromByteArray(small, CoreSerializers.STRING)).isEqualTo("small");
+
+        // Data written without compression.
+        final byte[] unframed = serial.toByteArray("unframed", CoreSerializers.STRING);
+        assertThat(compressedSerial.fromByteArray(unframed, CoreSerializers.STRING)).isEqualTo("unframed");
+
+        assertThat(compressedSerial.toByteArray(null, CoreSerializers.STRING)).isEmpty();
+        assertThat(compressedSerial.fromByteArray(null, CoreSerializers.STRING)).isNull();
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testUnknownCodec() throws Exception {
+        new CompressedSerial(new ByteBufferSerial()).fromByteArray(
+                new byte[] { CompressedSerial.MAGIC, 42, 0, 0, 0, 1, 0 }, CoreSerializers.STRING);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testInvalidUncompressedLength() throws Exception {
+        new CompressedSerial(new ByteBufferSerial()).decompress(
+                new byte[] { CompressedSerial.MAGIC, Lz4Codec.ID, 0x7F, 0, 0, 0, 0 });
+    }
+
+    private static void checkMalformed(@NotNull CompressionCodec codec, @NotNull byte[] compressed,
+            int compressedLength, int length) throws Exception {
+        try {
+            codec.decompress(compressed, 0, compressedLength, new byte[length], 0, length);
+            fail("Expected a SerializationException for " + codec.getClass().getSimpleName());
+        } catch (SerializationException ignore) {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Twitter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twitter.serial.util;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class PoolsTests {
+    @Test
+    public void testConcurrentPool() {
+        final Pools.Pool<Object> pool = new Pools.ConcurrentPool<>(2);
+        assertThat(pool.acquire()).isNull();
+
+        final Object first = new Object();
+        final Object second = new Object();
+        assertThat(pool.release(first)).isTrue();
+        assertThat(pool.release(second)).isTrue();
+        assertThat(pool.release(new Object())).isFalse();
+
+        final Set<Object> acquired = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        acquired.add(pool.acquire());
+        acquired.add(pool.acquire());
+        assertThat(acquired).containsOnly(first, second);
+        assertThat(pool.acquire()).isNull();
+    }
+
+    @Test
+    public void testConcurrentPoolFromMultipleThreads() throws Exception {
+        final int threadCount = 8;
+        final int poolSize = 4;
+        final Pools.Pool<Object> pool = new Pools.ConcurrentPool<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            pool.release(new Object());
+        }
+        final Set<Object> inUse = Collections.synchronizedSet(
+                Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+        final AtomicInteger errorCount = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        final Object instance = pool.acquire();
+                        if (instance != null) {
+                            if (!inUse.add(instance)) {
+                                errorCount.incrementAndGet();
+                            }
+                            inUse.remove(instance);
+                            if (!pool.release(instance)) {
+                                errorCount.incrementAndGet();
+                            }
+                        }
+                    }
+                    latch.countDown();
+                }
+            }.start();
+        }
+        latch.await();
+
+        assertThat(errorCount.get()).isEqualTo(0);
+        for (int i = 0; i < poolSize; i++) {
+            assertThat(pool.acquire()).isNotNull();
+        }
+        assertThat(pool.acquire()).isNull();
+    }
+
+    @Test
+    public void testThreadLocalPool() throws Exception {
+        final Pools.Pool<Object> sharedPool = new Pools.ConcurrentPool<>(1);
+        final Pools.Pool<Object> pool = new Pools.ThreadLocalPool<>(sharedPool);
+        final Object local = new Object();
+        final Object shared = new Object();
+        assertThat(pool.release(local)).isTrue();
+        assertThat(pool.release(shared)).isTrue();
+        assertThat(pool.release(new Object())).isFalse();
+
+        final Object[] acquiredByOtherThread = new Object[2];
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                acquiredByOtherThread[0] = pool.acquire();
+                acquiredByOtherThread[1] = pool.acquire();
+                pool.release(acquiredByOtherThread[0]);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertThat(acquiredByOtherThread).containsExactly(shared, null);
+
+        assertThat(pool.acquire()).isSameAs(local);
+        assertThat(pool.acquire()).isNull();
+    }
+
+    @Test
+    public void testAdaptiveByteArrayPool() {
+        final Pools.AdaptiveByteArrayPool pool = new Pools.AdaptiveByteArrayPool(1, 1000, 8 * 1024);
+        assertThat(pool.acquire()).isNull();
+        assertThat(pool.acquire(10).length).isEqualTo(1024);
+
+        final byte[] small = new byte[1024];
+        final byte[] grown = new byte[4096];
+        assertThat(pool.release(small)).isTrue();
+        assertThat(pool.release(grown)).isTrue();
+        assertThat(pool.release(new byte[4096])).isFalse();
+        assertThat(pool.release(new byte[16 * 1024])).isFalse();
+        assertThat(pool.release(new byte[512])).isFalse();
+
+        // the last released size class is preferred
+        assertThat(pool.acquire()).isSameAs(grown);
+        assertThat(pool.acquire()).isSameAs(small);
+        assertThat(pool.acquire()).isNull();
+
+        pool.release(small);
+        pool.release(grown);
+        assertThat(pool.acquire(2000)).isSameAs(grown);
+        assertThat(pool.acquire(2000)).hasSize(2000);
+        assertThat(pool.acquire(100)).isSameAs(small);
+    }
+}
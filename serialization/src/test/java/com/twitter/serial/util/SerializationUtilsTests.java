@@ -182,6 +182,25 @@ public class SerializationUtilsTests {
                 .isEqualTo(5);
     }
 
+    @Test
+    public void testPrimitiveArraysWithoutPeek() throws IOException {
+        final ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+        final ObjectOutput objectOutput = new ObjectOutputStream(byteOutputStream);
+        new LegacySerializerOutput(objectOutput)
+                .writeIntArray(new int[] { 1, -2 })
+                .writeLongArray(null)
+                .writeFloatArray(new float[] { 1.5f })
+                .writeDoubleArray(new double[0]);
+        objectOutput.close();
+
+        final SerializerInput input = new LegacySerializerInput(
+                new ObjectInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray())));
+        assertThat(input.readIntArray()).containsExactly(1, -2);
+        assertThat(input.readLongArray()).isNull();
+        assertThat(input.readFloatArray()).containsExactly(1.5f);
+        assertThat(input.readDoubleArray()).isEmpty();
+    }
+
     @Test
     public void testDumpSerializedData() throws IOException {
         final ByteBufferSerializerOutput output = new ByteBufferSerializerOutput();
@@ -329,6 +348,42 @@ public class SerializationUtilsTests {
         assertThat(input.readLong()).isEqualTo(10L);
     }
 
+    @Test
+    public void testSeekField() throws Exception {
+        final byte[] bytes = new ByteBufferSerializerOutput()
+                .writeObjectStart(1, "Outer")
+                .writeString("áé string to skip")
+                .writeByteArray(new byte[] { 1, 2, 3 })
+                .writeByteArray(new byte[0])
+                .writeLongArray(new long[] { 4L, 5L })
+                .writeNull()
+                .writeObjectStart(0)
+                .writeString("ascii string to skip")
+                .writeFloatArray(new float[] { 1F })
+                .writeLong(42L)
+                .writeObjectEnd()
+                .writeInt(7)
+                .writeObjectEnd()
+                .getSerializedData();
+
+        final ByteBufferSerializerInput input = new ByteBufferSerializerInput(bytes);
+        assertThat(SerializationUtils.seekField(input, 6)).isTrue();
+        assertThat(input.readInt()).isEqualTo(7);
+
+        final ByteBufferSerializerInput nestedInput = new ByteBufferSerializerInput(bytes);
+        assertThat(SerializationUtils.seekField(nestedInput, 5, 2)).isTrue();
+        assertThat(nestedInput.readLong()).isEqualTo(42L);
+
+        final ByteBufferSerializerInput emptyArrayInput = new ByteBufferSerializerInput(bytes);
+        assertThat(SerializationUtils.seekField(emptyArrayInput, 2)).isTrue();
+        assertThat(emptyArrayInput.readByteArray()).isEmpty();
+
+        assertThat(SerializationUtils.seekField(new ByteBufferSerializerInput(bytes), 7)).isFalse();
+        assertThat(SerializationUtils.seekField(new ByteBufferSerializerInput(bytes), 5, 3)).isFalse();
+        // The field at index 4 is null, not an object.
+        assertThat(SerializationUtils.seekField(new ByteBufferSerializerInput(bytes), 4, 0)).isFalse();
+    }
+
     @Test
     public void testBaseClassSerializer() throws Exception {
         final Serializer<SerializationTestUtils.BaseTestObject> baseSerializer =